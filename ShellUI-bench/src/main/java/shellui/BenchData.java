@@ -0,0 +1,223 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic input for the benchmarks: a log file and a directory tree,
+ * generated from a fixed seed so every run sees the same bytes. Both are
+ * kept under {@code target/bench-data} (or {@code -Dshellui.benchData=<dir>})
+ * and only generated again when missing, so a 1 GB log is written once.
+ *
+ * Sizes are JMH parameters, e.g. {@code -p logMegabytes=256 -p treeFiles=20000}.
+ */
+public final class BenchData {
+
+    private static final Path ROOT = Path.of(System.getProperty("shellui.benchData", "target/bench-data"))
+            .toAbsolutePath();
+    private static final String[] LEVELS = {"INFO ", "INFO ", "INFO ", "INFO ", "DEBUG", "DEBUG", "WARN "};
+    private static final String[] EXTENSIONS = {".log", ".txt", ".java", ".json", ".csv"};
+
+    private BenchData() {
+    }
+
+    /** A log of INFO/DEBUG/WARN lines with about one ERROR line in a hundred. */
+    @State(Scope.Benchmark)
+    public static class LogFile {
+
+        @Param("16")
+        public int logMegabytes;
+
+        public Path file;
+
+        @Setup
+        public void setUp() throws IOException {
+            file = log(logMegabytes);
+        }
+    }
+
+    /** A tree of small files, ten per directory and four subdirectories per directory. */
+    @State(Scope.Benchmark)
+    public static class FileTree {
+
+        @Param("2000")
+        public int treeFiles;
+
+        public Path root;
+
+        @Setup
+        public void setUp() throws IOException {
+            root = tree(treeFiles);
+        }
+    }
+
+    /** The first megabytes of the log as one string, the way a command's output reaches the styler. */
+    @State(Scope.Benchmark)
+    public static class LogText {
+
+        @Param("4")
+        public int textMegabytes;
+
+        public String text;
+
+        @Setup
+        public void setUp() throws IOException {
+            text = Files.readString(log(textMegabytes), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Output sink that only counts, so the benchmarks measure the engines and not a document. */
+    static final class CountingSink implements OutputSink {
+
+        private long chars;
+        private long runs;
+
+        @Override
+        public synchronized void append(String text, String style) {
+            chars += text.length();
+            runs++;
+        }
+
+        @Override
+        public synchronized void append(StyledText text) {
+            chars += text.text().length();
+            runs += text.runCount();
+        }
+
+        synchronized long chars() {
+            return chars;
+        }
+
+        synchronized long runs() {
+            return runs;
+        }
+    }
+
+    static CommandTask task(Path directory) {
+        return new CommandTask("benchmark", directory.toFile());
+    }
+
+    static Path scratch(String name) throws IOException {
+        Path directory = ROOT.resolve("scratch").resolve(name);
+        delete(directory);
+        Files.createDirectories(directory.getParent());
+        return directory;
+    }
+
+    static synchronized Path log(int megabytes) throws IOException {
+        Path file = ROOT.resolve("log-" + megabytes + "mb.log");
+        long size = megabytes * 1024L * 1024L;
+        if (Files.isRegularFile(file) && Files.size(file) >= size) {
+            return file;
+        }
+        Files.createDirectories(ROOT);
+        Path partial = ROOT.resolve(file.getFileName() + ".part");
+        Random random = new Random(42);
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(128);
+            for (long n = 0; written < size; n++) {
+                line.setLength(0);
+                line.append(String.format("2024-05-%02d %02d:%02d:%02d.%03d ", 1 + n / 8_640_000 % 28,
+                        n / 360_000 % 24, n / 6000 % 60, n / 100 % 60, n % 100 * 10));
+                if (random.nextInt(100) == 0) {
+                    line.append("ERROR [worker-").append(random.nextInt(16)).append("] request ")
+                            .append(random.nextInt(1_000_000)).append(" failed: connection reset by peer");
+                } else {
+                    line.append(LEVELS[random.nextInt(LEVELS.length)]).append(" [worker-")
+                            .append(random.nextInt(16)).append("] request ").append(random.nextInt(1_000_000))
+                            .append(" served in ").append(random.nextInt(500)).append(" ms from /api/v")
+                            .append(1 + random.nextInt(3)).append("/items/").append(random.nextInt(10_000));
+                }
+                line.append('\n');
+                writer.append(line);
+                written += line.length();
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    static synchronized Path tree(int files) throws IOException {
+        Path root = ROOT.resolve("tree-" + files);
+        Path complete = ROOT.resolve("tree-" + files + ".complete");
+        if (Files.exists(complete)) {
+            return root;
+        }
+        delete(root);
+        Random random = new Random(files);
+        byte[] line = "lorem ipsum dolor sit amet, consectetur adipiscing elit ERROR sed do eiusmod\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < files; i++) {
+            Path parent = root.resolve(directoryPath(i / 10));
+            Files.createDirectories(parent);
+            // Mostly small files, a few larger ones, as in a source tree
+            int size = random.nextInt(20) == 0 ? 64 * 1024 + random.nextInt(256 * 1024) : random.nextInt(8 * 1024);
+            byte[] content = new byte[size];
+            for (int j = 0; j < size; j++) {
+                content[j] = line[j % line.length];
+            }
+            Files.write(parent.resolve("file" + i + EXTENSIONS[i % EXTENSIONS.length]), content);
+        }
+        Files.createFile(complete);
+        return root;
+    }
+
+    /** Directory n of the tree: its parent is (n - 1) / 4, so the tree is about log4(files / 10) deep. */
+    private static String directoryPath(int n) {
+        StringBuilder path = new StringBuilder();
+        while (n > 0) {
+            path.insert(0, File.separator + "dir" + n);
+            n = (n - 1) / 4;
+        }
+        return path.length() == 0 ? "." : path.substring(1);
+    }
+
+    static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static void deleteQuietly(Path root) {
+        try {
+            delete(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
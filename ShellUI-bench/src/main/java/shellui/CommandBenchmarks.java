@@ -0,0 +1,109 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The in-process command engines, as the wc, grep, cp, du and find handlers
+ * run them, with output going to a counting sink instead of the screen.
+ * {@link ForkedBenchmarks} runs the same commands as external processes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmarks {
+
+    /** An empty directory for each cp, removed again outside the measured time. */
+    @State(Scope.Thread)
+    public static class CopyTarget {
+
+        public Path directory;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            directory = BenchData.scratch("cp-target");
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove() throws IOException {
+            BenchData.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public WcEngine.Counts wc(BenchData.LogFile log) throws IOException {
+        return WcEngine.count(log.file, BenchData.task(log.file.getParent()));
+    }
+
+    @Benchmark
+    public List<WcEngine.FileResult> wcRecursive(BenchData.FileTree tree) throws IOException {
+        return WcEngine.countAll(WcEngine.collectFiles(List.of(tree.root), true), BenchData.task(tree.root));
+    }
+
+    @Benchmark
+    public long grepLiteral(BenchData.LogFile log) {
+        return grep("ERROR", false, log.file, false);
+    }
+
+    @Benchmark
+    public long grepIgnoreCase(BenchData.LogFile log) {
+        return grep("connection reset", true, log.file, false);
+    }
+
+    @Benchmark
+    public long grepRegex(BenchData.LogFile log) {
+        return grep("served in [0-9]+7 ms", false, log.file, false);
+    }
+
+    @Benchmark
+    public long grepRecursive(BenchData.FileTree tree) {
+        return grep("ERROR", false, tree.root, true);
+    }
+
+    @Benchmark
+    public long cp(BenchData.FileTree tree, CopyTarget target) {
+        CopyEngine engine = new CopyEngine(new BenchData.CountingSink(), BenchData.task(tree.root));
+        engine.copy(tree.root, target.directory, true);
+        return engine.bytesCopied();
+    }
+
+    @Benchmark
+    public List<DuEngine.Entry> du(BenchData.FileTree tree) {
+        return new DuEngine(new BenchData.CountingSink(), BenchData.task(tree.root), -1).walk(tree.root);
+    }
+
+    @Benchmark
+    public long find(BenchData.FileTree tree) {
+        FindEngine engine = new FindEngine(List.of("-name", "*.log", "-size", "+1k"), tree.root,
+                new BenchData.CountingSink(), BenchData.task(tree.root));
+        return engine.run(tree.root, ".");
+    }
+
+    private static long grep(String pattern, boolean ignoreCase, Path path, boolean recursive) {
+        // Lines are printed, not only counted, so decoding the matches is measured too
+        BenchData.CountingSink sink = new BenchData.CountingSink();
+        new GrepEngine(pattern, ignoreCase, false, false, false, sink, BenchData.task(path))
+                .search(List.of(path), recursive);
+        return sink.chars();
+    }
+}
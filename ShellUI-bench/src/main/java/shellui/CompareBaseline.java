@@ -0,0 +1,146 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH CSV result file ({@code -rf csv}) with the stored baseline
+ * and lists every benchmark that got slower by more than the threshold
+ * (10% unless given) and by more than both runs' error margins together.
+ * Exits with status 1 when there is such a regression, so a build can fail
+ * on it.
+ *
+ * <pre>java -cp target/benchmarks.jar shellui.CompareBaseline baseline/baseline.csv results.csv [percent]</pre>
+ */
+public final class CompareBaseline {
+
+    private record Result(String mode, double score, double error, String unit) {
+
+        /** How many times slower than the other result; above 1 is worse for any mode. */
+        double slowdown(Result baseline) {
+            return mode.equals("thrpt") ? baseline.score / score : score / baseline.score;
+        }
+    }
+
+    private CompareBaseline() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CompareBaseline <baseline.csv> <results.csv> [threshold percent]");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+        double threshold = 1 + (args.length > 2 ? Double.parseDouble(args[2]) : 10) / 100;
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "Baseline", "Now", "Change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14s %9s%n", entry.getKey(), "-", format(now), "new");
+                continue;
+            }
+            if (!before.unit.equals(now.unit) || !before.mode.equals(now.mode)) {
+                System.out.printf("%-60s %14s %14s %9s%n", entry.getKey(), format(before), format(now), "unit?");
+                continue;
+            }
+            double slowdown = now.slowdown(before);
+            boolean beyondError = Math.abs(now.score - before.score) > now.error + before.error;
+            boolean regressed = slowdown > threshold && beyondError;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14s %14s %+8.1f%%%s%n", entry.getKey(), format(before), format(now),
+                    (slowdown - 1) * 100, regressed ? "  REGRESSION" : "");
+        }
+        for (String missing : baseline.keySet()) {
+            if (!current.containsKey(missing)) {
+                System.out.printf("%-60s %14s %14s %9s%n", missing, format(baseline.get(missing)), "-", "not run");
+            }
+        }
+        System.out.printf("%d regression%s%n", regressions, regressions == 1 ? "" : "s");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /** Results by benchmark name plus its parameters, e.g. {@code shellui.CommandBenchmarks.wc logMegabytes=16}. */
+    private static Map<String, Result> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        if (lines.isEmpty()) {
+            throw new RuntimeException(file + ": empty result file");
+        }
+        List<String> header = parseCsvLine(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        if (benchmark < 0 || mode < 0 || score < 0 || unit < 0) {
+            throw new RuntimeException(file + ": not a JMH CSV result file");
+        }
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = parseCsvLine(line);
+            StringBuilder key = new StringBuilder(fields.get(benchmark));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            double margin = error >= 0 ? parseNumber(fields.get(error)) : 0;
+            results.put(key.toString(), new Result(fields.get(mode), parseNumber(fields.get(score)),
+                    Double.isNaN(margin) ? 0 : margin, fields.get(unit)));
+        }
+        return results;
+    }
+
+    private static double parseNumber(String field) {
+        return field.isEmpty() || field.equals("NaN") ? Double.NaN : Double.parseDouble(field.replace(',', '.'));
+    }
+
+    private static String format(Result result) {
+        return String.format("%.3f %s", result.score, result.unit);
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
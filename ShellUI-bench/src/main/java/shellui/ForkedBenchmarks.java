@@ -0,0 +1,134 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same commands as {@link CommandBenchmarks}, run as external processes
+ * and read with {@link CommandEngine#readProcessOutput}, as ShellUI does for
+ * commands it has no engine for. Needs the POSIX tools on the PATH.
+ *
+ * {@link #spawn} and {@link #coprocess} measure what is left when the
+ * command does next to nothing ({@code uname}, which is not a shell
+ * builtin): starting a process from the JVM against running it in the
+ * persistent shell.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForkedBenchmarks {
+
+    /** An empty directory for each cp, removed again outside the measured time. */
+    @State(Scope.Thread)
+    public static class CopyTarget {
+
+        public Path directory;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            directory = BenchData.scratch("cp-forked-target");
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove() throws IOException {
+            BenchData.delete(directory);
+        }
+    }
+
+    /** One persistent shell for the whole run. */
+    @State(Scope.Thread)
+    public static class Shell {
+
+        public Coprocess coprocess;
+
+        @Setup
+        public void start() {
+            coprocess = new Coprocess();
+        }
+
+        @TearDown
+        public void stop() {
+            coprocess.close();
+        }
+    }
+
+    @Benchmark
+    public String wc(BenchData.LogFile log) throws IOException, InterruptedException {
+        return run(log.file.getParent(), "wc", log.file.toString());
+    }
+
+    @Benchmark
+    public String grep(BenchData.LogFile log) throws IOException, InterruptedException {
+        return run(log.file.getParent(), "grep", "ERROR", log.file.toString());
+    }
+
+    @Benchmark
+    public String grepRecursive(BenchData.FileTree tree) throws IOException, InterruptedException {
+        return run(tree.root, "grep", "-r", "ERROR", ".");
+    }
+
+    @Benchmark
+    public String cp(BenchData.FileTree tree, CopyTarget target) throws IOException, InterruptedException {
+        return run(tree.root, "cp", "-r", tree.root.toString(), target.directory.toString());
+    }
+
+    @Benchmark
+    public String du(BenchData.FileTree tree) throws IOException, InterruptedException {
+        return run(tree.root, "du", "-k", ".");
+    }
+
+    @Benchmark
+    public String find(BenchData.FileTree tree) throws IOException, InterruptedException {
+        return run(tree.root, "find", ".", "-name", "*.log", "-size", "+1k");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String spawn() throws IOException, InterruptedException {
+        return run(Path.of("."), "uname");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String coprocess(Shell shell) throws IOException, InterruptedException {
+        Process process = shell.coprocess.start(new ProcessBuilder("uname").redirectErrorStream(true));
+        if (process == null) {
+            throw new IllegalStateException("coprocess is busy or uname is not on the PATH");
+        }
+        String output = CommandEngine.readProcessOutput(process);
+        process.waitFor();
+        return output;
+    }
+
+    private static String run(Path directory, String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(List.of(command)).directory(directory.toFile())
+                .redirectErrorStream(true).start();
+        String output = CommandEngine.readProcessOutput(process);
+        int exitCode = process.waitFor();
+        if (exitCode > (command[0].equals("grep") ? 1 : 0)) {
+            // grep exits with 1 when nothing matched
+            throw new IllegalStateException(String.join(" ", command) + " exited with " + exitCode + ": " + output);
+        }
+        return output;
+    }
+}
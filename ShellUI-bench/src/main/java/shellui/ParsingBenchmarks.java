@@ -0,0 +1,61 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Argument parsing, which every command line goes through before anything
+ * runs: redirections, pipe stages, words and the quoted paths of the file
+ * commands.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmarks {
+
+    private static final String PATHS = "\"My Documents/report 2024.txt\" notes.txt src/main/java \"a b c\" /tmp/out";
+    private static final String PIPELINE = "cat \"server log.txt\" | grep -i 'connection reset' | sort -r | uniq -c"
+            + " | head -20 > errors.txt 2>&1";
+    private static final String FIND = "find . -name '*.java' -o ( -type d -name target -prune ) -mtime -7";
+    private static final File DIRECTORY = new File(System.getProperty("user.dir"));
+
+    @Benchmark
+    public String[] parsePaths() {
+        return CommandEngine.parsePaths(PATHS);
+    }
+
+    @Benchmark
+    public Redirection.Parsed redirection() {
+        return Redirection.parse(PIPELINE, DIRECTORY);
+    }
+
+    @Benchmark
+    public List<String> stages() {
+        return Pipeline.stages(PIPELINE);
+    }
+
+    @Benchmark
+    public List<String> words() {
+        return Pipeline.split(FIND);
+    }
+
+    @Benchmark
+    public FindEngine findExpression() {
+        List<String> words = Pipeline.split(FIND);
+        return new FindEngine(words.subList(2, words.size()), DIRECTORY.toPath(), new BenchData.CountingSink(), null);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Output styling: classifying command output line by line, as
+ * {@code highlightOutput} does on the command thread, and storing the
+ * styled lines the way the output view keeps them. Painting is left out, it
+ * needs a display.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StylingBenchmarks {
+
+    private static final int SCROLLBACK_LINES = 100_000;
+    private static final List<String> STYLES = List.of("output", "error", "command", "directory", "default");
+
+    @Benchmark
+    public long highlightDefault(BenchData.LogText log) {
+        BenchData.CountingSink sink = new BenchData.CountingSink();
+        StyledText.highlight(log.text, Highlighter.DEFAULT, true, sink);
+        return sink.runs();
+    }
+
+    @Benchmark
+    public long highlightGrep(BenchData.LogText log) {
+        BenchData.CountingSink sink = new BenchData.CountingSink();
+        StyledText.highlight(log.text, Highlighter.GREP, false, sink);
+        return sink.runs();
+    }
+
+    @Benchmark
+    public int highlightAndStore(BenchData.LogText log) {
+        LineStore store = new LineStore(SCROLLBACK_LINES);
+        StyledText.highlight(log.text, Highlighter.DEFAULT, true, new OutputSink() {
+            @Override
+            public void append(String text, String style) {
+                store.append(text, styleId(style));
+            }
+
+            @Override
+            public void append(StyledText text) {
+                for (int run = 0; run < text.runCount(); run++) {
+                    store.append(text.text().subSequence(text.runStart(run), text.runEnd(run)),
+                            styleId(text.runStyle(run)));
+                }
+            }
+        });
+        return store.lineCount();
+    }
+
+    /** The style's number, looked up like the output view does. */
+    private static byte styleId(String style) {
+        return (byte) STYLES.indexOf(style);
+    }
+}
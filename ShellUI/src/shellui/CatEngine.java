@@ -0,0 +1,156 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+
+/**
+ * In-process {@code cat}. Each file is read through its channel into one
+ * reused 64 KB direct buffer and decoded straight into the output sink, so
+ * memory use does not depend on the file size and several files are simply
+ * streamed one after the other. The output pipeline applies back-pressure,
+ * which keeps the UI responsive and Cancel working while a huge file runs.
+ *
+ * The first block is sniffed before anything is printed: a file that looks
+ * binary gets a short hex preview instead of a screen of garbage.
+ */
+final class CatEngine {
+
+    static final int PREVIEW_BYTES = 512;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int SNIFF_BYTES = 8192;
+    private static final int HEX_LINE_BYTES = 16;
+    private static final int HEX_FLUSH_CHARS = 64 * 1024;
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+    CatEngine(OutputSink out, CommandTask task) {
+        this.out = out;
+        this.task = task;
+    }
+
+    /**
+     * Streams the file as UTF-8 text. If it looks binary and {@code asText}
+     * is false, only a hex preview is printed and false is returned.
+     */
+    boolean cat(Path file, boolean asText) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            channel.read(buffer);
+            buffer.flip();
+            if (!asText && looksBinary(buffer)) {
+                out.append(hexLines(buffer.limit(Math.min(buffer.limit(), PREVIEW_BYTES)), 0), "output");
+                return false;
+            }
+            DecodingWriter writer = new DecodingWriter(out);
+            writer.write(buffer);
+            while (true) {
+                checkCancelled();
+                if (channel.read(buffer.clear()) <= 0) {
+                    break;
+                }
+                writer.write(buffer.flip());
+            }
+            writer.finish();
+            return true;
+        }
+    }
+
+    /** Streams a hex dump of the whole file. */
+    void hexDump(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long offset = 0;
+            StringBuilder text = new StringBuilder();
+            // Whole lines only, so each chunk is a multiple of the line width
+            buffer.clear().limit(CHUNK_SIZE / HEX_LINE_BYTES * HEX_LINE_BYTES);
+            while (readFully(channel, buffer) > 0) {
+                checkCancelled();
+                buffer.flip();
+                int length = buffer.limit();
+                text.append(hexLines(buffer, offset));
+                offset += length;
+                if (text.length() >= HEX_FLUSH_CHARS) {
+                    out.append(text.toString(), "output");
+                    text.setLength(0);
+                }
+                buffer.clear().limit(CHUNK_SIZE / HEX_LINE_BYTES * HEX_LINE_BYTES);
+            }
+            out.append(text.toString(), "output");
+        }
+    }
+
+    /**
+     * True if the start of a file is not text: it contains a NUL byte, or
+     * more than one byte in ten is a control character other than the usual
+     * whitespace, backspace and escape.
+     */
+    static boolean looksBinary(ByteBuffer head) {
+        int length = Math.min(head.remaining(), SNIFF_BYTES);
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int b = head.get(head.position() + i) & 0xFF;
+            if (b == 0) {
+                return true;
+            }
+            if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1B) || b == 0x7F) {
+                control++;
+            }
+        }
+        return control * 10 > length;
+    }
+
+    /** xxd-style lines for the remaining bytes: offset, 16 bytes in hex, and their ASCII. */
+    static String hexLines(ByteBuffer bytes, long offset) {
+        StringBuilder text = new StringBuilder(bytes.remaining() * 4 + 64);
+        for (int start = bytes.position(); start < bytes.limit(); start += HEX_LINE_BYTES) {
+            int end = Math.min(start + HEX_LINE_BYTES, bytes.limit());
+            text.append(String.format("%08x: ", offset + start - bytes.position()));
+            for (int i = start; i < start + HEX_LINE_BYTES; i++) {
+                if (i < end) {
+                    text.append(Character.forDigit((bytes.get(i) >> 4) & 0xF, 16))
+                            .append(Character.forDigit(bytes.get(i) & 0xF, 16));
+                } else {
+                    text.append("  ");
+                }
+                if ((i - start) % 2 == 1) {
+                    text.append(' ');
+                }
+            }
+            text.append(' ');
+            for (int i = start; i < end; i++) {
+                int b = bytes.get(i) & 0xFF;
+                text.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+}
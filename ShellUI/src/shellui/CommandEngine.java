@@ -0,0 +1,1923 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The shell's commands without a window: parsing a command line, the
+ * built-in handlers, external programs, pipes and redirection. Output goes
+ * to the {@link Job} of the command running on the calling thread, or to
+ * the console sink given here; nothing in this class touches Swing, so the
+ * same engine runs behind the window and in {@link HeadlessShell}.
+ *
+ * A front end starts each command on a {@link CommandTask} and calls
+ * {@link #run} on it; {@link #runInline} answers the commands that need no
+ * thread of their own. What only a screen can do (the pager, the directory
+ * label, the history) is asked of the {@link Frontend}.
+ */
+final class CommandEngine implements Closeable {
+
+    /** The parts of some commands that belong to the front end. */
+    interface Frontend {
+
+        /** Shows the file in a pager and takes ownership of it; false if there is none, then less prints the file. */
+        boolean page(PagedFile file);
+
+        /** Called on the caller's thread after cd changed the current directory. */
+        void directoryChanged(File directory);
+
+        /** The text of the history command. */
+        String history(String arguments);
+    }
+
+    // Supported commands
+    static final String[] SUPPORTED_COMMANDS = {
+        "ls", "pwd", "mkdir", "cd", "man", "touch", "cp",
+        "mv", "rm", "rmdir", "cat", "less", "head", "tail", "grep",
+        "wc", "chmod", "chown", "chgrp", "addUser", "addGroup",
+        "ps", "quotacheck", "du", "gzip", "gunzip", "file", "find",
+        "locate", "updatedb", "wget", "accessrights", "coprocess", "jobs", "fg", "kill",
+        "stats", "history", "clear"
+    };
+
+    // Commands executeSystemCommand runs in-process; the others are external programs
+    static final Set<String> BUILTIN_COMMANDS = Set.of(
+        "cp", "mv", "cat", "less", "head", "tail", "grep", "wc", "chmod", "chown",
+        "chgrp", "addUser", "addGroup", "ps", "quotacheck", "du", "gzip", "gunzip",
+        "file", "find", "locate", "updatedb", "wget", "accessrights", "coprocess"
+    );
+
+    // Commands that answer at once on the caller's thread and can also feed a pipe or a file
+    static final Set<String> INLINE_COMMANDS = Set.of("pwd", "man", "history", "stats");
+
+    private final OutputSink console;
+    private final Frontend frontend;
+    private final boolean isWindows;
+    private volatile File currentDirectory;
+    // Runs external commands in one long-lived shell when on; null when off
+    private volatile Coprocess coprocess;
+
+    /**
+     * @param console where output goes when no command is running on the
+     *        calling thread, and where each command's {@link Job} shows it
+     */
+    CommandEngine(File directory, OutputSink console, Frontend frontend) {
+        this.console = console;
+        this.frontend = frontend;
+        this.isWindows = System.getProperty("os.name").toLowerCase().contains("win");
+        this.currentDirectory = directory;
+        if (Boolean.getBoolean("shellui.coprocess") && !isWindows) {
+            coprocess = new Coprocess();
+        }
+    }
+
+    /** A command line taken apart: its pipe stages, and the redirections of the last one. */
+    record Parsed(List<String> stages, Redirection redirection) {
+
+        /** True for a single command without redirections. */
+        boolean isSimple() {
+            return stages.size() == 1 && redirection.isNone();
+        }
+    }
+
+    /** Splits a command line into stages and redirections; syntax errors are RuntimeExceptions. */
+    Parsed parse(String commandLine) {
+        List<String> stages = new ArrayList<>(Pipeline.stages(commandLine));
+        for (int i = 0; i < stages.size() - 1; i++) {
+            if (!Redirection.parse(stages.get(i), currentDirectory).redirection().isNone()) {
+                throw new RuntimeException("only the last command of a pipeline can be redirected");
+            }
+        }
+        Redirection.Parsed last = Redirection.parse(stages.get(stages.size() - 1), currentDirectory);
+        if (last.command().isEmpty()) {
+            throw new RuntimeException("no command to redirect");
+        }
+        stages.set(stages.size() - 1, last.command());
+        return new Parsed(stages, last.redirection());
+    }
+
+    File currentDirectory() {
+        return currentDirectory;
+    }
+
+    boolean isWindows() {
+        return isWindows;
+    }
+
+    /**
+     * Runs cd, pwd, man or stats on the calling thread and returns what it
+     * prints, or null for any other command.
+     */
+    String runInline(String command, String arguments) {
+        switch (command) {
+            case "cd":
+                return changeDirectory(arguments) + "\n";
+            case "pwd":
+                return currentDirectory.getAbsolutePath() + "\n";
+            case "man":
+                return getManualPage(arguments) + "\n";
+            case "stats":
+                return showStats(arguments);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Runs a command line on the task's thread: a pipeline or redirection
+     * through {@link Pipeline}, anything else through its handler or as an
+     * external program, with the output highlighted for the command.
+     */
+    void run(String command, String arguments, Parsed parsed, CommandTask task) throws Exception {
+        if (!parsed.isSimple()) {
+            runPipeline(parsed.stages(), parsed.redirection(), task);
+        } else if (command.equals("accessrights")) {
+            appendToOutput(displayAccessRights(arguments) + "\n", "output");
+        } else {
+            // Execute system command
+            String output = executeSystemCommand(command, arguments);
+            task.checkCancelled();
+            highlightOutput(output);
+        }
+    }
+
+    /** Ends the persistent shell, if one is running. */
+    @Override
+    public void close() {
+        Coprocess shell = coprocess;
+        coprocess = null;
+        if (shell != null) {
+            shell.close();
+        }
+    }
+
+    /**
+     * Runs {@code a | b | c} with all stages streaming into each other at
+     * once, and any command with {@code >}, {@code >>} or {@code 2>}; then
+     * the output goes to a file and only a summary line is shown.
+     */
+    private void runPipeline(List<String> stages, Redirection redirection, CommandTask task)
+            throws InterruptedException, IOException {
+        Pipeline.Builtins builtins = new Pipeline.Builtins() {
+            @Override
+            public boolean isBuiltin(String command) {
+                // On Windows the shell's own command mapping is needed for ls, rm and the like
+                return BUILTIN_COMMANDS.contains(command) || INLINE_COMMANDS.contains(command)
+                        || isWindows && Arrays.asList(SUPPORTED_COMMANDS).contains(command);
+            }
+
+            @Override
+            public String run(String command, String arguments) throws Exception {
+                switch (command) {
+                    case "pwd":
+                        return workingDirectory().getAbsolutePath();
+                    case "man":
+                        return getManualPage(arguments);
+                    case "stats":
+                        return showStats(arguments);
+                    case "history":
+                        return frontend.history(arguments);
+                    default:
+                        return executeSystemCommand(command, arguments);
+                }
+            }
+        };
+        String last = stages.get(stages.size() - 1);
+        int space = last.indexOf(' ');
+        Highlighter highlighter = Highlighter.forCommand(space < 0 ? last : last.substring(0, space));
+
+        long outputStart = redirection.outputStart();
+        long startNanos = System.nanoTime();
+        new Pipeline(stages, builtins, workingDirectory(), isWindows, highlighted(highlighter), screen(),
+                redirection, task).run();
+        if (redirection.output() != null) {
+            appendToOutput(redirection.summary(outputStart, startNanos), "directory");
+        }
+    }
+
+    private String showStats(String arguments) {
+        if (arguments.equals("-r")) {
+            CommandMetrics.reset();
+            return "Statistics cleared\n";
+        }
+        return CommandMetrics.report(arguments);
+    }
+
+    private Process startProcess(ProcessBuilder pb) throws IOException {
+        Coprocess shell = coprocess;
+        CommandMetrics.Timing spawn = CommandMetrics.time(CommandMetrics.Phase.SPAWN);
+        Process process = shell != null && Coprocess.accepts(pb) ? shell.start(pb) : null;
+        if (process == null) {
+            process = pb.start();
+        }
+        spawn.stop();
+        CommandTask task = CommandTask.current();
+        if (task != null) {
+            task.track(process);
+        }
+        return process;
+    }
+
+    private String changeDirectory(String dirPath) {
+        File newDir;
+        if (dirPath.isEmpty()) {
+            // Change to home directory
+            newDir = new File(System.getProperty("user.home"));
+        } else if (dirPath.equals("..")) {
+            // Move up one directory
+            newDir = currentDirectory.getParentFile();
+        } else if (dirPath.startsWith("/") || dirPath.startsWith("\\")
+                || (dirPath.length() > 1 && dirPath.charAt(1) == ':')) {
+            // Absolute path
+            newDir = new File(dirPath);
+        } else {
+            // Relative path
+            newDir = new File(currentDirectory, dirPath);
+        }
+
+        if (newDir.exists() && newDir.isDirectory()) {
+            currentDirectory = newDir;
+            frontend.directoryChanged(currentDirectory);
+            return "Changed directory to: " + currentDirectory.getAbsolutePath();
+        } else {
+            throw new RuntimeException("Directory not found: " + newDir.getAbsolutePath());
+        }
+    }
+
+    private String displayAccessRights(String path) {
+        File file;
+        if (path.isEmpty()) {
+            file = workingDirectory();
+        } else if (path.startsWith("/") || path.startsWith("\\")
+                || (path.length() > 1 && path.charAt(1) == ':')) {
+            file = new File(path);
+        } else {
+            file = new File(workingDirectory(), path);
+        }
+
+        if (!file.exists()) {
+            throw new RuntimeException("File/directory not found: " + file.getAbsolutePath());
+        }
+
+        StringBuilder rights = new StringBuilder();
+        rights.append("Access rights for: ").append(file.getAbsolutePath()).append("\n");
+
+        if (isWindows) {
+            rights.append("Readable: ").append(file.canRead()).append("\n");
+            rights.append("Writable: ").append(file.canWrite()).append("\n");
+            rights.append("Executable: ").append(file.canExecute()).append("\n");
+            rights.append("Hidden: ").append(file.isHidden()).append("\n");
+        } else {
+            try {
+                Process process = startProcess(new ProcessBuilder("ls", "-ld", file.getAbsolutePath())
+                        .directory(workingDirectory()));
+
+                String output = readProcessOutput(process);
+                rights.append(output);
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to get access rights: " + ex.getMessage());
+            }
+        }
+
+        return rights.toString();
+    }
+
+    private String executeSystemCommand(String command, String arguments) throws IOException, InterruptedException {
+        List<String> commandParts = new ArrayList<>();
+        // Handle commands specially
+        switch (command) {
+            case "cp":
+                return handleCopyCommand(arguments);
+            case "mv":
+                return handleMoveCommand(arguments);
+            case "cat":
+                return handleCatCommand(arguments);
+            case "less":
+                return handleLessCommand(arguments);
+            case "head":
+                return handleHeadCommand(arguments);
+            case "tail":
+                return handleTailCommand(arguments);
+            case "grep":
+                return handleGrepCommand(arguments);
+            case "wc":
+                return handleWcCommand(arguments);
+            case "chmod":
+                return handleChmodCommand(arguments);
+            case "chown":
+                return handleChownCommand(arguments);
+            case "chgrp":
+                return handleChgrpCommand(arguments);
+            case "addUser":
+                return handleAddUserCommand(arguments);
+            case "addGroup":
+                return handleAddGroupCommand(arguments);
+            case "ps":
+                return handlePsCommand(arguments);
+            case "quotacheck":
+                return handleQuotacheckCommand(arguments);
+            case "du":
+                return handleDuCommand(arguments);
+            case "gzip":
+                return handleGzipCommand(arguments, false);
+            case "gunzip":
+                return handleGzipCommand(arguments, true);
+            case "file":
+                return handleFileCommand(arguments);
+            case "find":
+                return handleFindCommand(arguments);
+            case "locate":
+                return handleLocateCommand(arguments);
+            case "updatedb":
+                return handleUpdatedbCommand(arguments);
+            case "wget":
+                return handleWgetCommand(arguments);
+            case "coprocess":
+                return handleCoprocessCommand(arguments);
+            case "accessrights":
+                return handleAccessRightsCommand(arguments);
+            default:
+            // Default command handling
+        }
+        if (isWindows) {
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+
+            // Special handling for Windows commands
+            switch (command) {
+                case "cp":
+                    commandParts.add("copy");
+                    break;
+                case "ls":
+                    commandParts.add("dir");
+                    break;
+                case "mkdir":
+                    commandParts.add("mkdir");
+                    break;
+                case "touch":
+                    // Special handling for touch command
+                    if (arguments.isEmpty()) {
+                        throw new RuntimeException("touch requires a filename argument");
+                    }
+                    File touchFile = arguments.startsWith("/") || arguments.startsWith("\\")
+                            || (arguments.length() > 1 && arguments.charAt(1) == ':')
+                            ? new File(arguments) : new File(workingDirectory(), arguments);
+                    if (!touchFile.exists()) {
+                        try {
+                            if (!touchFile.createNewFile()) {
+                                throw new RuntimeException("Failed to create file: " + touchFile.getAbsolutePath());
+                            }
+                            return "Created empty file: " + touchFile.getAbsolutePath();
+                        } catch (IOException e) {
+                            throw new RuntimeException("Error creating file: " + e.getMessage());
+                        }
+                    } else {
+                        return "File already exists: " + touchFile.getAbsolutePath();
+                    }
+                case "rm":
+                    commandParts.add("del");
+                    break;
+                case "rmdir":
+                    commandParts.add("rmdir");
+                    break;
+                default:
+                    // For commands that are the same in Windows
+                    commandParts.add(command);
+            }
+
+            if (!arguments.isEmpty() && !command.equals("touch")) {
+                commandParts.add(arguments);
+            }
+        } else {
+            // Unix-like systems - just use the command directly
+            commandParts.add(command);
+            if (!arguments.isEmpty()) {
+                commandParts.addAll(Arrays.asList(arguments.split(" ")));
+            }
+            // Handle arguments for copy command
+            if (command.equals("cp") && !arguments.isEmpty()) {
+                // Split arguments while preserving paths with spaces
+                String[] args = arguments.split(" (?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
+                for (String arg : args) {
+                    commandParts.add(arg.replace("\"", ""));
+                }
+            } else if (!arguments.isEmpty()) {
+                commandParts.add(arguments);
+            }
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(commandParts);
+        pb.directory(workingDirectory());
+        pb.redirectErrorStream(true); // Merge error stream with output
+
+        Process process = startProcess(pb);
+        streamProcessOutput(process);
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new RuntimeException("Command failed with exit code " + exitCode);
+        }
+
+        return "";
+    }
+
+    private String handleCopyCommand(String arguments) {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("cp requires source and destination arguments");
+        }
+
+        // Parse options, source and destination paths
+        boolean recursive = false;
+        List<String> paths = new ArrayList<>();
+        for (String part : parsePaths(arguments)) {
+            if (part.equals("-r") || part.equals("-R") || part.equals("--recursive")) {
+                recursive = true;
+            } else {
+                paths.add(part);
+            }
+        }
+        if (paths.size() < 2) {
+            throw new RuntimeException("cp requires both source and destination arguments");
+        }
+
+        // Copy in-process: zero-copy channel transfers, parallel for -r
+        CopyEngine engine = new CopyEngine(output(), CommandTask.current());
+        String destination = paths.get(paths.size() - 1);
+        File destFile = resolvePath(destination);
+        if (paths.size() > 2) {
+            List<Path> sources = new ArrayList<>();
+            for (String source : paths.subList(0, paths.size() - 1)) {
+                sources.add(resolvePath(source).toPath());
+            }
+            return "Copied successfully: " + String.join(", ", paths.subList(0, paths.size() - 1))
+                    + " → " + destination + "\n" + engine.copyAll(sources, destFile.toPath(), recursive);
+        }
+
+        String source = paths.get(0);
+        if ((destination.endsWith("\\") || destination.endsWith("/")) && !destFile.exists()) {
+            // Destination is a directory
+            destFile.mkdirs();  // Create directory if it doesn't exist
+        }
+        return "Copied successfully: " + source + " → " + destination + "\n"
+                + engine.copy(resolvePath(source).toPath(), destFile.toPath(), recursive);
+    }
+
+    /** The directory the running command was started in; a later cd does not affect it. */
+    private File workingDirectory() {
+        CommandTask task = CommandTask.current();
+        return task != null ? task.getDirectory() : currentDirectory;
+    }
+
+    private File resolvePath(String path) {
+        if (path.startsWith("/") || path.startsWith("\\")
+                || (path.length() > 1 && path.charAt(1) == ':')) {
+            return new File(path);
+        }
+        return new File(workingDirectory(), path);
+    }
+
+    static String[] parsePaths(String arguments) {
+        // Handle quoted paths containing spaces
+        List<String> paths = new ArrayList<>();
+        StringBuilder currentPath = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (char c : arguments.toCharArray()) {
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (Character.isWhitespace(c) && !inQuotes) {
+                if (currentPath.length() > 0) {
+                    paths.add(currentPath.toString());
+                    currentPath.setLength(0);
+                }
+            } else {
+                currentPath.append(c);
+            }
+        }
+
+        if (currentPath.length() > 0) {
+            paths.add(currentPath.toString());
+        }
+
+        return paths.toArray(new String[0]);
+    }
+
+    private String handleMoveCommand(String arguments) {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("mv requires source and destination arguments");
+        }
+
+        // Parse source and destination paths
+        String[] paths = parsePaths(arguments);
+        if (paths.length < 2) {
+            throw new RuntimeException("mv requires both source and destination arguments");
+        }
+
+        String destination = paths[paths.length - 1];
+        File destFile = resolvePath(destination);
+        if ((destination.endsWith("\\") || destination.endsWith("/")) && !destFile.exists()) {
+            // Destination is a directory
+            destFile.mkdirs();  // Create directory if it doesn't exist
+        }
+
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < paths.length - 1; i++) {
+            sources.add(resolvePath(paths[i]).toPath());
+        }
+
+        // Rename in-process; falls back to copy + delete across devices
+        String summary = new MoveEngine(output(), CommandTask.current())
+                .move(sources, destFile.toPath());
+        String moved = String.join(", ", Arrays.asList(paths).subList(0, paths.length - 1));
+        return "Moved successfully: " + moved + " → " + destination + "\n" + summary;
+    }
+
+    private String handleCatCommand(String arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("cat requires at least one file argument");
+        }
+
+        // Parse options and file paths (handling spaces in filenames)
+        boolean asText = false;
+        boolean hex = false;
+        List<File> files = new ArrayList<>();
+        for (String part : parsePaths(arguments)) {
+            if (part.equals("-a") || part.equals("--text")) {
+                asText = true;
+            } else if (part.equals("-x")) {
+                hex = true;
+            } else {
+                File file = resolvePath(part);
+                if (!file.isFile()) {
+                    throw new RuntimeException("File not found: " + part);
+                }
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new RuntimeException("cat requires at least one file argument");
+        }
+
+        // Stream each file in fixed-size chunks; binary files get a hex preview
+        OutputSink out = output();
+        CatEngine engine = new CatEngine(out, CommandTask.current());
+        for (File file : files) {
+            if (out instanceof FileSink sink && !hex) {
+                // cat > file: the bytes go across unchanged, without being decoded
+                sink.transferFrom(file.toPath(), CommandTask.current());
+            } else if (hex) {
+                engine.hexDump(file.toPath());
+            } else if (!engine.cat(file.toPath(), asText)) {
+                appendToOutput(String.format("cat: %s is a binary file (%s); above are its first %d bytes.%n"
+                        + "Use cat -x for a full hex dump or cat -a to print it as text.%n",
+                        file.getName(), Sizes.format(file.length()), CatEngine.PREVIEW_BYTES), "directory");
+            }
+        }
+        return "";
+    }
+
+    private String handleCoprocessCommand(String arguments) {
+        switch (arguments) {
+            case "on":
+                if (isWindows) {
+                    throw new RuntimeException("coprocess needs /bin/sh and is not available on Windows");
+                }
+                if (coprocess == null) {
+                    coprocess = new Coprocess();
+                }
+                return "Coprocess on: external commands run in one long-lived shell";
+            case "off":
+                Coprocess shell = coprocess;
+                coprocess = null;
+                if (shell != null) {
+                    shell.close();
+                }
+                return "Coprocess off: each external command starts its own process";
+            case "":
+            case "status":
+                Coprocess current = coprocess;
+                return "Coprocess: " + (current != null ? current.status() : "off");
+            default:
+                throw new RuntimeException("coprocess takes on, off or status");
+        }
+    }
+
+    private String handleLessCommand(String arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("less requires a file argument");
+        }
+
+        String[] parts = parsePaths(arguments);
+        if (parts.length > 1) {
+            throw new RuntimeException("less only supports one file at a time");
+        }
+
+        File file = resolvePath(parts[0]);
+        if (!file.isFile()) {
+            throw new RuntimeException("File not found: " + parts[0]);
+        }
+
+        // Built-in pager: the file is mapped, not read, so this returns at once for any size
+        PagedFile pagedFile = PagedFile.open(file.toPath());
+        if (!frontend.page(pagedFile)) {
+            // No screen to page on; like less with its output not on a terminal, print the file
+            pagedFile.close();
+            return handleCatCommand(arguments);
+        }
+        return "Opened " + parts[0] + " in the pager (Space/b to page, / to search, q to close)";
+    }
+
+    private String handleHeadCommand(String arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("head requires a file argument");
+        }
+
+        // Parse -n N / -nN / -N and the files
+        long lines = 10; // default
+        List<String> files = new ArrayList<>();
+        String[] parts = parsePaths(arguments);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.equals("-n") && i + 1 < parts.length) {
+                lines = parseLineCount(parts[++i]);
+            } else if (part.startsWith("-n")) {
+                lines = parseLineCount(part.substring(2));
+            } else if (part.length() > 1 && part.startsWith("-") && Character.isDigit(part.charAt(1))) {
+                lines = parseLineCount(part.substring(1));
+            } else {
+                files.add(part);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new RuntimeException("head requires a file argument");
+        }
+
+        // Reads forward only as far as the last line printed
+        for (String filePath : files) {
+            File file = resolvePath(filePath);
+            if (!file.isFile()) {
+                throw new RuntimeException("File not found: " + filePath);
+            }
+            if (files.size() > 1) {
+                appendToOutput("==> " + filePath + " <==\n", "directory");
+            }
+            HeadTailEngine.head(file.toPath(), lines, output(), CommandTask.current());
+        }
+        return "";
+    }
+
+    private String handleTailCommand(String arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("tail requires a file argument");
+        }
+
+        // Parse -n N / -nN / -N, -f and the files
+        long lines = 10; // default
+        boolean follow = false;
+        List<String> files = new ArrayList<>();
+        String[] parts = parsePaths(arguments);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.equals("-f")) {
+                follow = true;
+            } else if (part.equals("-n") && i + 1 < parts.length) {
+                lines = parseLineCount(parts[++i]);
+            } else if (part.startsWith("-n")) {
+                lines = parseLineCount(part.substring(2));
+            } else if (part.length() > 1 && part.startsWith("-") && Character.isDigit(part.charAt(1))) {
+                lines = parseLineCount(part.substring(1));
+            } else {
+                files.add(part);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new RuntimeException("tail requires a file argument");
+        }
+        if (follow && files.size() > 1) {
+            throw new RuntimeException("tail -f follows a single file");
+        }
+
+        // Seeks backwards from the end, so the size of the file does not matter
+        for (String filePath : files) {
+            File file = resolvePath(filePath);
+            if (!file.isFile()) {
+                throw new RuntimeException("File not found: " + filePath);
+            }
+            if (files.size() > 1) {
+                appendToOutput("==> " + filePath + " <==\n", "directory");
+            }
+            long end = HeadTailEngine.tail(file.toPath(), lines, output(), CommandTask.current());
+            if (follow) {
+                // Runs until cancelled (Cancel / Ctrl+C)
+                HeadTailEngine.follow(file.toPath(), end, output(), CommandTask.current());
+            }
+        }
+        return "";
+    }
+
+    private static long parseLineCount(String value) {
+        try {
+            long lines = Long.parseLong(value);
+            if (lines >= 0) {
+                return lines;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new RuntimeException("Invalid line count: " + value);
+    }
+
+    private String handleGrepCommand(String arguments) {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("grep requires a pattern and file argument");
+        }
+
+        // Parse options, pattern and file paths (handling quoted strings)
+        boolean recursive = false;
+        boolean ignoreCase = false;
+        boolean invert = false;
+        boolean countOnly = false;
+        boolean filesOnly = false;
+        String pattern = null;
+        List<Path> paths = new ArrayList<>();
+        for (String part : parsePaths(arguments)) {
+            if (pattern == null && part.startsWith("-") && part.length() > 1) {
+                for (char option : part.substring(1).toCharArray()) {
+                    switch (option) {
+                        case 'r', 'R' -> recursive = true;
+                        case 'i' -> ignoreCase = true;
+                        case 'v' -> invert = true;
+                        case 'c' -> countOnly = true;
+                        case 'l' -> filesOnly = true;
+                        case 'n' -> {
+                            // Line numbers are always shown
+                        }
+                        default -> throw new RuntimeException("grep: invalid option -- '" + option + "'");
+                    }
+                }
+            } else if (pattern == null) {
+                pattern = part;
+            } else {
+                if (!resolvePath(part).exists()) {
+                    throw new RuntimeException("File not found: " + part);
+                }
+                paths.add(Path.of(part));
+            }
+        }
+        if (pattern == null) {
+            throw new RuntimeException("grep requires a pattern");
+        }
+        if (paths.isEmpty()) {
+            if (!recursive) {
+                throw new RuntimeException("grep requires both pattern and file arguments");
+            }
+            // Names below the working directory are printed without a ./ prefix, like GNU grep
+            paths.add(Path.of(""));
+        }
+
+        // Search in-process; matches are streamed to the output as they are found
+        new GrepEngine(pattern, ignoreCase, invert, countOnly, filesOnly, highlighted(Highlighter.GREP),
+                CommandTask.current())
+                .search(workingDirectory().toPath(), paths, recursive);
+        return "";
+    }
+
+    private String handleWcCommand(String arguments) throws IOException {
+        if (arguments == null || arguments.trim().isEmpty()) {
+            // If no arguments, read from standard input (not implemented here)
+            throw new RuntimeException("wc requires file arguments or standard input");
+        }
+
+        // Parse -l/-w/-c/-m (combinable, e.g. -lw) and -r
+        int fields = 0;
+        boolean recursive = false;
+        List<Path> paths = new ArrayList<>();
+        for (String part : parsePaths(arguments)) {
+            if (part.startsWith("-") && part.length() > 1) {
+                for (char option : part.substring(1).toCharArray()) {
+                    switch (option) {
+                        case 'l' -> fields |= WcEngine.LINES;
+                        case 'w' -> fields |= WcEngine.WORDS;
+                        case 'm' -> fields |= WcEngine.CHARS;
+                        case 'c' -> fields |= WcEngine.BYTES;
+                        case 'r', 'R' -> recursive = true;
+                        default -> throw new RuntimeException("wc: invalid option -- '" + option + "'");
+                    }
+                }
+            } else {
+                File file = resolvePath(part);
+                if (!file.exists()) {
+                    throw new RuntimeException("File not found: " + part);
+                }
+                paths.add(file.toPath());
+            }
+        }
+        if (paths.isEmpty()) {
+            throw new RuntimeException("wc requires file arguments or standard input");
+        }
+        if (fields == 0) {
+            // Lines, words and characters, as before
+            fields = WcEngine.LINES | WcEngine.WORDS | WcEngine.CHARS;
+        }
+
+        // Count bytes in place: mapped chunks, counted in parallel
+        List<Path> files = WcEngine.collectFiles(paths, recursive);
+        StringBuilder result = new StringBuilder();
+        WcEngine.Counts total = WcEngine.Counts.EMPTY;
+        Path base = workingDirectory().toPath();
+        for (WcEngine.FileResult counted : WcEngine.countAll(files, CommandTask.current())) {
+            String name = counted.file().startsWith(base) ? base.relativize(counted.file()).toString() : counted.file().toString();
+            if (counted.error() != null) {
+                appendToOutput("wc: " + name + ": " + counted.error() + "\n", "error");
+                continue;
+            }
+            result.append(WcEngine.format(counted.counts(), fields, name));
+            total = total.plus(counted.counts(), false);
+        }
+
+        // Add totals line if multiple files
+        if (files.size() > 1) {
+            result.append(WcEngine.format(total, fields, "total"));
+        }
+
+        return result.toString();
+    }
+
+    private String handleChmodCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("chmod requires permissions and file arguments");
+        }
+
+        String[] parts = arguments.split(" ", 2);
+        if (parts.length < 2) {
+            throw new RuntimeException("chmod requires both permissions and file arguments");
+        }
+
+        String permissions = parts[0];
+        String filePath = parts[1].replace("\"", "");
+        File file = resolvePath(filePath);
+
+        if (!file.exists()) {
+            throw new RuntimeException("File not found: " + filePath);
+        }
+
+        if (isWindows) {
+            // Windows implementation (basic read-only attribute)
+            if (permissions.matches("[0-7]+")) {
+                boolean readable = Integer.parseInt(permissions.substring(0, 1)) >= 4;
+                boolean writable = Integer.parseInt(permissions.substring(1, 2)) >= 2;
+                boolean executable = Integer.parseInt(permissions.substring(2, 3)) >= 1;
+
+                file.setReadable(readable);
+                file.setWritable(writable);
+                file.setExecutable(executable);
+                return "Set permissions for " + filePath;
+            } else {
+                throw new RuntimeException("Windows only supports numeric permissions (e.g., 755)");
+            }
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("chmod");
+            commandParts.add(permissions);
+            commandParts.add(file.getAbsolutePath());
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.directory(workingDirectory());
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to change permissions: " + output);
+            }
+            return "Changed permissions for " + filePath;
+        }
+    }
+
+    private String handleChownCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("chown requires owner and file arguments");
+        }
+
+        String[] parts = arguments.split(" ", 2);
+        if (parts.length < 2) {
+            throw new RuntimeException("chown requires both owner and file arguments");
+        }
+
+        String owner = parts[0];
+        String filePath = parts[1].replace("\"", "");
+        File file = resolvePath(filePath);
+
+        if (!file.exists()) {
+            throw new RuntimeException("File not found: " + filePath);
+        }
+
+        if (isWindows) {
+            // Windows implementation (requires admin privileges)
+            // Step 1: Take ownership first (required before we can change owner)
+            List<String> takeOwnCommand = new ArrayList<>();
+            takeOwnCommand.add("cmd.exe");
+            takeOwnCommand.add("/c");
+            takeOwnCommand.add("takeown");
+            takeOwnCommand.add("/f");
+            takeOwnCommand.add(file.getAbsolutePath());
+
+            ProcessBuilder takeOwnPb = new ProcessBuilder(takeOwnCommand);
+            takeOwnPb.directory(workingDirectory());
+            takeOwnPb.redirectErrorStream(true);
+            Process takeOwnProcess = startProcess(takeOwnPb);
+
+            String takeOwnOutput = readProcessOutput(takeOwnProcess);
+            int takeOwnExitCode = takeOwnProcess.waitFor();
+
+            if (takeOwnExitCode != 0) {
+                throw new RuntimeException("Failed to take ownership (Admin required): " + takeOwnOutput);
+            }
+
+            // Step 2: Now change the owner using icacls
+            List<String> icaclsCommand = new ArrayList<>();
+            icaclsCommand.add("cmd.exe");
+            icaclsCommand.add("/c");
+            icaclsCommand.add("icacls");
+            icaclsCommand.add(file.getAbsolutePath());
+            icaclsCommand.add("/setowner");
+            icaclsCommand.add(owner);
+            icaclsCommand.add("/t");  // Recursive for directories
+            icaclsCommand.add("/c");  // Continue on errors
+            icaclsCommand.add("/l");  // Process symbolic links
+            icaclsCommand.add("/q");   // Quiet mode
+
+            ProcessBuilder icaclsPb = new ProcessBuilder(icaclsCommand);
+            icaclsPb.directory(workingDirectory());
+            icaclsPb.redirectErrorStream(true);
+            Process icaclsProcess = startProcess(icaclsPb);
+
+            String icaclsOutput = readProcessOutput(icaclsProcess);
+            int icaclsExitCode = icaclsProcess.waitFor();
+
+            if (icaclsExitCode != 0) {
+                throw new RuntimeException("Failed to change owner (Admin required): " + icaclsOutput);
+            }
+
+            return "Changed owner of " + filePath + " to " + owner;
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("chown");
+            commandParts.add(owner);
+            commandParts.add(file.getAbsolutePath());
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.directory(workingDirectory());
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to change owner: " + output);
+            }
+            return "Changed owner of " + filePath + " to " + owner;
+        }
+    }
+
+    private String handleChgrpCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("chgrp requires group and file arguments");
+        }
+
+        String[] parts = arguments.split(" ", 2);
+        if (parts.length < 2) {
+            throw new RuntimeException("chgrp requires both group and file arguments");
+        }
+
+        String group = parts[0];
+        String filePath = parts[1].replace("\"", "");
+        File file = resolvePath(filePath);
+
+        if (!file.exists()) {
+            throw new RuntimeException("File not found: " + filePath);
+        }
+
+        if (isWindows) {
+            // Windows implementation using icacls
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+            commandParts.add("icacls");
+            commandParts.add("\"" + file.getAbsolutePath() + "\"");
+            commandParts.add("/grant:r");
+            commandParts.add(group + ":(R,W,Rc)");
+            commandParts.add("/T"); // Recursive
+            commandParts.add("/C"); // Continue on errors
+            commandParts.add("/Q"); // Quiet mode
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.directory(workingDirectory());
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to change group (Run as Administrator): " + output);
+            }
+            return "Modified permissions for group " + group + " on " + filePath;
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("chgrp");
+            commandParts.add(group);
+            commandParts.add(file.getAbsolutePath());
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.directory(workingDirectory());
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to change group: " + output);
+            }
+            return "Changed group of " + filePath + " to " + group;
+        }
+    }
+
+    private String handleAddUserCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("addUser requires a username argument");
+        }
+
+        String username = arguments.split(" ")[0].replace("\"", "");
+
+        if (isWindows) {
+            // Windows implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+            commandParts.add("net");
+            commandParts.add("user");
+            commandParts.add(username);
+            commandParts.add("/add");
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to add user (Admin required): " + output);
+            }
+            return "Added user: " + username;
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("sudo");
+            commandParts.add("useradd");
+            commandParts.add("-m"); // Create home directory
+            commandParts.add(username);
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to add user (Need sudo): " + output);
+            }
+            return "Added user: " + username;
+        }
+    }
+
+    private String handleAddGroupCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("addGroup requires a groupname argument");
+        }
+
+        String groupname = arguments.split(" ")[0].replace("\"", "");
+
+        if (isWindows) {
+            // Windows implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+            commandParts.add("net");
+            commandParts.add("localgroup");
+            commandParts.add(groupname);
+            commandParts.add("/add");
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to add group (Admin required): " + output);
+            }
+            return "Added group: " + groupname;
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("sudo");
+            commandParts.add("groupadd");
+            commandParts.add(groupname);
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Failed to add group (Need sudo): " + output);
+            }
+            return "Added group: " + groupname;
+        }
+    }
+
+    private String handlePsCommand(String arguments) throws IOException, InterruptedException {
+        if (isWindows) {
+            // Windows implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+            commandParts.add("tasklist");
+
+            if (!arguments.isEmpty()) {
+                commandParts.add(arguments);
+            }
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            streamProcessOutput(process);
+            return "";
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("ps");
+            commandParts.add("aux");
+
+            if (!arguments.isEmpty()) {
+                commandParts.addAll(Arrays.asList(arguments.split(" ")));
+            }
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            streamProcessOutput(process);
+            return "";
+        }
+    }
+
+    private String handleQuotacheckCommand(String arguments) throws IOException, InterruptedException {
+        if (isWindows) {
+            // Improved Windows implementation with actual quota checking
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("cmd.exe");
+            commandParts.add("/c");
+            commandParts.add("fsutil");
+            commandParts.add("quota");
+            commandParts.add("query");
+
+            // Add drive letter if specified
+            if (!arguments.isEmpty()) {
+                String drive = arguments.split(" ")[0];
+                if (drive.matches("^[A-Za-z]:$")) {
+                    commandParts.add(drive);
+                }
+            }
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                if (output.contains("This system does not support quotas")) {
+                    return "Quotas are not enabled on this system";
+                }
+                throw new RuntimeException("Failed to check quotas: " + output);
+            }
+
+            if (output.trim().isEmpty()) {
+                return "No quota information available (quotas may be disabled)";
+            }
+            return output;
+        } else {
+            // Unix implementation
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("sudo");
+            commandParts.add("quotacheck");
+
+            if (!arguments.isEmpty()) {
+                commandParts.addAll(Arrays.asList(arguments.split(" ")));
+            } else {
+                commandParts.add("-avug"); // Default options
+            }
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("quotacheck failed (Need sudo): " + output);
+            }
+            return output;
+        }
+    }
+
+    private String handleDuCommand(String arguments) {
+        // Parse --max-depth=N / -d N, -s (summary only), --sort and paths
+        int maxDepth = -1;
+        boolean sortBySize = false;
+        List<String> paths = new ArrayList<>();
+        String[] parts = parsePaths(arguments);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            try {
+                if (part.startsWith("--max-depth=")) {
+                    maxDepth = Integer.parseInt(part.substring("--max-depth=".length()));
+                } else if (part.equals("-d") && i + 1 < parts.length) {
+                    maxDepth = Integer.parseInt(parts[++i]);
+                } else if (part.equals("-s")) {
+                    maxDepth = 0;
+                } else if (part.equals("--sort") || part.equals("-S")) {
+                    sortBySize = true;
+                } else if (part.equals("-h")) {
+                    // Sizes are always human readable
+                } else {
+                    paths.add(part);
+                }
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid depth: " + part);
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add(".");
+        }
+
+        // Walk in-process on the fork-join pool; running totals are printed meanwhile
+        StringBuilder result = new StringBuilder();
+        for (String path : paths) {
+            File root = resolvePath(path);
+            if (!root.exists()) {
+                throw new RuntimeException("File/directory not found: " + path);
+            }
+            List<DuEngine.Entry> entries = new DuEngine(output(), CommandTask.current(), maxDepth)
+                    .walk(root.toPath(), Path.of(path));
+            if (sortBySize) {
+                DuEngine.sortBySize(entries);
+            }
+            for (DuEngine.Entry entry : entries) {
+                result.append(DuEngine.format(entry));
+            }
+        }
+        return result.toString();
+    }
+
+    private String handleGzipCommand(String arguments, boolean decompress) {
+        String command = decompress ? "gunzip" : "gzip";
+        if (arguments.isEmpty()) {
+            throw new RuntimeException(command + " requires a file argument");
+        }
+
+        // Parse -1..-9 / --fast / --best, -d, -k, -f, -r and the files
+        int level = 6;
+        boolean keep = false;
+        boolean force = false;
+        boolean recursive = false;
+        List<String> filePaths = new ArrayList<>();
+        for (String part : parsePaths(arguments)) {
+            if (part.equals("--fast")) {
+                level = 1;
+            } else if (part.equals("--best")) {
+                level = 9;
+            } else if (part.startsWith("-") && part.length() > 1 && !part.startsWith("--")) {
+                for (char option : part.substring(1).toCharArray()) {
+                    if (option >= '1' && option <= '9') {
+                        level = option - '0';
+                    } else if (option == 'd') {
+                        decompress = true;
+                    } else if (option == 'k') {
+                        keep = true;
+                    } else if (option == 'f') {
+                        force = true;
+                    } else if (option == 'r') {
+                        recursive = true;
+                    } else {
+                        throw new RuntimeException(command + ": invalid option -- '" + option + "'");
+                    }
+                }
+            } else {
+                filePaths.add(part);
+            }
+        }
+        if (filePaths.isEmpty()) {
+            throw new RuntimeException(command + " requires a file argument");
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String filePath : filePaths) {
+            File file = resolvePath(filePath);
+            if (!file.exists()) {
+                throw new RuntimeException("File not found: " + filePath);
+            }
+            files.add(file.toPath());
+        }
+
+        // Blocks are deflated in parallel in-process; the output is standard gzip on every platform
+        GzipEngine engine = new GzipEngine(output(), CommandTask.current(), level, keep, force);
+        String summary = decompress ? engine.decompress(files, recursive) : engine.compress(files, recursive);
+        if (files.size() == 1 && !recursive && engine.files() == 1) {
+            String name = filePaths.get(0);
+            String output = decompress ? GzipEngine.decompressedName(name) : name + ".gz";
+            return (decompress ? "Decompressed: " : "Compressed: ") + output + "\n" + summary;
+        }
+        return (decompress ? "Decompressed " : "Compressed ") + summary;
+    }
+
+    private String handleFileCommand(String arguments) throws IOException {
+        boolean recursive = false;
+        List<String> names = new ArrayList<>();
+        for (String argument : parsePaths(arguments)) {
+            if (argument.equals("-r")) {
+                recursive = true;
+            } else {
+                names.add(argument);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new RuntimeException("file requires a file argument");
+        }
+
+        Path base = workingDirectory().toPath();
+        List<Path> paths = new ArrayList<>();
+        List<String> displays = new ArrayList<>();
+        for (String name : names) {
+            List<Path> expanded = MagicDetector.expand(base, name, recursive);
+            if (expanded.isEmpty()) {
+                appendToOutput("file: " + name + ": no match\n", "error");
+            }
+            for (Path path : expanded) {
+                paths.add(path);
+                displays.add(Path.of(name).isAbsolute() ? path.toString() : base.relativize(path).toString());
+            }
+        }
+
+        List<String> types = MagicDetector.describeAll(paths, CommandTask.current());
+        int width = 0;
+        for (String display : displays) {
+            width = Math.max(width, display.length());
+        }
+        width = Math.min(width, 40);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < paths.size(); i++) {
+            String label = displays.get(i) + ":";
+            result.append(label).append(" ".repeat(Math.max(1, width + 2 - label.length())))
+                    .append(types.get(i)).append('\n');
+        }
+        return result.toString();
+    }
+
+    private String handleFindCommand(String arguments) {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("find requires a search pattern");
+        }
+
+        // Starting points come first, then the expression
+        List<String> parts = new ArrayList<>(Arrays.asList(parsePaths(arguments)));
+        List<String> roots = new ArrayList<>();
+        while (!parts.isEmpty() && !FindEngine.isExpressionStart(parts.get(0))) {
+            roots.add(parts.remove(0));
+        }
+        if (parts.isEmpty() && roots.size() == 1 && !resolvePath(roots.get(0)).isDirectory()) {
+            // Old form: find pattern, matching names that contain the pattern
+            parts = List.of("-name", "*" + roots.get(0) + "*");
+            roots.clear();
+        }
+        if (roots.isEmpty()) {
+            roots.add(".");
+        }
+
+        // Walk in-process on the fork-join pool; matches are streamed as they are found
+        FindEngine engine = new FindEngine(parts, workingDirectory().toPath(), output(),
+                CommandTask.current());
+        long matches = 0;
+        for (String root : roots) {
+            File start = resolvePath(root);
+            if (!start.exists()) {
+                throw new RuntimeException("File/directory not found: " + root);
+            }
+            matches += engine.run(start.toPath(), root);
+        }
+
+        if (matches == 0 && engine.errors() == 0) {
+            return "No files matching '" + String.join(" ", parts) + "' found in " + String.join(" ", roots);
+        }
+        return "";
+    }
+
+    private String handleLocateCommand(String arguments) throws IOException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("locate requires a search pattern");
+        }
+
+        boolean ignoreCase = false;
+        String pattern = null;
+        for (String part : parsePaths(arguments)) {
+            if (part.equals("-i")) {
+                ignoreCase = true;
+            } else {
+                pattern = part;
+            }
+        }
+        if (pattern == null) {
+            throw new RuntimeException("locate requires a search pattern");
+        }
+
+        Path database = LocateIndex.defaultLocation();
+        if (!Files.exists(database)) {
+            throw new RuntimeException("No locate database yet. Run 'updatedb [directory]' to build it");
+        }
+
+        // Look up the shell's own memory-mapped index; results are streamed in batches
+        StringBuilder batch = new StringBuilder();
+        long matches;
+        try (LocateIndex index = LocateIndex.open(database)) {
+            matches = index.search(pattern, ignoreCase, path -> {
+                batch.append(path).append('\n');
+                if (batch.length() >= 64 * 1024) {
+                    appendToOutput(batch.toString(), "output");
+                    batch.setLength(0);
+                }
+            });
+        }
+        appendToOutput(batch.toString(), "output");
+
+        if (matches == 0) {
+            return "No files matching '" + pattern + "' found";
+        }
+        return "";
+    }
+
+    private String handleUpdatedbCommand(String arguments) throws IOException {
+        String[] parts = parsePaths(arguments);
+        File root = parts.length == 0 ? new File(System.getProperty("user.home")) : resolvePath(parts[0]);
+        if (!root.isDirectory()) {
+            throw new RuntimeException("Directory not found: " + root.getAbsolutePath());
+        }
+
+        Path database = LocateIndex.defaultLocation();
+        appendToOutput("Indexing " + root.getAbsolutePath() + " ...\n", "output");
+        LocateIndex.BuildStats stats = LocateIndex.update(database, root.toPath(), CommandTask.current());
+        return String.format("Indexed %d entries into %s (%s) in %s%n"
+                + "Directories listed: %d, unchanged since last run: %d",
+                stats.entries(), database, Sizes.format(stats.bytes()), Sizes.seconds(stats.nanos()),
+                stats.directoriesListed(), stats.directoriesReused());
+    }
+
+    private String handleWgetCommand(String arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("wget requires a URL argument");
+        }
+
+        String url = arguments.split(" ")[0].replace("\"", "");
+
+        if (isWindows) {
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("powershell");
+            commandParts.add("-Command");
+            commandParts.add("Invoke-WebRequest");
+            commandParts.add("-Uri");
+            commandParts.add(url);
+            commandParts.add("-OutFile");
+            commandParts.add(url.substring(url.lastIndexOf('/') + 1));
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("Download failed: " + output);
+            }
+            return "Downloaded: " + url;
+        } else {
+            List<String> commandParts = new ArrayList<>();
+            commandParts.add("wget");
+            commandParts.add(url);
+
+            ProcessBuilder pb = new ProcessBuilder(commandParts);
+            pb.redirectErrorStream(true);
+            Process process = startProcess(pb);
+
+            String output = readProcessOutput(process);
+            int exitCode = process.waitFor();
+
+            if (exitCode != 0) {
+                throw new RuntimeException("wget failed: " + output);
+            }
+            return "Downloaded: " + url;
+        }
+    }
+
+    private String handleAccessRightsCommand(String arguments) throws IOException {
+        String path = arguments.isEmpty() ? workingDirectory().getAbsolutePath() : arguments;
+        File file = resolvePath(path);
+
+        if (!file.exists()) {
+            throw new RuntimeException("File/directory not found: " + path);
+        }
+
+        StringBuilder rights = new StringBuilder();
+        rights.append("Access rights for: ").append(file.getAbsolutePath()).append("\n");
+
+        if (isWindows) {
+            rights.append("Readable: ").append(file.canRead()).append("\n");
+            rights.append("Writable: ").append(file.canWrite()).append("\n");
+            rights.append("Executable: ").append(file.canExecute()).append("\n");
+            rights.append("Hidden: ").append(file.isHidden()).append("\n");
+
+            try {
+                // Get more detailed ACL info
+                Process process = startProcess(new ProcessBuilder("icacls", file.getAbsolutePath())
+                        .redirectErrorStream(true));
+                rights.append("\nDetailed permissions:\n")
+                        .append(readProcessOutput(process));
+            } catch (IOException e) {
+                rights.append("\nCould not retrieve detailed permissions (Admin required)");
+            }
+        } else {
+            try {
+                Process process = startProcess(new ProcessBuilder("ls", "-ld", file.getAbsolutePath())
+                        .redirectErrorStream(true));
+                rights.append(readProcessOutput(process));
+
+                // Get ACL info if available
+                try {
+                    Process aclProcess = startProcess(new ProcessBuilder("getfacl", file.getAbsolutePath())
+                            .redirectErrorStream(true));
+                    rights.append("\nACL details:\n")
+                            .append(readProcessOutput(aclProcess));
+                } catch (IOException e) {
+                    // getfacl not available
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to get access rights: " + e.getMessage());
+            }
+        }
+
+        return rights.toString();
+    }
+
+    private String getManualPage(String command) {
+        Map<String, String> manualPages = new HashMap<>();
+
+        // Common manual pages
+        manualPages.put("pwd", "pwd - Print Working Directory\n"
+                + "Displays the full path of the current directory.\n"
+                + "Usage: pwd");
+
+        manualPages.put("ls", "ls - List Directory Contents\n"
+                + "Displays files and directories in the current directory.\n"
+                + "Options:\n"
+                + "  -l: Long format listing\n"
+                + "  -a: Include hidden files\n"
+                + "Usage: ls [options] [directory]");
+
+        manualPages.put("cd", "cd - Change Directory\n"
+                + "Changes the current working directory.\n"
+                + "Usage: cd [directory]\n"
+                + "Special paths:\n"
+                + "  .. : Parent directory\n"
+                + "  ~  : Home directory");
+
+        manualPages.put("mkdir", "mkdir - Make Directory\n"
+                + "Creates a new directory.\n"
+                + "Usage: mkdir directory_name");
+
+        manualPages.put("man", "man - Manual Pages\n"
+                + "Displays documentation for commands.\n"
+                + "Usage: man command");
+
+        // Additional commands
+        manualPages.put("echo", "echo - Display Message\n"
+                + "Prints text or variables to the terminal.\n"
+                + "Usage: echo [text]");
+
+        manualPages.put("cat", "cat - Concatenate Files\n"
+                + "Displays file contents or combines files.\n"
+                + "Binary files show a short hex preview instead.\n"
+                + "Options:\n"
+                + "  -x: Hex dump of the whole file\n"
+                + "  -a, --text: Print binary files as text anyway\n"
+                + "Usage: cat [options] [file1] [file2]...");
+
+        manualPages.put("less", "less - View File Page by Page\n"
+                + "Opens the file in a pager window. Files of any size open instantly;\n"
+                + "line numbers appear as the background index catches up.\n"
+                + "Keys:\n"
+                + "  Space / b: Next / previous page\n"
+                + "  j / k, arrows: Scroll one line (Left/Right scroll sideways)\n"
+                + "  g / G: First / last line; Ng or :N goes to line N\n"
+                + "  /pattern, ?pattern: Search forward / backward (regular expression)\n"
+                + "  n / N: Repeat the search in the same / opposite direction\n"
+                + "  F: Follow the file as it grows (Esc to stop)\n"
+                + "  q: Close the pager\n"
+                + "Usage: less file");
+
+        manualPages.put("head", "head - Show First Lines\n"
+                + "Prints the first lines of each file (10 by default).\n"
+                + "Options:\n"
+                + "  -n N, -N: Number of lines\n"
+                + "Usage: head [-n N] file...");
+
+        manualPages.put("tail", "tail - Show Last Lines\n"
+                + "Prints the last lines of each file (10 by default).\n"
+                + "Only the end of the file is read, however large it is.\n"
+                + "Options:\n"
+                + "  -n N, -N: Number of lines\n"
+                + "  -f: Keep printing lines as they are appended (stop with Cancel / Ctrl+C)\n"
+                + "Usage: tail [-n N] [-f] file...");
+
+        manualPages.put("grep", "grep - Global Regular Expression Print\n"
+                + "Searches for patterns in files.\n"
+                + "Options:\n"
+                + "  -i: Case insensitive search\n"
+                + "  -r: Recursive search\n"
+                + "  -v: Show lines that do not match\n"
+                + "  -c: Count matching lines per file\n"
+                + "  -l: List files that contain a match\n"
+                + "Usage: grep [options] pattern [file...]");
+
+        manualPages.put("wc", "wc - Word Count\n"
+                + "Counts lines, words and characters in files.\n"
+                + "Options:\n"
+                + "  -l: Lines\n"
+                + "  -w: Words\n"
+                + "  -m: Characters (UTF-8)\n"
+                + "  -c: Bytes\n"
+                + "  -r: Recurse into directories\n"
+                + "Usage: wc [options] file...");
+
+        manualPages.put("du", "du - Disk Usage\n"
+                + "Shows the total size of each directory below a path.\n"
+                + "Hard-linked files are counted once.\n"
+                + "Options:\n"
+                + "  --max-depth=N, -d N: Only list directories N levels deep\n"
+                + "  -s: Only show the total for each argument\n"
+                + "  --sort, -S: Largest first\n"
+                + "Usage: du [options] [directory...]");
+
+        manualPages.put("find", "find - Find Files\n"
+                + "Walks directory trees and lists the entries matching an expression.\n"
+                + "Tests:\n"
+                + "  -name glob / -iname glob: File name matches (case insensitive with -iname)\n"
+                + "  -type f|d|l: Regular file, directory or symbolic link\n"
+                + "  -size [+-]N[ckMG]: Size in 512-byte blocks, or bytes/KB/MB/GB\n"
+                + "  -mtime [+-]N: Modified N days ago (+N more, -N less)\n"
+                + "  -newer file: Modified after file\n"
+                + "Options and actions:\n"
+                + "  -maxdepth N / -mindepth N: Limit the levels searched\n"
+                + "  -prune: Do not descend into a matching directory\n"
+                + "  -print: Print the entry (default when no action is given)\n"
+                + "Operators: ! expr, expr -a expr, expr -o expr, ( expr )\n"
+                + "Usage: find [directory...] [expression]\n"
+                + "Example: find . -name .git -prune -o -name \"*.java\" -print");
+
+        manualPages.put("locate", "locate - Find Files by Name\n"
+                + "Lists indexed paths containing the pattern.\n"
+                + "Options:\n"
+                + "  -i: Case insensitive search\n"
+                + "Usage: locate [-i] pattern\n"
+                + "Run updatedb first to build the index.");
+
+        manualPages.put("updatedb", "updatedb - Update Locate Database\n"
+                + "Indexes all paths below a directory for locate.\n"
+                + "Directories unchanged since the last run are not listed again.\n"
+                + "Usage: updatedb [directory]");
+
+        manualPages.put("gzip", "gzip - Compress Files\n"
+                + "Compresses each file to file.gz and removes the original.\n"
+                + "Large files are compressed on all cores; the result is standard gzip.\n"
+                + "Options:\n"
+                + "  -1 .. -9: Fastest .. best compression (default 6)\n"
+                + "  -k: Keep the original files\n"
+                + "  -r: Compress files in directories recursively\n"
+                + "  -d: Decompress (same as gunzip)\n"
+                + "  -f: Overwrite existing output files\n"
+                + "Usage: gzip [options] file...");
+
+        manualPages.put("gunzip", "gunzip - Decompress Files\n"
+                + "Restores file.gz to file (and file.tgz to file.tar).\n"
+                + "Options:\n"
+                + "  -k: Keep the compressed files\n"
+                + "  -r: Decompress .gz files in directories recursively\n"
+                + "  -f: Overwrite existing output files\n"
+                + "Usage: gunzip [options] file.gz...");
+
+        manualPages.put("file", "file - Determine File Types\n"
+                + "Identifies files from the magic numbers in their first bytes\n"
+                + "(ELF, PE, Java class, images, archives, PDF, ...) or, for text,\n"
+                + "its encoding and line terminators. Several files are checked in parallel.\n"
+                + "Options:\n"
+                + "  -r: Check the files in directories recursively\n"
+                + "Usage: file [-r] file|directory|glob...\n"
+                + "Example: file *.so");
+        manualPages.put("history", "history - Command History\n"
+                + "Lists earlier commands, oldest first. History is saved in ~/.shellui/history\n"
+                + "(or -Dshellui.history=<file>); repeated commands are kept once, at their latest use.\n"
+                + "Up/Down step through it; Ctrl+R searches it backwards as you type,\n"
+                + "Ctrl+R again finds older matches, Enter runs the match and Esc cancels.\n"
+                + "Options:\n"
+                + "  N: Show only the last N commands\n"
+                + "  -c: Clear the history\n"
+                + "Usage: history [N | -c]");
+        manualPages.put("coprocess", "coprocess - Persistent Command Shell\n"
+                + "Runs external commands (ls -l, chmod, ps, the second half of accessrights, ...)\n"
+                + "in one /bin/sh kept running for the session instead of starting a new\n"
+                + "process for each, which makes bursts of small commands several times faster.\n"
+                + "A crashed shell is restarted for the next command. While the shell is busy,\n"
+                + "e.g. in a pipeline, commands are started the usual way. Off by default;\n"
+                + "-Dshellui.coprocess=true turns it on at startup. Not available on Windows.\n"
+                + "Usage: coprocess [on | off | status]");
+        manualPages.put("jobs", "jobs - List Background Jobs\n"
+                + "A command ending in & runs as a background job while you keep working;\n"
+                + "Ctrl+Z sends the running command to the background. A job's output is kept\n"
+                + "(the newest 1M chars, -Dshellui.jobBuffer=<chars>) until fg shows it, and\n"
+                + "the status bar shows each job's state. Jobs that finish are reported before\n"
+                + "the next command.\n"
+                + "Usage: jobs\n"
+                + "Example: du -h / &");
+        manualPages.put("stats", "stats - Command Statistics\n"
+                + "Shows where the time of each command went: total, and the phases spawn\n"
+                + "(starting processes), run (waiting for their output), read (decoding it),\n"
+                + "style (highlighting) and render (screen updates), each as p50/p99/max, with\n"
+                + "the bytes read from processes and the output written. The same numbers are\n"
+                + "available over JMX as shellui:type=CommandMetrics, and each command is a JFR\n"
+                + "event (shellui.Command) in a flight recording.\n"
+                + "Usage: stats [command | -r]\n"
+                + "Example: stats grep");
+        manualPages.put("fg", "fg - Foreground Job\n"
+                + "Shows the output a job has kept and attaches it to the screen again;\n"
+                + "a running job can then be stopped with Cancel or Ctrl+C.\n"
+                + "Jobs are named %n, %% (the newest) or %text (command starting with text).\n"
+                + "Usage: fg [%n]");
+        manualPages.put("kill", "kill - Stop a Job or Process\n"
+                + "kill %n stops background job n and its child processes;\n"
+                + "with a process ID it runs the system kill command.\n"
+                + "Usage: kill %n... | kill [-signal] PID");
+        manualPages.put("cp", "cp - Copy Files\n"
+                + "Copies files or directories.\n"
+                + "Options:\n"
+                + "  -r: Recursive copy (for directories, copied in parallel)\n"
+                + "Usage: cp [-r] [source...] [destination]");
+
+        manualPages.put("mv", "mv - Move Files\n"
+                + "Moves or renames files/directories.\n"
+                + "Usage: mv [source...] [destination]");
+
+        manualPages.put("rm", "rm - Remove Files\n"
+                + "Deletes files or directories.\n"
+                + "Options:\n"
+                + "  -r: Recursive delete (for directories)\n"
+                + "  -f: Force delete\n"
+                + "Usage: rm [options] [file/directory]");
+
+        String manualEntry = manualPages.get(command);
+        return manualEntry != null ? manualEntry : "We will provide description of '" + command + "' soon.";
+    }
+
+    static String readProcessOutput(Process process) throws IOException {
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                CommandMetrics.reader(process.getInputStream(), Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+            }
+        }
+        return output.toString();
+    }
+
+    private void streamProcessOutput(Process process) throws IOException {
+        // Decode in chunks and hand complete lines to the pipeline as they arrive
+        try (Reader reader = CommandMetrics.reader(process.getInputStream(), Charset.defaultCharset())) {
+            char[] buffer = new char[8192];
+            StringBuilder pending = new StringBuilder();
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                pending.append(buffer, 0, read);
+                int lastNewline = pending.lastIndexOf("\n");
+                if (lastNewline >= 0) {
+                    highlightOutput(pending.substring(0, lastNewline + 1));
+                    pending.delete(0, lastNewline + 1);
+                }
+            }
+            if (pending.length() > 0) {
+                highlightOutput(pending.toString());
+            }
+        }
+    }
+
+    /** Output of the command on this thread, or for the console outside commands. */
+    void appendToOutput(String text, String style) {
+        OutputSink stage = Pipeline.stageOutput();
+        if (stage != null) {
+            // Running as a stage of a | pipeline; the output goes to the next stage
+            stage.append(text, style);
+            return;
+        }
+        // Safe from any thread; the sinks hand it on to the screen themselves
+        screen().append(text, style);
+    }
+
+    /** Where a command's engine streams its output: the screen, or the next stage of a pipe. */
+    private OutputSink output() {
+        // Captured on the command's own thread, since engines may write from worker threads
+        OutputSink stage = Pipeline.stageOutput();
+        return stage != null ? stage : screen();
+    }
+
+    /**
+     * The screen as seen by the command on this thread: its {@link Job},
+     * which passes output on or keeps it while the command runs in the
+     * background; outside a command, the console.
+     */
+    private OutputSink screen() {
+        CommandTask task = CommandTask.current();
+        OutputSink job = task != null ? task.getOutput() : null;
+        return job != null ? job : console;
+    }
+
+    private void highlightOutput(String output) {
+        OutputSink stage = Pipeline.stageOutput();
+        if (stage != null) {
+            stage.append(output, "output");
+            return;
+        }
+        // Classified here on the command thread; the EDT only applies the finished runs
+        CommandMetrics.Timing style = CommandMetrics.time(CommandMetrics.Phase.STYLE);
+        StyledText.highlight(output, currentHighlighter(), true, screen());
+        style.stop();
+    }
+
+    /** Sink that highlights plain output with the given highlighter, for engines that stream their results. */
+    private OutputSink highlighted(Highlighter highlighter) {
+        OutputSink stage = Pipeline.stageOutput();
+        if (stage != null) {
+            return stage;
+        }
+        OutputSink screen = screen();
+        return (text, style) -> {
+            if (style.equals("output")) {
+                CommandMetrics.Timing timing = CommandMetrics.time(CommandMetrics.Phase.STYLE);
+                StyledText.highlight(text, highlighter, false, screen);
+                timing.stop();
+            } else {
+                screen.append(text, style);
+            }
+        };
+    }
+
+    private static Highlighter currentHighlighter() {
+        CommandTask task = CommandTask.current();
+        if (task == null) {
+            return Highlighter.DEFAULT;
+        }
+        String commandLine = task.getCommandLine().strip();
+        int space = commandLine.indexOf(' ');
+        return Highlighter.forCommand(space < 0 ? commandLine : commandLine.substring(0, space));
+    }
+}
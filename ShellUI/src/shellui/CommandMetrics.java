@@ -0,0 +1,456 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Where the time of each command goes, per command name and per phase:
+ * <ul>
+ * <li><b>total</b>: from the start of the command to its end;</li>
+ * <li><b>spawn</b>: starting child processes;</li>
+ * <li><b>run</b>: waiting for a child process to write its output;</li>
+ * <li><b>read</b>: decoding that output;</li>
+ * <li><b>style</b>: highlighting output lines;</li>
+ * <li><b>render</b>: putting output on the screen, once per screen update on
+ * the EDT, counted for the command whose output came last.</li>
+ * </ul>
+ * Each finished command adds the time it spent in each phase to that
+ * phase's {@link LatencyHistogram}, which {@code stats} and the
+ * {@link CommandMetricsMXBean} report as p50/p99/max.
+ *
+ * Every command and every phase section of 1 ms or more is also a JFR
+ * event ({@code shellui.Command}, {@code shellui.Phase}), so a recording
+ * shows the commands on the timeline next to GC and I/O:
+ * {@code java -XX:StartFlightRecording=filename=shell.jfr ...}.
+ */
+final class CommandMetrics {
+
+    enum Phase {
+        TOTAL("total"), SPAWN("spawn"), RUN("run"), READ("read"), STYLE("style"), RENDER("render");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final String OBJECT_NAME = "shellui:type=CommandMetrics";
+    private static final Map<String, CommandStats> COMMANDS = new ConcurrentHashMap<>();
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+    private CommandMetrics() {
+    }
+
+    @Name("shellui.Command")
+    @Label("Command")
+    @Category("ShellUI")
+    @Description("One command line, with the time it spent in each phase")
+    static final class CommandEvent extends Event {
+
+        @Label("Command Line")
+        String commandLine;
+
+        @Label("State")
+        String state;
+
+        @Label("Spawn")
+        @Timespan
+        long spawn;
+
+        @Label("Run")
+        @Description("Waiting for child processes to write output")
+        @Timespan
+        long run;
+
+        @Label("Read")
+        @Description("Decoding the output of child processes")
+        @Timespan
+        long read;
+
+        @Label("Style")
+        @Timespan
+        long style;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Output Chars")
+        long outputChars;
+    }
+
+    @Name("shellui.Phase")
+    @Label("Command Phase")
+    @Category("ShellUI")
+    @Threshold("1 ms")
+    static final class PhaseEvent extends Event {
+
+        @Label("Command")
+        String command;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    /** Counters for one command name. */
+    private static final class CommandStats {
+
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+        final LongAdder runs = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder outputChars = new LongAdder();
+
+        CommandStats() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        LatencyHistogram phase(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+    }
+
+    /**
+     * One run of a command, carried by its {@link CommandTask}: the time it
+     * has spent in each phase so far, added up over all its threads.
+     */
+    static final class Sample {
+
+        private final String command;
+        private final String commandLine;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder outputChars = new LongAdder();
+        private final CommandEvent event = new CommandEvent();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Sample(String commandLine) {
+            this.commandLine = commandLine;
+            this.command = commandName(commandLine);
+            event.begin();
+        }
+
+        String command() {
+            return command;
+        }
+
+        void add(Phase phase, long nanos) {
+            phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+
+        void addOutput(long chars) {
+            outputChars.add(chars);
+        }
+    }
+
+    /** A phase being timed on the calling thread; see {@link #time}. */
+    static final class Timing {
+
+        private static final Timing NONE = new Timing(null, null);
+
+        private final Sample sample;
+        private final Phase phase;
+        private final long startNanos = System.nanoTime();
+        private final PhaseEvent event = new PhaseEvent();
+
+        private Timing(Sample sample, Phase phase) {
+            this.sample = sample;
+            this.phase = phase;
+            event.begin();
+        }
+
+        void stop() {
+            if (sample == null) {
+                return;
+            }
+            sample.add(phase, System.nanoTime() - startNanos);
+            commitPhase(event, sample.command, phase);
+        }
+    }
+
+    /** Starts measuring a new run of the command line. */
+    static Sample begin(String commandLine) {
+        return new Sample(commandLine);
+    }
+
+    /** The sample of the command running on the calling thread, or null outside commands. */
+    static Sample current() {
+        CommandTask task = CommandTask.current();
+        return task != null ? task.metrics() : null;
+    }
+
+    /** Starts timing {@code phase} for the command on this thread; a no-op outside commands. */
+    static Timing time(Phase phase) {
+        Sample sample = current();
+        return sample != null ? new Timing(sample, phase) : Timing.NONE;
+    }
+
+    /**
+     * Reader for a child process's output that counts the time blocked
+     * waiting for the process as run, and the rest of each read as read.
+     */
+    static Reader reader(InputStream in, Charset charset) {
+        Sample sample = current();
+        return sample != null ? new MeteredReader(in, charset, sample) : new InputStreamReader(in, charset);
+    }
+
+    /** Adds the sample to its command's histograms and commits its JFR event. Later calls do nothing. */
+    static void finish(Sample sample, Job.State state) {
+        if (!sample.finished.compareAndSet(false, true)) {
+            return;
+        }
+        long total = System.nanoTime() - sample.startNanos;
+        CommandStats stats = stats(sample.command);
+        stats.runs.increment();
+        if (state != Job.State.DONE) {
+            stats.failures.increment();
+        }
+        stats.phase(Phase.TOTAL).record(total);
+        for (Phase phase : Phase.values()) {
+            long nanos = sample.phaseNanos.get(phase.ordinal());
+            // A phase the command never went through (no child process, say) is not a zero
+            if (phase != Phase.TOTAL && nanos > 0) {
+                stats.phase(phase).record(nanos);
+            }
+        }
+        stats.bytesRead.add(sample.bytesRead.sum());
+        stats.outputChars.add(sample.outputChars.sum());
+
+        CommandEvent event = sample.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.commandLine = sample.commandLine;
+            event.state = state.label;
+            event.spawn = sample.phaseNanos.get(Phase.SPAWN.ordinal());
+            event.run = sample.phaseNanos.get(Phase.RUN.ordinal());
+            event.read = sample.phaseNanos.get(Phase.READ.ordinal());
+            event.style = sample.phaseNanos.get(Phase.STYLE.ordinal());
+            event.bytesRead = sample.bytesRead.sum();
+            event.outputChars = sample.outputChars.sum();
+            event.commit();
+        }
+    }
+
+    /** One screen update of {@code nanos} on the EDT, for the command whose output it showed. */
+    static void recordRender(String command, long nanos) {
+        stats(command).phase(Phase.RENDER).record(nanos);
+    }
+
+    /** Makes the numbers visible over JMX; once per JVM, and only if the platform MBean server allows it. */
+    static void register() {
+        if (!REGISTERED.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            System.err.println("Command metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    static void reset() {
+        COMMANDS.clear();
+    }
+
+    /**
+     * The {@code stats} text: per command, runs, bytes and the p50, p99 and
+     * max of each phase, busiest command first. {@code filter} limits it to
+     * commands that start with it.
+     */
+    static String report(String filter) {
+        List<Map.Entry<String, CommandStats>> entries = new ArrayList<>();
+        for (Map.Entry<String, CommandStats> entry : COMMANDS.entrySet()) {
+            if (entry.getKey().startsWith(filter)) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            return filter.isEmpty() ? "No commands measured yet\n" : "No commands measured matching '" + filter + "'\n";
+        }
+        entries.sort(Comparator.comparingLong(
+                (Map.Entry<String, CommandStats> entry) -> entry.getValue().phase(Phase.TOTAL).totalNanos()
+                        + entry.getValue().phase(Phase.RENDER).totalNanos()).reversed());
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, CommandStats> entry : entries) {
+            CommandStats stats = entry.getValue();
+            text.append(String.format("%s: %,d runs, %,d failed, %s read from processes, %,d chars output%n",
+                    entry.getKey(), stats.runs.sum(), stats.failures.sum(), Sizes.format(stats.bytesRead.sum()),
+                    stats.outputChars.sum()));
+            text.append(String.format("  %-7s %8s %10s %10s %10s %10s%n", "phase", "count", "p50", "p99", "max",
+                    "total"));
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = stats.phase(phase);
+                if (histogram.count() == 0) {
+                    continue;
+                }
+                text.append(String.format("  %-7s %,8d %10s %10s %10s %10s%n", phase.label, histogram.count(),
+                        Sizes.duration(histogram.percentile(0.5)), Sizes.duration(histogram.percentile(0.99)),
+                        Sizes.duration(histogram.maxNanos()), Sizes.duration(histogram.totalNanos())));
+            }
+        }
+        return text.toString();
+    }
+
+    /** The command names of a command line, e.g. {@code cat | grep} for a pipeline. */
+    private static String commandName(String commandLine) {
+        List<String> names = new ArrayList<>();
+        List<String> stages;
+        try {
+            stages = Pipeline.stages(commandLine);
+        } catch (RuntimeException e) {
+            stages = List.of(commandLine);
+        }
+        for (String stage : stages) {
+            String trimmed = stage.trim();
+            int space = trimmed.indexOf(' ');
+            names.add(space < 0 ? trimmed : trimmed.substring(0, space));
+        }
+        return String.join(" | ", names);
+    }
+
+    private static CommandStats stats(String command) {
+        return COMMANDS.computeIfAbsent(command, name -> new CommandStats());
+    }
+
+    private static void commitPhase(PhaseEvent event, String command, Phase phase) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.phase = phase.label;
+            event.commit();
+        }
+    }
+
+    /**
+     * Decodes a process's output, telling apart the time the read was
+     * blocked on the process from the time spent decoding. Used by one
+     * thread at a time, like any reader.
+     */
+    private static final class MeteredReader extends Reader {
+
+        private final Sample sample;
+        private final Reader decoder;
+        private long blockedNanos;
+
+        MeteredReader(InputStream in, Charset charset, Sample sample) {
+            this.sample = sample;
+            this.decoder = new InputStreamReader(new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    PhaseEvent event = new PhaseEvent();
+                    event.begin();
+                    long start = System.nanoTime();
+                    int read = super.read(buffer, offset, length);
+                    blockedNanos += System.nanoTime() - start;
+                    commitPhase(event, sample.command, Phase.RUN);
+                    if (read > 0) {
+                        sample.bytesRead.add(read);
+                    }
+                    return read;
+                }
+            }, charset);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            long blockedBefore = blockedNanos;
+            int read = decoder.read(buffer, offset, length);
+            long blocked = blockedNanos - blockedBefore;
+            sample.add(Phase.RUN, blocked);
+            sample.add(Phase.READ, System.nanoTime() - start - blocked);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            decoder.close();
+        }
+    }
+
+    /** The JMX view of the same numbers. */
+    private static final class Bean implements CommandMetricsMXBean {
+
+        @Override
+        public long getCommandsRun() {
+            return COMMANDS.values().stream().mapToLong(stats -> stats.runs.sum()).sum();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return COMMANDS.values().stream().mapToLong(stats -> stats.bytesRead.sum()).sum();
+        }
+
+        @Override
+        public long getOutputChars() {
+            return COMMANDS.values().stream().mapToLong(stats -> stats.outputChars.sum()).sum();
+        }
+
+        @Override
+        public List<PhaseSummary> getPhases() {
+            List<PhaseSummary> rows = new ArrayList<>();
+            for (Map.Entry<String, CommandStats> entry : COMMANDS.entrySet()) {
+                for (Phase phase : Phase.values()) {
+                    LatencyHistogram histogram = entry.getValue().phase(phase);
+                    if (histogram.count() > 0) {
+                        rows.add(new PhaseSummary(entry.getKey(), phase.label, histogram.count(),
+                                millis(histogram.percentile(0.5)), millis(histogram.percentile(0.99)),
+                                millis(histogram.maxNanos()), millis(histogram.totalNanos())));
+                    }
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        public String getReport() {
+            return report("");
+        }
+
+        @Override
+        public void reset() {
+            CommandMetrics.reset();
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.List;
+import javax.management.ConstructorParameters;
+
+/**
+ * The {@code stats} numbers over JMX, registered as
+ * {@code shellui:type=CommandMetrics} so JConsole or any JMX client can
+ * watch a running session.
+ */
+public interface CommandMetricsMXBean {
+
+    /** Commands finished since the start or the last reset. */
+    long getCommandsRun();
+
+    /** Bytes read from the output of child processes. */
+    long getBytesRead();
+
+    /** Chars of output written to the screen or to redirection files. */
+    long getOutputChars();
+
+    /** One row per command and phase that has been measured. */
+    List<PhaseSummary> getPhases();
+
+    /** The text {@code stats} prints. */
+    String getReport();
+
+    void reset();
+
+    /** Latency of one phase of one command; times are in milliseconds. */
+    final class PhaseSummary {
+
+        private final String command;
+        private final String phase;
+        private final long count;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final double totalMillis;
+
+        @ConstructorParameters({"command", "phase", "count", "p50Millis", "p99Millis", "maxMillis", "totalMillis"})
+        public PhaseSummary(String command, String phase, long count, double p50Millis, double p99Millis,
+                double maxMillis, double totalMillis) {
+            this.command = command;
+            this.phase = phase;
+            this.count = count;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public double getTotalMillis() {
+            return totalMillis;
+        }
+    }
+}
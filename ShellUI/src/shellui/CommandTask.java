@@ -0,0 +1,150 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single command running on its own virtual thread, off the Swing event
+ * dispatch thread. The task remembers every child process it starts so that
+ * cancelling it can destroy the whole process tree.
+ *
+ * A task keeps the working directory it was started in, so a later
+ * {@code cd} does not move a command that is still running in the
+ * background, and the {@link Job} its output goes to.
+ */
+final class CommandTask {
+
+    private static final ThreadLocal<CommandTask> CURRENT = new ThreadLocal<>();
+
+    private final String commandLine;
+    private final File directory;
+    private volatile OutputSink output;
+    private final CommandMetrics.Sample metrics;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> forks = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private volatile Thread thread;
+
+    CommandTask(String commandLine, File directory) {
+        this.commandLine = commandLine;
+        this.directory = directory;
+        this.metrics = CommandMetrics.begin(commandLine);
+    }
+
+    /**
+     * Returns the task running on the calling thread, or null when called
+     * from outside a command (e.g. from the EDT).
+     */
+    static CommandTask current() {
+        return CURRENT.get();
+    }
+
+    String getCommandLine() {
+        return commandLine;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /** Where the command's output goes, or null for straight to the screen. */
+    OutputSink getOutput() {
+        return output;
+    }
+
+    void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    /** Where this run of the command spends its time, for {@code stats}. */
+    CommandMetrics.Sample metrics() {
+        return metrics;
+    }
+
+    void start(Runnable body) {
+        thread = Thread.ofVirtual().name("shell-command").start(() -> {
+            CURRENT.set(this);
+            try {
+                body.run();
+            } finally {
+                CURRENT.remove();
+                processes.clear();
+            }
+        });
+    }
+
+    /** Waits for the body given to {@link #start} to return; forks may still be finishing. */
+    void join() throws InterruptedException {
+        Thread t = thread;
+        if (t != null) {
+            t.join();
+        }
+    }
+
+    /**
+     * Starts another thread of this command, such as one stage of a
+     * pipeline. It sees this task as {@link #current()} and is interrupted
+     * on cancel like the main thread.
+     */
+    Thread fork(String name, Runnable body) {
+        Thread fork = Thread.ofVirtual().name(name).unstarted(() -> {
+            CURRENT.set(this);
+            try {
+                body.run();
+            } finally {
+                CURRENT.remove();
+                forks.remove(Thread.currentThread());
+            }
+        });
+        forks.add(fork);
+        fork.start();
+        if (cancelled) {
+            fork.interrupt();
+        }
+        return fork;
+    }
+
+    Process track(Process process) {
+        processes.add(process);
+        // The cancel may have raced with the start of the process
+        if (cancelled) {
+            destroyTree(process);
+        }
+        return process;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (Process process : processes) {
+            destroyTree(process);
+        }
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+        for (Thread fork : forks) {
+            fork.interrupt();
+        }
+    }
+
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+}
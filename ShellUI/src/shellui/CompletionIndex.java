@@ -0,0 +1,341 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+/**
+ * Cache of directory listings for path completion. Each directory is read
+ * once into an array of names sorted by their lower-case form, so a prefix
+ * lookup is a binary search. Whether an entry is a directory is only looked
+ * up for entries that are actually offered as completions, and remembered in
+ * a type byte per entry, so completing in a directory of 100k files does not
+ * stat 100k files.
+ *
+ * Cached directories are registered with a {@link WatchService}; a background
+ * thread drops a listing as soon as an entry is created or deleted. Where the
+ * file system cannot be watched, the directory's modification time is
+ * compared on each lookup instead. At most {@value #MAX_DIRECTORIES}
+ * directories are kept, least recently used first out.
+ *
+ * When nothing starts with the typed text, entries that contain its
+ * characters in order are offered instead, ranked by how well they match.
+ */
+final class CompletionIndex {
+
+    private static final int MAX_DIRECTORIES = 64;
+
+    private static final byte TYPE_UNKNOWN = 0;
+    private static final byte TYPE_FILE = 1;
+    private static final byte TYPE_DIRECTORY = 2;
+
+    /** A completion; {@code fuzzy} when it does not start with the typed text. */
+    record Candidate(String name, boolean directory, boolean fuzzy) {
+    }
+
+    private static final class Listing {
+
+        final Path directory;
+        final String[] names;
+        final String[] keys;
+        final byte[] types;
+        final FileTime modified;
+        WatchKey watchKey;
+
+        // The last fuzzy query; a longer query that extends it only rescans its matches
+        String fuzzyQuery;
+        int[] fuzzyMatches;
+
+        Listing(Path directory, String[] names, String[] keys, FileTime modified) {
+            this.directory = directory;
+            this.names = names;
+            this.keys = keys;
+            this.types = new byte[names.length];
+            this.modified = modified;
+        }
+    }
+
+    private final Map<Path, Listing> listings = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+            if (size() > MAX_DIRECTORIES) {
+                cancelWatch(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private WatchService watcher;
+
+    CompletionIndex() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            Thread.ofPlatform().daemon().name("completion-watch").start(this::watchLoop);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Fall back to checking modification times
+            watcher = null;
+        }
+    }
+
+    /** Reads a directory into the cache in the background, e.g. after cd. */
+    void prefetch(Path directory) {
+        Thread.ofVirtual().name("completion-prefetch").start(() -> listing(directory));
+    }
+
+    /**
+     * Entries of {@code directory} matching {@code typed}: those that start
+     * with it (ignoring case) in name order or, if there are none, fuzzy
+     * matches with the best first. At most {@code limit} are returned.
+     */
+    List<Candidate> complete(Path directory, String typed, int limit) {
+        Listing listing = listing(directory);
+        if (listing == null) {
+            return List.of();
+        }
+        synchronized (listing) {
+            String key = typed.toLowerCase(Locale.ROOT);
+            int from = lowerBound(listing.keys, key);
+            int to = from;
+            while (to < listing.keys.length && listing.keys[to].startsWith(key)) {
+                to++;
+            }
+            List<Candidate> candidates = new ArrayList<>();
+            if (to > from) {
+                for (int i = from; i < to && candidates.size() < limit; i++) {
+                    candidates.add(candidate(listing, i, false));
+                }
+                return candidates;
+            }
+            if (key.isEmpty()) {
+                return candidates;
+            }
+            for (int i : fuzzyMatches(listing, key)) {
+                if (candidates.size() == limit) {
+                    break;
+                }
+                candidates.add(candidate(listing, i, true));
+            }
+            return candidates;
+        }
+    }
+
+    /** Number of entries starting with {@code typed}, or of fuzzy matches if none do. */
+    int count(Path directory, String typed) {
+        Listing listing = listing(directory);
+        if (listing == null) {
+            return 0;
+        }
+        synchronized (listing) {
+            String key = typed.toLowerCase(Locale.ROOT);
+            int from = lowerBound(listing.keys, key);
+            int to = from;
+            while (to < listing.keys.length && listing.keys[to].startsWith(key)) {
+                to++;
+            }
+            return to > from || key.isEmpty() ? to - from : fuzzyMatches(listing, key).length;
+        }
+    }
+
+    private Listing listing(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        Listing listing;
+        synchronized (listings) {
+            listing = listings.get(key);
+        }
+        if (listing != null && (listing.watchKey != null ? listing.watchKey.isValid() : isCurrent(listing))) {
+            return listing;
+        }
+
+        // Watch before reading, so a change made while reading is not missed
+        WatchKey watchKey = watch(key);
+        listing = read(key);
+        if (listing == null) {
+            return null;
+        }
+        listing.watchKey = watchKey;
+        synchronized (listings) {
+            Listing previous = listings.put(key, listing);
+            if (previous != null && previous.watchKey != listing.watchKey) {
+                cancelWatch(previous);
+            }
+        }
+        return listing;
+    }
+
+    private WatchKey watch(Path directory) {
+        if (watcher == null) {
+            return null;
+        }
+        synchronized (listings) {
+            try {
+                WatchKey watchKey = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(watchKey, directory);
+                return watchKey;
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                // Not watchable; modification times keep it fresh
+                return null;
+            }
+        }
+    }
+
+    private static Listing read(Path directory) {
+        List<String> names = new ArrayList<>();
+        FileTime modified;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            modified = Files.getLastModifiedTime(directory);
+            for (Path entry : stream) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+        String[] keys = new String[names.size()];
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = names.get(i).toLowerCase(Locale.ROOT);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> keys[i]).thenComparing(names::get));
+        String[] sortedNames = new String[order.length];
+        String[] sortedKeys = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedNames[i] = names.get(order[i]);
+            sortedKeys[i] = keys[order[i]];
+        }
+        return new Listing(directory, sortedNames, sortedKeys, modified);
+    }
+
+    private static boolean isCurrent(Listing listing) {
+        try {
+            return Files.getLastModifiedTime(listing.directory).equals(listing.modified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Candidate candidate(Listing listing, int index, boolean fuzzy) {
+        if (listing.types[index] == TYPE_UNKNOWN) {
+            boolean directory;
+            try {
+                directory = Files.readAttributes(listing.directory.resolve(listing.names[index]),
+                        BasicFileAttributes.class).isDirectory();
+            } catch (IOException | InvalidPathException e) {
+                directory = false;
+            }
+            listing.types[index] = directory ? TYPE_DIRECTORY : TYPE_FILE;
+        }
+        return new Candidate(listing.names[index], listing.types[index] == TYPE_DIRECTORY, fuzzy);
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Indexes of the entries containing the query's characters in order, best match first. */
+    private static int[] fuzzyMatches(Listing listing, String query) {
+        if (query.equals(listing.fuzzyQuery)) {
+            return listing.fuzzyMatches;
+        }
+        // Anything matching the longer query also matched the shorter one
+        boolean narrow = listing.fuzzyQuery != null && query.startsWith(listing.fuzzyQuery);
+        int[] scope = narrow ? listing.fuzzyMatches : null;
+        int size = narrow ? scope.length : listing.keys.length;
+
+        // Score in the high half and index in the low half, so one sort ranks them
+        long[] ranked = new long[size];
+        int count = 0;
+        for (int n = 0; n < size; n++) {
+            int i = narrow ? scope[n] : n;
+            int score = fuzzyScore(listing.keys[i], query);
+            if (score > Integer.MIN_VALUE) {
+                ranked[count++] = ((long) -score << 32) | i;
+            }
+        }
+        Arrays.sort(ranked, 0, count);
+        int[] result = new int[count];
+        for (int n = 0; n < count; n++) {
+            result[n] = (int) ranked[n];
+        }
+        listing.fuzzyQuery = query;
+        listing.fuzzyMatches = result;
+        return result;
+    }
+
+    /**
+     * Score of {@code query} as a subsequence of {@code key}, or
+     * {@link Integer#MIN_VALUE} if it is not one. Consecutive characters and
+     * characters at the start of a word ({@code _ - . space} or the start of
+     * the name) score higher; gaps and long names score lower.
+     */
+    static int fuzzyScore(String key, String query) {
+        int score = 0;
+        int previous = -1;
+        int k = 0;
+        for (int q = 0; q < query.length(); q++) {
+            char c = query.charAt(q);
+            while (k < key.length() && key.charAt(k) != c) {
+                k++;
+            }
+            if (k == key.length()) {
+                return Integer.MIN_VALUE;
+            }
+            if (k == previous + 1) {
+                score += 8;
+            } else {
+                score -= Math.min(k - previous - 1, 8);
+            }
+            if (k == 0 || "_-. ".indexOf(key.charAt(k - 1)) >= 0) {
+                score += 6;
+            }
+            previous = k;
+            k++;
+        }
+        return score - key.length() / 4;
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            // Any event means names or types may have changed; the listing is read again on demand
+            key.pollEvents();
+            key.cancel();
+            synchronized (listings) {
+                Path directory = watchedDirectories.remove(key);
+                Listing listing = directory == null ? null : listings.get(directory);
+                if (listing != null && listing.watchKey == key) {
+                    listings.remove(directory);
+                }
+            }
+        }
+    }
+
+    private void cancelWatch(Listing listing) {
+        if (listing.watchKey != null) {
+            watchedDirectories.remove(listing.watchKey);
+            listing.watchKey.cancel();
+        }
+    }
+}
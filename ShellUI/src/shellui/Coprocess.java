@@ -0,0 +1,360 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * One long-lived {@code /bin/sh} that runs external commands for the
+ * session, so a burst of small commands (ls -ld, getfacl, chmod, ...) pays
+ * for a fork in the shell rather than a full process launch from the JVM
+ * each.
+ *
+ * Each command is written to the shell's stdin as one line, with its
+ * output and errors merged and its stdin from /dev/null; the shell then
+ * prints a sentinel with a per-session random token and the exit code. The
+ * command is handed out as a {@link Process} whose input stream ends at the
+ * sentinel, so callers read it and wait for it exactly as for a process of
+ * their own. Cancelling it kills only the command, not the shell. If the
+ * shell dies it is started again for the next command.
+ *
+ * The shell runs one command at a time; while it is busy (a pipeline
+ * stage, a second thread) {@link #start} returns null and the caller starts
+ * a process of its own.
+ */
+final class Coprocess implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] sentinel;
+    private final String sentinelFormat;
+    private final Semaphore idle = new Semaphore(1);
+    private final Map<String, Boolean> onPath = new ConcurrentHashMap<>();
+
+    // Shell state, guarded by holding the idle permit
+    private volatile Process shell;
+    private InputStream shellOut;
+    private OutputStream shellIn;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private volatile long commands;
+    private volatile int restarts;
+
+    Coprocess() {
+        String token = "SHELLUI-" + Long.toHexString(new SecureRandom().nextLong()) + ":";
+        sentinel = ("\u0001" + token).getBytes(StandardCharsets.US_ASCII);
+        sentinelFormat = "\\001" + token + "%d\\n";
+    }
+
+    /** True if the command can run in the shell: output and errors merged, no other redirects. */
+    static boolean accepts(ProcessBuilder builder) {
+        return builder.redirectErrorStream() && !builder.command().isEmpty()
+                && builder.redirectInput() == ProcessBuilder.Redirect.PIPE
+                && builder.redirectOutput() == ProcessBuilder.Redirect.PIPE;
+    }
+
+    /**
+     * Runs the command in the shell, or returns null if the shell is busy
+     * or the program is not found, so that starting it directly reports the
+     * error the usual way.
+     */
+    Process start(ProcessBuilder builder) throws IOException {
+        List<String> command = builder.command();
+        File directory = builder.directory() != null ? builder.directory() : new File(System.getProperty("user.dir"));
+        if (!isProgram(command.get(0), directory) || !idle.tryAcquire()) {
+            return null;
+        }
+        try {
+            StringBuilder line = new StringBuilder("cd -- ").append(quote(directory.getPath())).append(" && ");
+            for (String word : command) {
+                line.append(quote(word)).append(' ');
+            }
+            line.append("</dev/null 2>&1; printf '").append(sentinelFormat).append("' \"$?\"\n");
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                send(bytes);
+            } catch (IOException e) {
+                // The shell died since the last command; nothing has run yet, so try once more
+                stopShell();
+                restarts++;
+                send(bytes);
+            }
+            commands++;
+            return new Command();
+        } catch (IOException | RuntimeException e) {
+            stopShell();
+            idle.release();
+            throw e;
+        }
+    }
+
+    /** One line for the {@code coprocess status} command. */
+    String status() {
+        Process current = shell;
+        return String.format("on, %s, %,d commands run, %d restarts",
+                current != null && current.isAlive() ? "shell pid " + current.pid() : "shell not started",
+                commands, restarts);
+    }
+
+    @Override
+    public void close() {
+        if (idle.tryAcquire()) {
+            try {
+                stopShell();
+            } finally {
+                idle.release();
+            }
+        } else {
+            // A command is still running; it will find the shell gone
+            Process current = shell;
+            if (current != null) {
+                current.descendants().forEach(ProcessHandle::destroyForcibly);
+                current.destroyForcibly();
+            }
+        }
+    }
+
+    private void send(byte[] line) throws IOException {
+        if (shell == null || !shell.isAlive()) {
+            startShell();
+        }
+        shellIn.write(line);
+        shellIn.flush();
+    }
+
+    private void startShell() throws IOException {
+        if (shell != null) {
+            restarts++;
+        }
+        shell = new ProcessBuilder("/bin/sh").redirectErrorStream(true).start();
+        shellOut = shell.getInputStream();
+        shellIn = shell.getOutputStream();
+        position = 0;
+        limit = 0;
+    }
+
+    private void stopShell() {
+        if (shell != null) {
+            shell.destroyForcibly();
+            shell = null;
+        }
+    }
+
+    /** Whether the name is a program the shell will find; absent names are not cached, in case they appear. */
+    private boolean isProgram(String name, File directory) {
+        if (name.contains("/")) {
+            Path path = directory.toPath().resolve(name);
+            return Files.isRegularFile(path) && Files.isExecutable(path);
+        }
+        if (onPath.containsKey(name)) {
+            return true;
+        }
+        String path = System.getenv("PATH");
+        boolean found = path != null && Stream.of(path.split(File.pathSeparator))
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> Path.of(entry, name))
+                .anyMatch(candidate -> Files.isRegularFile(candidate) && Files.isExecutable(candidate));
+        if (found) {
+            onPath.put(name, true);
+        }
+        return found;
+    }
+
+    private static String quote(String word) {
+        return "'" + word.replace("'", "'\\''") + "'";
+    }
+
+    /** A command running in the shell, seen as a process. */
+    private final class Command extends Process {
+
+        private final InputStream output = new Output();
+        private volatile boolean finished;
+        private volatile int exitCode;
+
+        @Override
+        public OutputStream getOutputStream() {
+            // Commands read /dev/null; the shell's own stdin carries the command lines
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return output;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            if (!finished) {
+                // Output nobody read still stands between here and the exit code
+                try {
+                    output.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    finish(1);
+                }
+            }
+            return exitCode;
+        }
+
+        @Override
+        public int exitValue() {
+            if (!finished) {
+                throw new IllegalThreadStateException("process hasn't exited");
+            }
+            return exitCode;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !finished;
+        }
+
+        @Override
+        public Stream<ProcessHandle> descendants() {
+            Process current = shell;
+            return finished || current == null ? Stream.empty() : current.descendants();
+        }
+
+        @Override
+        public void destroy() {
+            // The command, not the shell: the shell then reports its exit code as usual
+            descendants().forEach(ProcessHandle::destroy);
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            descendants().forEach(ProcessHandle::destroyForcibly);
+            return this;
+        }
+
+        private void finish(int code) {
+            if (!finished) {
+                exitCode = code;
+                finished = true;
+                idle.release();
+            }
+        }
+
+        /** The shell's output up to the sentinel. */
+        private final class Output extends InputStream {
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] target, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                while (!finished) {
+                    int match = indexOfSentinel();
+                    if (match > position || match < 0 && limit - heldBack() > position) {
+                        int end = match >= 0 ? match : limit - heldBack();
+                        int count = Math.min(length, end - position);
+                        System.arraycopy(buffer, position, target, offset, count);
+                        position += count;
+                        return count;
+                    }
+                    if (match == position) {
+                        int newline = indexOf((byte) '\n', position + sentinel.length);
+                        if (newline >= 0) {
+                            String code = new String(buffer, position + sentinel.length,
+                                    newline - position - sentinel.length, StandardCharsets.US_ASCII);
+                            position = newline + 1;
+                            finish(parseExitCode(code));
+                            break;
+                        }
+                    }
+                    if (!fill()) {
+                        // The shell died mid-command; the next command starts a new one
+                        Process dead = shell;
+                        shell = null;
+                        restarts++;
+                        finish(dead != null && !dead.isAlive() ? 128 + (dead.exitValue() & 0x7f) : 1);
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public void close() {
+                // The shell's stream stays open for the next command
+            }
+
+            private boolean fill() throws IOException {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                int read = shellOut.read(buffer, limit, buffer.length - limit);
+                if (read <= 0) {
+                    return false;
+                }
+                limit += read;
+                return true;
+            }
+
+            private int indexOfSentinel() {
+                outer:
+                for (int i = position; i <= limit - sentinel.length; i++) {
+                    for (int j = 0; j < sentinel.length; j++) {
+                        if (buffer[i + j] != sentinel[j]) {
+                            continue outer;
+                        }
+                    }
+                    return i;
+                }
+                return -1;
+            }
+
+            /** Bytes at the end that may be the start of a sentinel, kept until more arrives. */
+            private int heldBack() {
+                for (int length = Math.min(sentinel.length - 1, limit - position); length > 0; length--) {
+                    if (Arrays.equals(buffer, limit - length, limit, sentinel, 0, length)) {
+                        return length;
+                    }
+                }
+                return 0;
+            }
+
+            private int indexOf(byte value, int from) {
+                for (int i = from; i < limit; i++) {
+                    if (buffer[i] == value) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            private int parseExitCode(String code) {
+                try {
+                    return Integer.parseInt(code.trim());
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process copy used by {@code cp}. Files are copied with
+ * {@link FileChannel#transferTo}, which the JDK maps to copy_file_range /
+ * sendfile where available, so large files never pass through the heap.
+ * Recursive copies walk the source tree on the shared {@link WorkerPool},
+ * one task per directory and small files in batches, and preserve
+ * timestamps and permissions.
+ */
+final class CopyEngine {
+
+    // Files below this size are copied in one call; larger ones in chunks so progress and cancel stay live
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int FILES_PER_BATCH = 64;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final AtomicLong filesCopied = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    private long startNanos;
+
+    CopyEngine(OutputSink out, CommandTask task) {
+        this.out = out;
+        this.task = task;
+    }
+
+    /**
+     * Copies {@code source} to {@code target}. If the target is an existing
+     * directory the source is copied into it, like cp. Returns a one line
+     * summary with the number of files and the throughput.
+     */
+    String copy(Path source, Path target, boolean recursive) {
+        startNanos = System.nanoTime();
+        copyInto(source, target, recursive);
+        return summary();
+    }
+
+    /**
+     * Copies {@code source} to exactly {@code target}, never into it, for
+     * {@code mv} across devices; the caller has checked that the target is
+     * not an existing directory.
+     */
+    String copyTo(Path source, Path target) {
+        startNanos = System.nanoTime();
+        copyExact(source, target, true);
+        return summary();
+    }
+
+    /**
+     * Copies several sources into an existing directory.
+     */
+    String copyAll(List<Path> sources, Path targetDir, boolean recursive) {
+        startNanos = System.nanoTime();
+        if (!Files.isDirectory(targetDir)) {
+            throw new RuntimeException("Target is not a directory: " + targetDir);
+        }
+        for (Path source : sources) {
+            copyInto(source, targetDir, recursive);
+        }
+        return summary();
+    }
+
+    long bytesCopied() {
+        return bytesCopied.get();
+    }
+
+    long filesCopied() {
+        return filesCopied.get();
+    }
+
+    private void copyInto(Path source, Path target, boolean recursive) {
+        if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+            throw new RuntimeException("Source file/directory does not exist: " + source);
+        }
+        if (Files.isDirectory(target)) {
+            target = target.resolve(source.getFileName().toString());
+        }
+        copyExact(source, target, recursive);
+    }
+
+    private void copyExact(Path source, Path target, boolean recursive) {
+        if (target.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())
+                && Files.isDirectory(source)) {
+            throw new RuntimeException("Cannot copy a directory into itself: " + source + " → " + target);
+        }
+
+        if (Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
+            if (!recursive) {
+                throw new RuntimeException("cp: -r not specified; omitting directory " + source);
+            }
+            WorkerPool.invoke(new DirectoryCopy(source, target), PROGRESS_INTERVAL_MS, this::reportProgress);
+            if (errors.get() > 0) {
+                throw new RuntimeException("cp: " + errors.get() + " file(s) could not be copied");
+            }
+        } else {
+            try {
+                if (isSameFile(source, target)) {
+                    throw new RuntimeException("cp: " + sameFileMessage(source, target));
+                }
+                copyFile(source, target);
+            } catch (IOException e) {
+                throw new RuntimeException("Copy failed: " + source + " → " + target + ": " + describe(e));
+            }
+        }
+    }
+
+    private void copyFile(Path source, Path target) throws IOException {
+        checkCancelled();
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (isSameFile(source, target)) {
+            throw new IOException(sameFileMessage(source, target));
+        }
+        if (attributes.isSymbolicLink() || attributes.size() <= CHUNK_SIZE) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+            bytesCopied.addAndGet(attributes.size());
+        } else {
+            copyLargeFile(source, target, attributes);
+        }
+        filesCopied.incrementAndGet();
+    }
+
+    /**
+     * Copies in chunks into a temporary file next to the target and moves it
+     * into place at the end, so a cancelled or failed copy leaves the old
+     * target as it was instead of truncated.
+     */
+    private void copyLargeFile(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path partial = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".part");
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                    FileChannel outChannel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    checkCancelled();
+                    long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), outChannel);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                    bytesCopied.addAndGet(transferred);
+                }
+            }
+            copyAttributes(source, partial, attributes);
+            try {
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // Copying a file onto itself would truncate it before it is read
+    private static boolean isSameFile(Path source, Path target) throws IOException {
+        return Files.exists(target, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(source, target);
+    }
+
+    private static String sameFileMessage(Path source, Path target) {
+        return "'" + source + "' and '" + target + "' are the same file";
+    }
+
+    private static void copyAttributes(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (posix != null) {
+            posix.setPermissions(Files.getPosixFilePermissions(source));
+        } else {
+            DosFileAttributeView dos = Files.getFileAttributeView(target, DosFileAttributeView.class);
+            if (dos != null) {
+                DosFileAttributes sourceDos = Files.readAttributes(source, DosFileAttributes.class);
+                dos.setReadOnly(sourceDos.isReadOnly());
+                dos.setHidden(sourceDos.isHidden());
+            }
+        }
+        Files.getFileAttributeView(target, BasicFileAttributeView.class)
+                .setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), null);
+    }
+
+    private void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    private void reportError(Path path, IOException e) {
+        if (errors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            out.append("cp: cannot copy " + path + ": " + describe(e) + "\n", "error");
+        }
+    }
+
+    private void reportProgress() {
+        long elapsed = System.nanoTime() - startNanos;
+        out.append(String.format("  ... %d files, %s (%s)%n", filesCopied.get(),
+                Sizes.format(bytesCopied.get()), Sizes.rate(bytesCopied.get(), elapsed)), "output");
+    }
+
+    private String summary() {
+        long elapsed = System.nanoTime() - startNanos;
+        return String.format("%d file(s), %s in %s (%s)", filesCopied.get(), Sizes.format(bytesCopied.get()),
+                Sizes.seconds(elapsed), Sizes.rate(bytesCopied.get(), elapsed));
+    }
+
+    private static String describe(IOException e) {
+        return e instanceof NoSuchFileException || e instanceof AccessDeniedException
+                || e instanceof FileAlreadyExistsException
+                ? e.getClass().getSimpleName() + " " + e.getMessage()
+                : e.getMessage();
+    }
+
+    /** Copies one directory: forks a task per subdirectory and per batch of files. */
+    private final class DirectoryCopy extends RecursiveAction {
+
+        private final Path source;
+        private final Path target;
+
+        DirectoryCopy(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        protected void compute() {
+            checkCancelled();
+            BasicFileAttributes attributes;
+            List<RecursiveAction> subtasks = new ArrayList<>();
+            try {
+                attributes = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                Files.createDirectories(target);
+                List<Path> batch = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+                    for (Path entry : entries) {
+                        Path destination = target.resolve(entry.getFileName().toString());
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            subtasks.add(new DirectoryCopy(entry, destination));
+                        } else {
+                            batch.add(entry);
+                            if (batch.size() == FILES_PER_BATCH) {
+                                subtasks.add(new FileBatchCopy(batch, target));
+                                batch = new ArrayList<>();
+                            }
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    subtasks.add(new FileBatchCopy(batch, target));
+                }
+            } catch (IOException e) {
+                reportError(source, e);
+                return;
+            }
+
+            invokeAll(subtasks);
+
+            // Directory times last, after the children have been written
+            try {
+                copyAttributes(source, target, attributes);
+            } catch (IOException e) {
+                reportError(source, e);
+            }
+        }
+    }
+
+    private final class FileBatchCopy extends RecursiveAction {
+
+        private final List<Path> files;
+        private final Path targetDir;
+
+        FileBatchCopy(List<Path> files, Path targetDir) {
+            this.files = files;
+            this.targetDir = targetDir;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path file : files) {
+                try {
+                    copyFile(file, targetDir.resolve(file.getFileName().toString()));
+                } catch (IOException e) {
+                    reportError(file, e);
+                }
+            }
+        }
+    }
+}
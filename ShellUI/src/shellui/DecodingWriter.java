@@ -0,0 +1,69 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 bytes read from a channel to an {@link OutputSink} in
+ * batches of about 64K chars. A character split between two writes is kept
+ * back until the rest of it arrives; malformed bytes become U+FFFD.
+ */
+final class DecodingWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int FLUSH_CHARS = 64 * 1024;
+
+    private final OutputSink out;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder text = new StringBuilder();
+
+    DecodingWriter(OutputSink out) {
+        this.out = out;
+    }
+
+    /** Decodes all remaining bytes of the buffer. */
+    void write(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            int n = Math.min(input.remaining(), bytes.remaining());
+            input.put(bytes.slice(bytes.position(), n));
+            bytes.position(bytes.position() + n);
+            input.flip();
+            decoder.decode(input, chars.clear(), false);
+            text.append(chars.flip());
+            input.compact();
+            if (text.length() >= FLUSH_CHARS) {
+                flush();
+            }
+        }
+    }
+
+    /** Hands the text decoded so far to the sink. */
+    void flush() {
+        if (text.length() > 0) {
+            out.append(text.toString(), "output");
+            text.setLength(0);
+        }
+    }
+
+    /** Decodes what is left, including an incomplete last character, and flushes. */
+    void finish() {
+        input.flip();
+        decoder.decode(input, chars.clear(), true);
+        decoder.flush(chars);
+        text.append(chars.flip());
+        input.clear();
+        decoder.reset();
+        flush();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process disk usage used by {@code du}. Each directory is listed by its
+ * own task on the {@link WorkerPool}; entries are stat'ed once without
+ * following links. Files reachable through several hard links are counted
+ * once, keyed by {@link BasicFileAttributes#fileKey()} (device and inode on
+ * Unix; Windows has no file key, so nothing is de-duplicated there).
+ *
+ * Sizes are apparent sizes (file lengths), not allocated blocks.
+ */
+final class DuEngine {
+
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    /** A directory and the total size below it. */
+    record Entry(Path path, long size) {
+    }
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final int maxDepth;
+    private final Set<Object> seenKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bytesSeen = new AtomicLong();
+    private final AtomicLong filesSeen = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param maxDepth deepest directory level to report (0 = only the
+     *        argument itself), or -1 for no limit
+     */
+    DuEngine(OutputSink out, CommandTask task, int maxDepth) {
+        this.out = out;
+        this.task = task;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Walks {@code root} and returns the reported directories in du order
+     * (children before their parent), ending with the root itself. While the
+     * walk runs a running total is written to the sink.
+     */
+    List<Entry> walk(Path root) {
+        return walk(root, root);
+    }
+
+    /**
+     * Like {@link #walk(Path)}, reporting each directory under {@code name},
+     * the root as the user typed it, so {@code du .} lists {@code ./dir}.
+     */
+    List<Entry> walk(Path root, Path name) {
+        long start = System.nanoTime();
+        Result result = WorkerPool.invoke(new DirectoryUsage(root, 0), PROGRESS_INTERVAL_MS, () -> out.append(
+                String.format("  ... %d files, %s so far (%s)%n", filesSeen.get(), Sizes.format(bytesSeen.get()),
+                        Sizes.seconds(System.nanoTime() - start)), "output"));
+        if (name.equals(root)) {
+            return result.entries();
+        }
+        List<Entry> entries = new ArrayList<>(result.entries().size());
+        for (Entry entry : result.entries()) {
+            entries.add(new Entry(name.resolve(root.relativize(entry.path())), entry.size()));
+        }
+        return entries;
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    static void sortBySize(List<Entry> entries) {
+        entries.sort(Comparator.comparingLong(Entry::size).reversed());
+    }
+
+    static String format(Entry entry) {
+        return Sizes.format(entry.size()) + "\t" + entry.path() + "\n";
+    }
+
+    private record Result(long size, List<Entry> entries) {
+    }
+
+    private boolean firstSighting(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key == null || seenKeys.add(key);
+    }
+
+    private final class DirectoryUsage extends RecursiveTask<Result> {
+
+        private final Path directory;
+        private final int depth;
+
+        DirectoryUsage(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Result compute() {
+            if (task != null && task.isCancelled()) {
+                throw new CancellationException("Command cancelled");
+            }
+            long size = 0;
+            List<DirectoryUsage> subdirectories = new ArrayList<>();
+            try {
+                BasicFileAttributes self = Files.readAttributes(directory, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (!self.isDirectory()) {
+                    // du on a plain file
+                    size = firstSighting(self) ? self.size() : 0;
+                    bytesSeen.addAndGet(size);
+                    filesSeen.incrementAndGet();
+                    return new Result(size, depth <= maxDepth || maxDepth < 0
+                            ? List.of(new Entry(directory, size)) : List.of());
+                }
+                size += self.size();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException e) {
+                            reportError(entry, e);
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            subdirectories.add(new DirectoryUsage(entry, depth + 1));
+                        } else if (firstSighting(attributes)) {
+                            size += attributes.size();
+                            bytesSeen.addAndGet(attributes.size());
+                            filesSeen.incrementAndGet();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                reportError(directory, e);
+            }
+
+            invokeAll(subdirectories);
+
+            // Children first, then this directory, like du
+            List<Entry> entries = new ArrayList<>();
+            for (DirectoryUsage subdirectory : subdirectories) {
+                Result child = subdirectory.join();
+                size += child.size();
+                entries.addAll(child.entries());
+            }
+            if (maxDepth < 0 || depth <= maxDepth) {
+                entries.add(new Entry(directory, size));
+            }
+            return new Result(size, entries);
+        }
+
+        private void reportError(Path path, IOException e) {
+            errors.incrementAndGet();
+            out.append("du: cannot read " + path + ": " + e.getMessage() + "\n", "error");
+        }
+    }
+}
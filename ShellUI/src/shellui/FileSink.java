@@ -0,0 +1,143 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Output sink for {@code >} and {@code >>}: text is encoded as UTF-8 into
+ * one reused 64 KB direct buffer and written to the file's channel, so a
+ * redirected command's output never reaches the Swing document or piles up
+ * on the heap. {@link #transferFrom} copies whole files without decoding
+ * them at all, for {@code cat a b > c}.
+ *
+ * Error output is passed on to the sink given for it, if any; without one
+ * every style is written to the file, as for {@code 2>}.
+ */
+final class FileSink implements OutputSink, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // transferTo is asked for at most this much at a time, so Cancel is noticed
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final OutputSink errors;
+    private final CommandMetrics.Sample metrics = CommandMetrics.current();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // A high surrogate whose low half has not been appended yet
+    private char pendingHigh;
+
+    private FileSink(FileChannel channel, OutputSink errors) {
+        this.channel = channel;
+        this.errors = errors;
+    }
+
+    /**
+     * Opens the file for writing, truncating it unless {@code append} is set.
+     *
+     * @param errors where error output goes, or null to write it to the file too
+     */
+    static FileSink open(Path file, boolean append, OutputSink errors) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return new FileSink(channel, errors);
+    }
+
+    @Override
+    public synchronized void append(String text, String style) {
+        if (errors != null && style.equals("error")) {
+            errors.append(text, style);
+            return;
+        }
+        if (metrics != null) {
+            metrics.addOutput(text.length());
+        }
+        try {
+            CharBuffer chars;
+            if (pendingHigh != 0) {
+                chars = CharBuffer.wrap(pendingHigh + text);
+                pendingHigh = 0;
+            } else {
+                chars = CharBuffer.wrap(text);
+            }
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    // Unpaired surrogate; write a replacement like String.getBytes does
+                    chars.position(chars.position() + result.length());
+                    if (buffer.remaining() < 1) {
+                        drain();
+                    }
+                    buffer.put((byte) '?');
+                }
+            }
+            if (chars.hasRemaining()) {
+                // Only the first half of a surrogate pair can be left over
+                pendingHigh = chars.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Appends the file's bytes unchanged, letting the OS copy them where it can. */
+    synchronized void transferFrom(Path file, CommandTask task) throws IOException {
+        drain();
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = source.size();
+            while (position < size) {
+                if (task != null && task.isCancelled()) {
+                    throw new CancellationException("Command cancelled");
+                }
+                long copied = source.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), channel);
+                if (copied <= 0) {
+                    break;
+                }
+                position += copied;
+            }
+            if (metrics != null) {
+                metrics.addOutput(position);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (pendingHigh != 0) {
+                buffer.put((byte) '?');
+                pendingHigh = 0;
+            }
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
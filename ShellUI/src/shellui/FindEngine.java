@@ -0,0 +1,434 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * In-process {@code find}. The expression is parsed once into a tree of
+ * predicates and evaluated against every entry of a parallel walk on the
+ * {@link WorkerPool}, one task per directory.
+ *
+ * Each directory is listed with a depth-1 {@link Files#walkFileTree}, which
+ * hands every entry to the visitor together with its attributes: on Windows
+ * they come straight from the directory listing, elsewhere they cost one
+ * lstat per entry, and they are never read a second time. Matches are
+ * written to the output in batches while the walk is still running, and a
+ * directory for which {@code -prune} is true is not opened at all.
+ *
+ * Supported: -name, -iname (globs in {@link PathMatcher} syntax), -type
+ * f|d|l, -size [+-]N[ckMG], -mtime [+-]N, -newer file, -maxdepth,
+ * -mindepth, -prune, -print, ! / -not, -a / -and, -o / -or and parentheses.
+ */
+final class FindEngine {
+
+    private static final int FLUSH_CHARS = 16 * 1024;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /** An entry under evaluation; predicates may set the action flags. */
+    static final class Entry {
+
+        final Path path;
+        final BasicFileAttributes attributes;
+        final int depth;
+        boolean prune;
+        boolean print;
+        // Built on first use; most entries are never printed
+        private final String parentDisplay;
+        private String display;
+
+        Entry(Path path, String parentDisplay, String display, BasicFileAttributes attributes, int depth) {
+            this.path = path;
+            this.parentDisplay = parentDisplay;
+            this.display = display;
+            this.attributes = attributes;
+            this.depth = depth;
+        }
+
+        String display() {
+            if (display == null) {
+                display = parentDisplay + path.getFileName();
+            }
+            return display;
+        }
+    }
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final Predicate<Entry> expression;
+    private final long now = System.currentTimeMillis();
+    private int maxDepth = Integer.MAX_VALUE;
+    private int minDepth = 0;
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Parses a find expression such as {@code -name *.java -o ( -type d -prune )}.
+     * Relative file arguments (-newer) are resolved against {@code workingDirectory}.
+     * An empty expression matches everything.
+     */
+    FindEngine(List<String> expression, Path workingDirectory, OutputSink out, CommandTask task) {
+        this.out = out;
+        this.task = task;
+        Parser parser = new Parser(expression, workingDirectory);
+        Predicate<Entry> parsed = parser.parse();
+        // Like find, print whatever matches unless the expression prints by itself
+        this.expression = parser.printSeen ? parsed : parsed.and(entry -> entry.print = true);
+    }
+
+    /** True for arguments that start an expression rather than name a starting point. */
+    static boolean isExpressionStart(String argument) {
+        return argument.startsWith("-") || argument.equals("!") || argument.equals("(") || argument.equals("\\(");
+    }
+
+    /**
+     * Walks {@code root}, shown in the output as {@code display}, and streams
+     * the printed entries to the sink. Returns the number printed.
+     */
+    long run(Path root, String display) {
+        long before = matches.get();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            throw new RuntimeException("find: " + display + ": " + e.getMessage());
+        }
+        WorkerPool.invoke(new DirectoryFind(new Entry(root, null, display, attributes, 0)), Long.MAX_VALUE, null);
+        return matches.get() - before;
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    private void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    private void flush(StringBuilder batch) {
+        if (batch.length() > 0) {
+            out.append(batch.toString(), "output");
+            batch.setLength(0);
+        }
+    }
+
+    /** Evaluates one entry and lists it (when it is a directory) on its own task. */
+    private final class DirectoryFind extends RecursiveAction {
+
+        private final Entry directory;
+
+        DirectoryFind(Entry directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            checkCancelled();
+            StringBuilder batch = new StringBuilder();
+            if (!evaluate(directory, batch) || !directory.attributes.isDirectory() || directory.depth >= maxDepth) {
+                flush(batch);
+                return;
+            }
+
+            List<DirectoryFind> subdirectories = new ArrayList<>();
+            int childDepth = directory.depth + 1;
+            String display = directory.display();
+            String prefix = display.endsWith("/") || display.endsWith("\\") ? display : display + "/";
+            try {
+                Files.walkFileTree(directory.path, Set.of(), 1, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        Entry entry = new Entry(file, prefix, null, attributes, childDepth);
+                        if (attributes.isDirectory()) {
+                            subdirectories.add(new DirectoryFind(entry));
+                        } else {
+                            evaluate(entry, batch);
+                            if (batch.length() >= FLUSH_CHARS) {
+                                checkCancelled();
+                                flush(batch);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        reportError(prefix + file.getFileName(), e);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                        if (e != null) {
+                            reportError(display, e);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                reportError(display, e);
+            }
+            flush(batch);
+            invokeAll(subdirectories);
+        }
+
+        /** Applies the expression; returns false when a directory must not be descended into. */
+        private boolean evaluate(Entry entry, StringBuilder batch) {
+            if (entry.depth < minDepth) {
+                return true;
+            }
+            expression.test(entry);
+            if (entry.print) {
+                matches.incrementAndGet();
+                batch.append(entry.display()).append('\n');
+            }
+            return !entry.prune;
+        }
+
+        private void reportError(String path, IOException e) {
+            errors.incrementAndGet();
+            out.append("find: " + path + ": " + e.getMessage() + "\n", "error");
+        }
+    }
+
+    /**
+     * Recursive descent over the tokens:
+     * or := and (-o and)*, and := unary ([-a] unary)*, unary := ! unary | ( or ) | primary.
+     */
+    private final class Parser {
+
+        private final List<String> tokens;
+        private final Path workingDirectory;
+        private int position;
+        boolean printSeen;
+
+        Parser(List<String> tokens, Path workingDirectory) {
+            this.tokens = tokens;
+            this.workingDirectory = workingDirectory;
+        }
+
+        Predicate<Entry> parse() {
+            if (tokens.isEmpty()) {
+                return entry -> true;
+            }
+            Predicate<Entry> result = parseOr();
+            if (position < tokens.size()) {
+                throw new RuntimeException("find: unexpected '" + tokens.get(position) + "'");
+            }
+            return result;
+        }
+
+        private Predicate<Entry> parseOr() {
+            Predicate<Entry> left = parseAnd();
+            while (accept("-o") || accept("-or")) {
+                left = left.or(parseAnd());
+            }
+            return left;
+        }
+
+        private Predicate<Entry> parseAnd() {
+            Predicate<Entry> left = parseUnary();
+            while (position < tokens.size()) {
+                String token = tokens.get(position);
+                if (token.equals("-o") || token.equals("-or") || token.equals(")") || token.equals("\\)")) {
+                    break;
+                }
+                if (token.equals("-a") || token.equals("-and")) {
+                    position++;
+                }
+                left = left.and(parseUnary());
+            }
+            return left;
+        }
+
+        private Predicate<Entry> parseUnary() {
+            if (accept("!") || accept("-not")) {
+                return parseUnary().negate();
+            }
+            if (accept("(") || accept("\\(")) {
+                Predicate<Entry> inner = parseOr();
+                if (!accept(")") && !accept("\\)")) {
+                    throw new RuntimeException("find: missing ')'");
+                }
+                return inner;
+            }
+            return parsePrimary();
+        }
+
+        private Predicate<Entry> parsePrimary() {
+            if (position >= tokens.size()) {
+                throw new RuntimeException("find: expression expected after '" + tokens.get(position - 1) + "'");
+            }
+            String token = tokens.get(position++);
+            switch (token) {
+                case "-name": {
+                    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + argument(token));
+                    return entry -> entry.path.getFileName() != null && matcher.matches(entry.path.getFileName());
+                }
+                case "-iname": {
+                    // The JDK glob matcher only folds case on Windows, so -iname uses the same glob as a regex
+                    Pattern pattern = Pattern.compile(globToRegex(argument(token)),
+                            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                    return entry -> entry.path.getFileName() != null
+                            && pattern.matcher(entry.path.getFileName().toString()).matches();
+                }
+                case "-type":
+                    return switch (argument(token)) {
+                        case "f" -> entry -> entry.attributes.isRegularFile();
+                        case "d" -> entry -> entry.attributes.isDirectory();
+                        case "l" -> entry -> entry.attributes.isSymbolicLink();
+                        default -> throw new RuntimeException("find: -type must be f, d or l");
+                    };
+                case "-size":
+                    return sizeTest(argument(token));
+                case "-mtime": {
+                    Comparison days = Comparison.parse(token, argument(token));
+                    return entry -> days.test((now - entry.attributes.lastModifiedTime().toMillis()) / DAY_MILLIS);
+                }
+                case "-newer": {
+                    String name = argument(token);
+                    long reference;
+                    try {
+                        reference = Files.getLastModifiedTime(workingDirectory.resolve(name)).toMillis();
+                    } catch (IOException | InvalidPathException e) {
+                        throw new RuntimeException("find: cannot stat '" + name + "'");
+                    }
+                    return entry -> entry.attributes.lastModifiedTime().toMillis() > reference;
+                }
+                case "-maxdepth":
+                    maxDepth = depthArgument(token);
+                    return entry -> true;
+                case "-mindepth":
+                    minDepth = depthArgument(token);
+                    return entry -> true;
+                case "-prune":
+                    return entry -> entry.prune = true;
+                case "-print":
+                    printSeen = true;
+                    return entry -> entry.print = true;
+                default:
+                    throw new RuntimeException("find: unknown predicate '" + token + "'");
+            }
+        }
+
+        private Predicate<Entry> sizeTest(String value) {
+            // Like find: N is in 512-byte blocks unless suffixed, and sizes round up to the unit
+            long unit = 512;
+            String number = value;
+            char suffix = value.isEmpty() ? ' ' : value.charAt(value.length() - 1);
+            switch (suffix) {
+                case 'c' -> unit = 1;
+                case 'k' -> unit = 1024;
+                case 'M' -> unit = 1024L * 1024;
+                case 'G' -> unit = 1024L * 1024 * 1024;
+                case 'b' -> unit = 512;
+                default -> suffix = ' ';
+            }
+            if (suffix != ' ') {
+                number = value.substring(0, value.length() - 1);
+            }
+            long blockSize = unit;
+            Comparison size = Comparison.parse("-size", number);
+            return entry -> size.test((entry.attributes.size() + blockSize - 1) / blockSize);
+        }
+
+        /** Translates PathMatcher glob syntax (* ? [...] {a,b}) for a single file name into a regex. */
+        private String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            boolean inGroup = false;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                switch (c) {
+                    case '*' -> regex.append(".*");
+                    case '?' -> regex.append('.');
+                    case '[' -> {
+                        int close = glob.indexOf(']', i + 2);
+                        if (close < 0) {
+                            regex.append("\\[");
+                        } else {
+                            String set = glob.substring(i + 1, close);
+                            regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                            i = close;
+                        }
+                    }
+                    case '{' -> {
+                        regex.append("(?:");
+                        inGroup = true;
+                    }
+                    case '}' -> {
+                        regex.append(inGroup ? ")" : "\\}");
+                        inGroup = false;
+                    }
+                    case ',' -> regex.append(inGroup ? "|" : ",");
+                    case '\\' -> {
+                        if (i + 1 < glob.length()) {
+                            regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                        }
+                    }
+                    default -> regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+
+        private int depthArgument(String token) {
+            String value = argument(token);
+            try {
+                int depth = Integer.parseInt(value);
+                if (depth >= 0) {
+                    return depth;
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw new RuntimeException("find: invalid depth for " + token + ": " + value);
+        }
+
+        private String argument(String token) {
+            if (position >= tokens.size()) {
+                throw new RuntimeException("find: missing argument to '" + token + "'");
+            }
+            return tokens.get(position++);
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /** A numeric test in find's +N (more than), -N (less than) and N (exactly) form. */
+    private record Comparison(int sign, long value) {
+
+        static Comparison parse(String token, String text) {
+            int sign = text.startsWith("+") ? 1 : text.startsWith("-") ? -1 : 0;
+            try {
+                return new Comparison(sign, Long.parseLong(sign == 0 ? text : text.substring(1)));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("find: invalid argument '" + text + "' to " + token);
+            }
+        }
+
+        boolean test(long actual) {
+            return sign > 0 ? actual > value : sign < 0 ? actual < value : actual == value;
+        }
+    }
+}
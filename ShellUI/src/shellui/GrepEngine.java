@@ -0,0 +1,436 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-process search used by {@code grep}.
+ *
+ * Files are memory-mapped and scanned in blocks of raw bytes. Literal
+ * patterns (no regex metacharacters) are found with a Boyer-Moore-Horspool
+ * search over the whole block and only the matching lines are decoded;
+ * ASCII literals with -i use the same search on case-folded bytes. Other
+ * patterns, and non-ASCII patterns with -i, fall back to
+ * {@link java.util.regex} line by line.
+ *
+ * Directory trees (-r) are walked on the {@link WorkerPool}, one task per
+ * directory and one per file, and each file's matches are streamed to the
+ * output as soon as a block has been scanned.
+ */
+final class GrepEngine {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int FLUSH_CHARS = 64 * 1024;
+    private static final long MAX_MAPPING = Integer.MAX_VALUE;
+    private static final String METACHARACTERS = ".[]{}()*+?^$|\\";
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final boolean invert;
+    private final boolean countOnly;
+    private final boolean filesOnly;
+
+    // Literal fast path: pattern bytes (folded when ignoring case) and skip table
+    private final byte[] literal;
+    private final boolean foldCase;
+    private final int[] skip;
+    // Regex fallback
+    private final Pattern regex;
+
+    private final AtomicLong matchedLines = new AtomicLong();
+    private final AtomicLong filesSearched = new AtomicLong();
+    private volatile boolean showFileNames;
+
+    GrepEngine(String pattern, boolean ignoreCase, boolean invert, boolean countOnly, boolean filesOnly,
+            OutputSink out, CommandTask task) {
+        this.out = out;
+        this.task = task;
+        this.invert = invert;
+        this.countOnly = countOnly;
+        this.filesOnly = filesOnly;
+
+        boolean ascii = pattern.chars().allMatch(c -> c < 0x80);
+        if (!pattern.isEmpty() && isLiteral(pattern) && (ascii || !ignoreCase)) {
+            this.foldCase = ignoreCase;
+            this.literal = ignoreCase
+                    ? pattern.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)
+                    : pattern.getBytes(StandardCharsets.UTF_8);
+            this.skip = new int[256];
+            Arrays.fill(skip, literal.length);
+            for (int i = 0; i < literal.length - 1; i++) {
+                int b = literal[i] & 0xFF;
+                skip[b] = literal.length - 1 - i;
+                if (ignoreCase && b >= 'a' && b <= 'z') {
+                    skip[b - 32] = literal.length - 1 - i;
+                }
+            }
+            this.regex = null;
+        } else {
+            this.foldCase = false;
+            this.literal = null;
+            this.skip = null;
+            this.regex = Pattern.compile(pattern, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        }
+    }
+
+    static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (METACHARACTERS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the given files and, when {@code recursive}, directories.
+     * Output is written to the sink as it is found; returns the number of
+     * matching (or, with -v, non-matching) lines.
+     */
+    long search(List<Path> paths, boolean recursive) {
+        return search(Path.of(""), paths, recursive);
+    }
+
+    /**
+     * Like {@link #search(List, boolean)} for paths as the user typed them,
+     * relative to {@code base}; file names are printed the same way, so
+     * {@code grep -r foo .} reports {@code ./dir/file}.
+     */
+    long search(Path base, List<Path> paths, boolean recursive) {
+        showFileNames = paths.size() > 1 || recursive;
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (Path name : paths) {
+            Path path = base.resolve(name);
+            if (Files.isDirectory(path)) {
+                if (!recursive) {
+                    out.append("grep: " + name + ": Is a directory\n", "error");
+                    continue;
+                }
+                tasks.add(new DirectorySearch(path, name));
+            } else {
+                tasks.add(new FileSearch(path, name));
+            }
+        }
+        WorkerPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        }, Long.MAX_VALUE, null);
+        return matchedLines.get();
+    }
+
+    long filesSearched() {
+        return filesSearched.get();
+    }
+
+    /** Scans one file, streaming its matches. */
+    private void searchFile(Path file, Path name) {
+        filesSearched.incrementAndGet();
+        FileScan scan = new FileScan(name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan.run(channel);
+        } catch (IOException e) {
+            out.append("grep: " + name + ": " + e.getMessage() + "\n", "error");
+            return;
+        }
+        scan.finish();
+    }
+
+    private void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    /** Per-file scanning state. */
+    private final class FileScan {
+
+        private final Path name;
+        private final StringBuilder pending = new StringBuilder();
+        private long lineNumber;
+        private long matches;
+        private boolean binary;
+        private boolean done;
+
+        FileScan(Path name) {
+            this.name = name;
+        }
+
+        void run(FileChannel channel) throws IOException {
+            long size = channel.size();
+            byte[] buffer = new byte[(int) Math.min(BLOCK_SIZE, Math.max(size, 1))];
+            int length = 0;
+            long position = 0;
+            ByteBuffer mapped = null;
+            boolean firstBlock = true;
+
+            while (!done) {
+                checkCancelled();
+                // Refill the buffer behind any partial line carried over from the last block
+                while (length < buffer.length && position < size) {
+                    if (mapped == null || !mapped.hasRemaining()) {
+                        long window = Math.min(MAX_MAPPING, size - position);
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                    }
+                    int n = Math.min(buffer.length - length, mapped.remaining());
+                    mapped.get(buffer, length, n);
+                    length += n;
+                    position += n;
+                }
+                boolean eof = position >= size;
+                if (length == 0) {
+                    break;
+                }
+                if (firstBlock) {
+                    binary = indexOf(buffer, 0, Math.min(length, 8192), (byte) 0) >= 0;
+                    firstBlock = false;
+                }
+
+                int limit = eof ? length : lastIndexOf(buffer, length, (byte) '\n') + 1;
+                if (limit == 0) {
+                    // A single line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                if (literal != null && !invert) {
+                    scanLiteral(buffer, limit);
+                } else {
+                    scanLines(buffer, limit);
+                }
+                flush(false);
+
+                System.arraycopy(buffer, limit, buffer, 0, length - limit);
+                length -= limit;
+                if (eof && length == 0) {
+                    break;
+                }
+            }
+        }
+
+        /** Finds each occurrence of the literal, then expands it to its line. */
+        private void scanLiteral(byte[] buffer, int limit) {
+            int lineStart = 0;
+            int from = 0;
+            while (!done) {
+                int hit = find(buffer, from, limit);
+                if (hit < 0) {
+                    break;
+                }
+                int start = lastIndexOf(buffer, lineStart, hit, (byte) '\n') + 1;
+                lineNumber += count(buffer, lineStart, start, (byte) '\n');
+                int end = indexOf(buffer, hit, limit, (byte) '\n');
+                if (end < 0) {
+                    end = limit;
+                }
+                lineNumber++;
+                matched(buffer, start, end);
+                lineStart = Math.min(end + 1, limit);
+                from = lineStart;
+            }
+            lineNumber += count(buffer, lineStart, limit, (byte) '\n');
+        }
+
+        /** Line by line, for regular expressions and -v. */
+        private void scanLines(byte[] buffer, int limit) {
+            int start = 0;
+            while (start < limit && !done) {
+                int end = indexOf(buffer, start, limit, (byte) '\n');
+                if (end < 0) {
+                    end = limit;
+                }
+                lineNumber++;
+                boolean hit;
+                if (literal != null) {
+                    hit = find(buffer, start, end) >= 0;
+                } else {
+                    hit = regex.matcher(decode(buffer, start, end)).find();
+                }
+                if (hit != invert) {
+                    matched(buffer, start, end);
+                }
+                start = end + 1;
+            }
+        }
+
+        private void matched(byte[] buffer, int start, int end) {
+            matches++;
+            matchedLines.incrementAndGet();
+            if (filesOnly || (binary && !countOnly)) {
+                // One hit settles the answer for this file
+                done = true;
+                return;
+            }
+            if (countOnly) {
+                return;
+            }
+            if (showFileNames) {
+                pending.append(name).append(':');
+            }
+            pending.append(lineNumber).append(':').append(decode(buffer, start, end)).append('\n');
+            if (pending.length() >= FLUSH_CHARS) {
+                flush(true);
+            }
+        }
+
+        void finish() {
+            if (binary && matches > 0 && !countOnly && !filesOnly) {
+                pending.append("Binary file ").append(name).append(" matches\n");
+            } else if (filesOnly && matches > 0) {
+                pending.append(name).append('\n');
+            } else if (countOnly) {
+                if (showFileNames) {
+                    pending.append(name).append(':');
+                }
+                pending.append(matches).append('\n');
+            }
+            flush(true);
+        }
+
+        private void flush(boolean force) {
+            if (pending.length() > 0 && (force || pending.length() >= FLUSH_CHARS / 4)) {
+                out.append(pending.toString(), "output");
+                pending.setLength(0);
+            }
+        }
+    }
+
+    /** Boyer-Moore-Horspool search for the literal in buffer[from, to). */
+    private int find(byte[] buffer, int from, int to) {
+        int last = literal.length - 1;
+        int i = from;
+        if (foldCase) {
+            while (i + last < to) {
+                int j = last;
+                while (j >= 0 && fold(buffer[i + j]) == literal[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+                i += skip[buffer[i + last] & 0xFF];
+            }
+        } else {
+            while (i + last < to) {
+                int j = last;
+                while (j >= 0 && buffer[i + j] == literal[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+                i += skip[buffer[i + last] & 0xFF];
+            }
+        }
+        return -1;
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b | 0x20) : b;
+    }
+
+    private static String decode(byte[] buffer, int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] buffer, int length, byte value) {
+        return lastIndexOf(buffer, 0, length, value);
+    }
+
+    /** Last index of value in buffer[from, to), or from - 1. */
+    private static int lastIndexOf(byte[] buffer, int from, int to, byte value) {
+        for (int i = to - 1; i >= from; i--) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return from - 1;
+    }
+
+    private static long count(byte[] buffer, int from, int to, byte value) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private final class FileSearch extends RecursiveAction {
+
+        private final Path file;
+        private final Path name;
+
+        FileSearch(Path file, Path name) {
+            this.file = file;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            searchFile(file, name);
+        }
+    }
+
+    /** Lists one directory and fans its entries out as further tasks. */
+    private final class DirectorySearch extends RecursiveAction {
+
+        private final Path directory;
+        private final Path name;
+
+        DirectorySearch(Path directory, Path name) {
+            this.directory = directory;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            checkCancelled();
+            List<RecursiveAction> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        subtasks.add(new DirectorySearch(entry, name.resolve(entry.getFileName())));
+                    } else if (attributes.isRegularFile()) {
+                        subtasks.add(new FileSearch(entry, name.resolve(entry.getFileName())));
+                    }
+                }
+            } catch (IOException e) {
+                out.append("grep: " + name + ": " + e.getMessage() + "\n", "error");
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+}
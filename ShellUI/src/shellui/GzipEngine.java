@@ -0,0 +1,424 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process {@code gzip} and {@code gunzip}, compressing like pigz: input is
+ * cut into 1 MB blocks that are deflated in parallel on the
+ * {@link WorkerPool}, and each block is written as a complete gzip member
+ * (RFC 1952 header, raw deflate data, CRC-32 and length). A file of several
+ * members is valid gzip and every gunzip, zcat or
+ * {@link GZIPInputStream} reads it as one stream. The header is the same on
+ * every platform (OS byte 255, "unknown").
+ *
+ * Blocks are written in order as they finish. One run has at most one block
+ * per pool thread in flight, shared by all of its files, so memory stays
+ * around 2 MB per pool thread however many and however large the files are;
+ * a small file or the last block only takes what was read. With -r each file
+ * is its own task, which keeps all cores busy on trees of small files as
+ * well. Decompression streams through {@link GZIPInputStream}, one task per
+ * file.
+ */
+final class GzipEngine {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int BLOCKS_IN_FLIGHT = Math.max(2, WorkerPool.POOL.getParallelism());
+    private static final byte OS_UNKNOWN = (byte) 255;
+    private static final int FLAG_NAME = 0x08;
+
+    // Deflaters are expensive to create; each pool thread keeps one
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(
+            () -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final OutputSink out;
+    private final CommandTask task;
+    private final int level;
+    private final boolean keep;
+    private final boolean force;
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    // Input blocks read but not yet written, across all files of the run
+    private final Semaphore blocks = new Semaphore(BLOCKS_IN_FLIGHT);
+    private long startNanos;
+
+    /**
+     * @param level 1 (fastest) to 9 (best)
+     * @param keep keep the input files instead of deleting them
+     * @param force overwrite existing output files
+     */
+    GzipEngine(OutputSink out, CommandTask task, int level, boolean keep, boolean force) {
+        this.out = out;
+        this.task = task;
+        this.level = level;
+        this.keep = keep;
+        this.force = force;
+    }
+
+    /** Compresses each file to file.gz; directories are descended into when {@code recursive}. */
+    String compress(List<Path> paths, boolean recursive) {
+        return run(paths, recursive, false);
+    }
+
+    /** Decompresses each .gz / .tgz file next to itself. */
+    String decompress(List<Path> paths, boolean recursive) {
+        return run(paths, recursive, true);
+    }
+
+    long files() {
+        return files.get();
+    }
+
+    private String run(List<Path> paths, boolean recursive, boolean decompress) {
+        startNanos = System.nanoTime();
+        List<Path> inputs = new ArrayList<>();
+        for (Path path : paths) {
+            collect(path, recursive, decompress, inputs);
+        }
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (Path input : inputs) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    checkCancelled();
+                    try {
+                        if (decompress) {
+                            decompressFile(input);
+                        } else {
+                            compressFile(input);
+                        }
+                    } catch (IOException | InvalidPathException e) {
+                        reportError(input, e.getMessage());
+                    }
+                }
+            });
+        }
+        WorkerPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        }, PROGRESS_INTERVAL_MS, this::reportProgress);
+
+        if (errors.get() > 0 && files.get() == 0) {
+            throw new RuntimeException((decompress ? "gunzip" : "gzip") + ": no files were processed");
+        }
+        return summary();
+    }
+
+    private void collect(Path path, boolean recursive, boolean decompress, List<Path> inputs) {
+        if (Files.isDirectory(path)) {
+            if (!recursive) {
+                reportError(path, "is a directory -- ignored (use -r)");
+                return;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    if (!Files.isSymbolicLink(entry)) {
+                        collect(entry, true, decompress, inputs);
+                    }
+                }
+            } catch (IOException e) {
+                reportError(path, e.getMessage());
+            }
+            return;
+        }
+        boolean compressed = decompressedName(path.getFileName().toString()) != null;
+        if (decompress && !compressed) {
+            // Only complain about files named explicitly
+            if (!recursive) {
+                reportError(path, "unknown suffix -- ignored");
+            }
+        } else if (!decompress && compressed) {
+            reportError(path, "already has a .gz suffix -- unchanged");
+        } else {
+            inputs.add(path);
+        }
+    }
+
+    private void compressFile(Path source) throws IOException {
+        Path target = source.resolveSibling(source.getFileName() + ".gz");
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("not a regular file -- ignored");
+        }
+        FileChannel output = openTarget(target);
+        Deque<BlockDeflate> window = new ArrayDeque<>();
+        boolean done = false;
+        try (output; FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = attributes.size();
+            long read = 0;
+            boolean first = true;
+            while (true) {
+                acquireBlock(output, window);
+                // Sized to what is left, so small files and the last block do not take a whole block
+                byte[] block = new byte[(int) Math.min(BLOCK_SIZE, Math.max(0, size - read))];
+                int length = readFully(in, block);
+                if (length == 0 && !first) {
+                    blocks.release();
+                    break;
+                }
+                // The first member carries the name and time, like gzip
+                byte[] header = first
+                        ? header(source.getFileName().toString(), attributes.lastModifiedTime())
+                        : header(null, null);
+                BlockDeflate deflate = new BlockDeflate(block, length, header);
+                deflate.fork();
+                window.add(deflate);
+                first = false;
+                read += length;
+                bytesIn.addAndGet(length);
+                if (length < block.length || read >= size) {
+                    break;
+                }
+            }
+            while (!window.isEmpty()) {
+                writeOldest(output, window);
+            }
+            done = true;
+        } finally {
+            // Also on an Error such as OutOfMemoryError: give the blocks back, then drop the partial output
+            while (!window.isEmpty()) {
+                window.poll().quietlyJoin();
+                blocks.release();
+            }
+            if (!done) {
+                Files.deleteIfExists(target);
+            }
+        }
+        finishFile(source, target, attributes);
+    }
+
+    /**
+     * Takes a block from the run's budget. While none is free this file
+     * writes out its own oldest block instead of waiting, so files never
+     * wait on each other while holding blocks.
+     */
+    private void acquireBlock(FileChannel output, Deque<BlockDeflate> window) throws IOException {
+        while (true) {
+            checkCancelled();
+            if (blocks.tryAcquire()) {
+                return;
+            }
+            if (!window.isEmpty()) {
+                writeOldest(output, window);
+                continue;
+            }
+            try {
+                if (blocks.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Command cancelled");
+            }
+        }
+    }
+
+    private void writeOldest(FileChannel output, Deque<BlockDeflate> window) throws IOException {
+        ByteBuffer member = window.peek().join();
+        window.poll();
+        blocks.release();
+        write(output, member);
+    }
+
+    private void decompressFile(Path source) throws IOException {
+        Path target = source.resolveSibling(decompressedName(source.getFileName().toString()));
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        FileChannel output = openTarget(target);
+        boolean done = false;
+        try (output; InputStream in = new GZIPInputStream(
+                Channels.newInputStream(FileChannel.open(source, StandardOpenOption.READ)), IO_BUFFER)) {
+            byte[] buffer = new byte[IO_BUFFER];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                checkCancelled();
+                write(output, ByteBuffer.wrap(buffer, 0, read));
+            }
+            bytesIn.addAndGet(attributes.size());
+            done = true;
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(target);
+            }
+        }
+        finishFile(source, target, attributes);
+    }
+
+    /** Gives the output the input's times and permissions, then removes the input unless -k. */
+    private void finishFile(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (posix != null) {
+            posix.setPermissions(Files.getPosixFilePermissions(source));
+        }
+        Files.getFileAttributeView(target, BasicFileAttributeView.class)
+                .setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), null);
+        if (!keep) {
+            Files.delete(source);
+        }
+        files.incrementAndGet();
+    }
+
+    private FileChannel openTarget(Path target) throws IOException {
+        if (!force && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(target.getFileName() + " already exists (use -f to overwrite)");
+        }
+        return FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void write(FileChannel output, ByteBuffer data) throws IOException {
+        bytesOut.addAndGet(data.remaining());
+        while (data.hasRemaining()) {
+            output.write(data);
+        }
+    }
+
+    /** "name.gz" gives "name", "name.tgz" gives "name.tar"; null for other names. */
+    static String decompressedName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".gz") && name.length() > 3) {
+            return name.substring(0, name.length() - 3);
+        }
+        if (lower.endsWith(".tgz") && name.length() > 4) {
+            return name.substring(0, name.length() - 4) + ".tar";
+        }
+        return null;
+    }
+
+    /** A gzip member header; name and time are only stored when given. */
+    private byte[] header(String name, FileTime modified) {
+        byte[] nameBytes = name != null && StandardCharsets.ISO_8859_1.newEncoder().canEncode(name)
+                ? name.getBytes(StandardCharsets.ISO_8859_1) : null;
+        byte[] header = new byte[10 + (nameBytes != null ? nameBytes.length + 1 : 0)];
+        header[0] = 0x1f;
+        header[1] = (byte) 0x8b;
+        header[2] = Deflater.DEFLATED;
+        header[3] = (byte) (nameBytes != null ? FLAG_NAME : 0);
+        long seconds = modified != null ? modified.toMillis() / 1000 : 0;
+        if (seconds > 0 && seconds <= 0xFFFFFFFFL) {
+            writeIntLE(header, 4, (int) seconds);
+        }
+        header[8] = (byte) (level == 9 ? 2 : level == 1 ? 4 : 0);
+        header[9] = OS_UNKNOWN;
+        if (nameBytes != null) {
+            System.arraycopy(nameBytes, 0, header, 10, nameBytes.length);
+        }
+        return header;
+    }
+
+    private static void writeIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static int readFully(FileChannel channel, byte[] block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    private void reportError(Path path, String message) {
+        if (errors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            out.append(path + ": " + message + "\n", "error");
+        }
+    }
+
+    private void reportProgress() {
+        long elapsed = System.nanoTime() - startNanos;
+        out.append(String.format("  ... %d files, %s read (%s)%n", files.get(),
+                Sizes.format(bytesIn.get()), Sizes.rate(bytesIn.get(), elapsed)), "output");
+    }
+
+    private String summary() {
+        long elapsed = System.nanoTime() - startNanos;
+        long read = bytesIn.get();
+        long written = bytesOut.get();
+        return String.format(Locale.ROOT, "%d file(s), %s → %s (%.1f%%) in %s (%s)", files.get(), Sizes.format(read),
+                Sizes.format(written), read == 0 ? 100.0 : 100.0 * written / read, Sizes.seconds(elapsed),
+                Sizes.rate(read, elapsed));
+    }
+
+    /** Deflates one block into a complete gzip member. */
+    private final class BlockDeflate extends RecursiveTask<ByteBuffer> {
+
+        private final byte[] block;
+        private final int length;
+        private final byte[] header;
+
+        BlockDeflate(byte[] block, int length, byte[] header) {
+            this.block = block;
+            this.length = length;
+            this.header = header;
+        }
+
+        @Override
+        protected ByteBuffer compute() {
+            Deflater deflater = DEFLATERS.get();
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+
+            // Stored blocks bound the worst case at a few bytes per 16 KB
+            byte[] member = new byte[header.length + length + length / 1000 + 64 + 8];
+            System.arraycopy(header, 0, member, 0, header.length);
+            int size = header.length;
+            while (!deflater.finished()) {
+                if (size == member.length - 8) {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                size += deflater.deflate(member, size, member.length - 8 - size);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(block, 0, length);
+            writeIntLE(member, size, (int) crc.getValue());
+            writeIntLE(member, size + 4, length);
+            return ByteBuffer.wrap(member, 0, size + 8);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process {@code head} and {@code tail} that only read the part of a file
+ * they print. head reads forward through one small buffer and stops at the
+ * last wanted newline; tail reads blocks backwards from the end of the file
+ * until it has seen enough newlines, then prints forward from there. Either
+ * way the cost depends on the lines printed, not on the size of the file.
+ *
+ * tail -f waits on a {@link WatchService} for the file's directory and, when
+ * the file changes, reads just the bytes appended since the last read through
+ * the same channel. The poll also times out once a second, so file systems
+ * whose watch service only polls (or misses events) still catch up.
+ */
+final class HeadTailEngine {
+
+    private static final int BLOCK_SIZE = 8192;
+    private static final long FOLLOW_POLL_MS = 1000;
+
+    private HeadTailEngine() {
+    }
+
+    /** Writes the first {@code lines} lines of the file to the sink. */
+    static void head(Path file, long lines, OutputSink out, CommandTask task) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DecodingWriter writer = new DecodingWriter(out);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            long remaining = lines;
+            while (remaining > 0 && channel.read(buffer.clear()) > 0) {
+                checkCancelled(task);
+                buffer.flip();
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n' && --remaining == 0) {
+                        buffer.limit(i + 1);
+                        break;
+                    }
+                }
+                writer.write(buffer);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes the last {@code lines} lines of the file to the sink and returns
+     * the file size at that point, where {@link #follow} can carry on.
+     */
+    static long tail(Path file, long lines, OutputSink out, CommandTask task) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = lines == 0 ? size : findTailStart(channel, size, lines, task);
+            DecodingWriter writer = new DecodingWriter(out);
+            copy(channel, start, size, writer, task);
+            writer.finish();
+            return size;
+        }
+    }
+
+    /**
+     * Prints whatever is appended to the file after {@code position} until
+     * the command is cancelled. A file that shrinks is treated as truncated
+     * and read again from the start.
+     */
+    static void follow(Path file, long position, OutputSink out, CommandTask task) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path directory = absolute.getParent();
+        Path name = absolute.getFileName();
+        try (WatchService watcher = absolute.getFileSystem().newWatchService();
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            DecodingWriter writer = new DecodingWriter(out);
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(FOLLOW_POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new CancellationException("Command cancelled");
+                }
+                checkCancelled(task);
+                if (key != null) {
+                    boolean ours = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        ours |= name.equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW;
+                    }
+                    key.reset();
+                    if (!ours) {
+                        continue;
+                    }
+                }
+
+                long size = channel.size();
+                if (size < position) {
+                    out.append("tail: " + name + ": file truncated\n", "error");
+                    position = 0;
+                }
+                if (size > position) {
+                    copy(channel, position, size, writer, task);
+                    writer.flush();
+                    position = size;
+                }
+            }
+        }
+    }
+
+    /** Offset of the first byte of the last {@code lines} lines, found by reading blocks backwards. */
+    private static long findTailStart(FileChannel channel, long size, long lines, CommandTask task) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        long newlines = 0;
+        long blockEnd = size;
+        while (blockEnd > 0) {
+            checkCancelled(task);
+            long blockStart = Math.max(0, blockEnd - BLOCK_SIZE);
+            readFully(channel, buffer.clear().limit((int) (blockEnd - blockStart)), blockStart);
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                // A newline as the very last byte ends the last line instead of starting a new one
+                if (buffer.get(i) == '\n' && blockStart + i != size - 1 && ++newlines == lines) {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    private static void copy(FileChannel channel, long from, long to, DecodingWriter writer, CommandTask task)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        long position = from;
+        while (position < to) {
+            checkCancelled(task);
+            buffer.clear().limit((int) Math.min(BLOCK_SIZE, to - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            writer.write(buffer.flip());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void checkCancelled(CommandTask task) {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+}
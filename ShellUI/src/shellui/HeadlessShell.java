@@ -0,0 +1,239 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The shell without a window: reads command lines from a script file, or
+ * from standard input when none is given, and runs each one through the
+ * same {@link CommandEngine} as the GUI. Output goes to standard output
+ * unstyled; the shell's own error messages go to standard error. The exit
+ * status is that of the last command: 0 when it finished, 1 when it failed
+ * and 130 when it was interrupted.
+ *
+ * <pre>
+ * java -cp ShellUI.jar shellui.HeadlessShell script.sh
+ * java -jar ShellUI.jar --headless &lt; script.sh
+ * </pre>
+ *
+ * Blank lines and lines starting with {@code #} are skipped and
+ * {@code exit [status]} ends the script. Job control and {@code clear}
+ * need the window; {@code less} prints the file like {@code cat}.
+ */
+public final class HeadlessShell {
+
+    // Commands that only make sense with the window
+    private static final Set<String> WINDOW_COMMANDS = Set.of("jobs", "fg", "kill", "clear");
+
+    private final PrintStream out;
+    private final OutputSink console;
+    private final CommandEngine engine;
+    private final List<String> session = new ArrayList<>();
+    private volatile CommandTask runningTask;
+
+    private HeadlessShell(PrintStream out) {
+        this.out = out;
+        this.console = new OutputSink() {
+            @Override
+            public void append(String text, String style) {
+                out.print(text);
+            }
+
+            @Override
+            public void append(StyledText text) {
+                out.print(text.text());
+            }
+        };
+        this.engine = new CommandEngine(new File(System.getProperty("user.dir")), console, new Frontend());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            System.err.println("Usage: HeadlessShell [script]");
+            System.exit(2);
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, System.out.charset());
+        HeadlessShell shell = new HeadlessShell(out);
+        Runtime.getRuntime().addShutdownHook(new Thread(shell::interrupt, "shell-interrupt"));
+        int status;
+        try (BufferedReader script = args.length == 0
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(args[0]))) {
+            status = shell.run(script, args.length == 0 && System.console() != null);
+        } finally {
+            shell.engine.close();
+            out.flush();
+        }
+        System.exit(status);
+    }
+
+    /** Runs every line of {@code script}; the prompt is only shown when a person is typing. */
+    private int run(BufferedReader script, boolean interactive) throws IOException {
+        int status = 0;
+        String line;
+        while (true) {
+            if (interactive) {
+                out.print("$ ");
+                out.flush();
+            }
+            if ((line = script.readLine()) == null) {
+                return status;
+            }
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals("exit") || line.startsWith("exit ")) {
+                return exitStatus(line.substring(4).trim(), status);
+            }
+            if (!line.startsWith("history")) {
+                session.add(line);
+            }
+            status = execute(line);
+            out.flush();
+        }
+    }
+
+    private int execute(String line) {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String arguments = space < 0 ? "" : line.substring(space + 1).trim();
+        if (WINDOW_COMMANDS.contains(command) || line.endsWith("&") && !line.endsWith("&&")) {
+            return error(command + ": not available in headless mode");
+        }
+
+        CommandEngine.Parsed parsed;
+        try {
+            parsed = engine.parse(line);
+            if (parsed.isSimple()) {
+                String inline = command.equals("history")
+                        ? historyText(arguments) : engine.runInline(command, arguments);
+                if (inline != null) {
+                    out.print(inline);
+                    return 0;
+                }
+            }
+        } catch (RuntimeException ex) {
+            return error(ex.getMessage());
+        }
+
+        // On a command thread like in the GUI, so cancel and the per-command metrics work the same
+        CommandTask task = new CommandTask(line, engine.currentDirectory());
+        task.setOutput(new Job(task, console, true));
+        Job.State[] state = {Job.State.FAILED};
+        String[] failure = {null};
+        runningTask = task;
+        try {
+            task.start(() -> {
+                try {
+                    engine.run(command, arguments, parsed, task);
+                    state[0] = Job.State.DONE;
+                } catch (Exception | Error ex) {
+                    // Errors too, such as OutOfMemoryError, so a failing script never ends without a message
+                    state[0] = task.isCancelled() ? Job.State.KILLED : Job.State.FAILED;
+                    failure[0] = task.isCancelled() ? "Command cancelled"
+                            : ex.getMessage() != null ? ex.getMessage() : ex.toString();
+                } finally {
+                    CommandMetrics.finish(task.metrics(), state[0]);
+                }
+            });
+            task.join();
+        } catch (InterruptedException ex) {
+            task.cancel();
+            Thread.currentThread().interrupt();
+            return 130;
+        } finally {
+            runningTask = null;
+        }
+        if (failure[0] != null) {
+            error(failure[0]);
+        }
+        return switch (state[0]) {
+            case DONE -> 0;
+            case KILLED -> 130;
+            default -> 1;
+        };
+    }
+
+    /** Ctrl+C or a kill of the JVM: stop the running command and its child processes too. */
+    private void interrupt() {
+        CommandTask task = runningTask;
+        if (task != null) {
+            task.cancel();
+        }
+        out.flush();
+    }
+
+    private int error(String message) {
+        out.flush();
+        System.err.println("Error: " + message);
+        return 1;
+    }
+
+    private static int exitStatus(String argument, int last) {
+        try {
+            return argument.isEmpty() ? last : Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            System.err.println("Error: exit takes a numeric status");
+            return 2;
+        }
+    }
+
+    /** The lines run in this session, numbered like the GUI's {@code history}. */
+    private String historyText(String arguments) {
+        if (arguments.equals("-c")) {
+            session.clear();
+            return "History cleared\n";
+        }
+        int limit;
+        try {
+            limit = arguments.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(arguments);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("history takes a number of entries or -c");
+        }
+        if (session.isEmpty()) {
+            return "No commands in history\n";
+        }
+        StringBuilder text = new StringBuilder("Command history:\n");
+        for (int number = Math.max(0, session.size() - limit) + 1; number <= session.size(); number++) {
+            String label = Integer.toString(number);
+            text.append("   ", Math.min(3, label.length()), 3).append(label).append(": ")
+                    .append(session.get(number - 1)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** No pager and no label to update; {@code history} lists this session. */
+    private class Frontend implements CommandEngine.Frontend {
+
+        @Override
+        public boolean page(PagedFile file) {
+            return false;
+        }
+
+        @Override
+        public void directoryChanged(File directory) {
+        }
+
+        @Override
+        public String history(String arguments) {
+            return historyText(arguments);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+/**
+ * Picks the output style of one line of command output. Implementations look
+ * at the characters in place with plain comparisons, without creating a
+ * substring or running a regex per line, so a million lines cost one scan.
+ *
+ * {@link #DEFAULT} is the generic classifier used for external commands.
+ * Commands whose output format is known get their own highlighter so that
+ * e.g. a grep match or a du path containing the word "error" is not painted
+ * as an error.
+ */
+interface Highlighter {
+
+    /** Style for {@code text[start, end)}, a line without its terminator. */
+    String style(CharSequence text, int start, int end);
+
+    Highlighter DEFAULT = (text, start, end) -> {
+        if (startsWith(text, start, end, "total") || startsWithDigit(text, start, end)
+                || isLongListing(text, start, end)) {
+            // Sizes, counts and file listings
+            return "output";
+        }
+        if (containsIgnoreCase(text, start, end, "error") || containsIgnoreCase(text, start, end, "fail")) {
+            return "error";
+        }
+        if (end - start >= 3 && Character.isLetter(text.charAt(start)) && text.charAt(start + 1) == ':'
+                && text.charAt(start + 2) == '\\') {
+            // Windows directory paths
+            return "directory";
+        }
+        return "output";
+    };
+
+    /** ls / dir: directories stand out, messages from ls itself are errors. */
+    Highlighter LS = (text, start, end) -> {
+        if (startsWith(text, start, end, "ls: ")) {
+            return "error";
+        }
+        if ((isLongListing(text, start, end) && text.charAt(start) == 'd')
+                || (end > start && text.charAt(end - 1) == '/') || contains(text, start, end, "<DIR>")) {
+            return "directory";
+        }
+        return "output";
+    };
+
+    /** grep: matched lines are never classified by their content. */
+    Highlighter GREP = (text, start, end) -> {
+        if (startsWith(text, start, end, "grep: ")) {
+            return "error";
+        }
+        return startsWith(text, start, end, "Binary file ") ? "directory" : "output";
+    };
+
+    /** du: size and path lines, whatever the path is called. */
+    Highlighter DU = (text, start, end) -> startsWith(text, start, end, "du: ") ? "error" : "output";
+
+    static Highlighter forCommand(String command) {
+        return switch (command) {
+            case "ls" -> LS;
+            case "grep" -> GREP;
+            case "du" -> DU;
+            default -> DEFAULT;
+        };
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithDigit(CharSequence text, int start, int end) {
+        return end > start && text.charAt(start) >= '0' && text.charAt(start) <= '9';
+    }
+
+    /** A permissions column such as {@code drwxr-xr-x} followed by a link count, as in ls -l. */
+    private static boolean isLongListing(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && "drwx-".indexOf(text.charAt(i)) >= 0) {
+            i++;
+        }
+        if (i == start || i == end || !Character.isWhitespace(text.charAt(i))) {
+            return false;
+        }
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return startsWithDigit(text, i, end);
+    }
+
+    private static boolean contains(CharSequence text, int start, int end, String word) {
+        for (int i = start; i <= end - word.length(); i++) {
+            if (startsWith(text, i, end, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** ASCII case-insensitive search for a lower-case word. */
+    private static boolean containsIgnoreCase(CharSequence text, int start, int end, String word) {
+        char first = word.charAt(0);
+        for (int i = start; i <= end - word.length(); i++) {
+            if ((text.charAt(i) | 0x20) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < word.length() && (text.charAt(i + j) | 0x20) == word.charAt(j)) {
+                j++;
+            }
+            if (j == word.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Bash-style reverse incremental search over the {@link HistoryStore},
+ * shown under the output while Ctrl+R is active. Each typed character
+ * narrows the search, starting from the current match, so the usual case
+ * only looks at a few entries; Ctrl+R again moves to the next older match.
+ *
+ * Enter runs the match, Tab or an arrow key puts it in the fields for
+ * editing, and Esc or Ctrl+G puts back what was there before.
+ */
+final class HistorySearchBar extends JPanel {
+
+    /** Receives the matches; all calls happen on the EDT. */
+    interface Listener {
+
+        void preview(String command);
+
+        void accept(String command, boolean execute);
+
+        void cancel();
+    }
+
+    private final HistoryStore history;
+    private final Listener listener;
+    private final JLabel promptLabel = new JLabel();
+    private final JTextField query = new JTextField(24);
+    private final JLabel matchLabel = new JLabel();
+
+    private int match = -1;
+    private String previousQuery = "";
+
+    HistorySearchBar(HistoryStore history, Listener listener) {
+        super(new BorderLayout(6, 0));
+        this.history = history;
+        this.listener = listener;
+        setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
+        matchLabel.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        add(promptLabel, BorderLayout.WEST);
+        add(query, BorderLayout.CENTER);
+        add(matchLabel, BorderLayout.SOUTH);
+        setVisible(false);
+
+        query.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+        });
+        query.setFocusTraversalKeysEnabled(false);
+        query.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                handleKey(e);
+            }
+        });
+    }
+
+    /** Shows the bar with an empty query and focuses it. */
+    void start() {
+        match = -1;
+        previousQuery = "";
+        query.setText("");
+        showMatch(true);
+        setVisible(true);
+        revalidate();
+        query.requestFocusInWindow();
+    }
+
+    boolean isActive() {
+        return isVisible();
+    }
+
+    private void handleKey(KeyEvent e) {
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_R -> {
+                if (e.isControlDown()) {
+                    // Next older match for the same text
+                    search(match < 0 ? history.size() - 1 : match - 1);
+                    e.consume();
+                }
+            }
+            case KeyEvent.VK_G -> {
+                if (e.isControlDown()) {
+                    finish(false, false);
+                    e.consume();
+                }
+            }
+            case KeyEvent.VK_ESCAPE -> {
+                finish(false, false);
+                e.consume();
+            }
+            case KeyEvent.VK_ENTER -> {
+                finish(true, true);
+                e.consume();
+            }
+            case KeyEvent.VK_TAB, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN -> {
+                finish(true, false);
+                e.consume();
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void queryChanged() {
+        String text = query.getText();
+        // A longer query can only match at or before the current match; a shorter one starts over
+        boolean extended = match >= 0 && text.startsWith(previousQuery);
+        previousQuery = text;
+        search(extended ? match : history.size() - 1);
+    }
+
+    /** Moves to the newest match at or before {@code from}; on failure the last match stays shown. */
+    private void search(int from) {
+        String text = query.getText();
+        if (text.isEmpty()) {
+            match = -1;
+            showMatch(true);
+            return;
+        }
+        int found = history.searchBackward(text, from);
+        if (found >= 0) {
+            match = found;
+            listener.preview(history.get(found));
+        }
+        showMatch(found >= 0);
+    }
+
+    private void showMatch(boolean found) {
+        promptLabel.setText(found ? "(reverse-i-search):" : "(failing reverse-i-search):");
+        matchLabel.setText(match >= 0 ? history.get(match) : " ");
+    }
+
+    private void finish(boolean accept, boolean execute) {
+        setVisible(false);
+        revalidate();
+        if (accept && match >= 0) {
+            listener.accept(history.get(match), execute);
+        } else {
+            listener.cancel();
+        }
+    }
+}
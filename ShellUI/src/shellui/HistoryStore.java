@@ -0,0 +1,504 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Command history kept in an append-only file, one UTF-8 line per command.
+ *
+ * On startup the file is memory-mapped on a background thread and indexed
+ * by the offset of each line; entries stay in the mapping and are decoded
+ * only when shown, so a million entries cost a few arrays rather than a
+ * million strings. New commands are appended to the file straight away, so
+ * several windows share one history.
+ *
+ * Only the most recent copy of a command is kept: a 64-bit hash of each
+ * live entry maps to its position, and an older entry with the same hash and
+ * the same bytes is marked dead. Beyond the cap the oldest entries are
+ * dropped as well. Dead entries stay in the file until a load finds it
+ * holding more than twice as many lines as live entries; then a compacted
+ * copy replaces it, followed by whatever other windows appended since.
+ *
+ * Positions run from 0 (oldest) to {@link #size()} - 1 (newest) over all
+ * entries, dead ones included; navigation and search skip dead entries.
+ * All methods are safe from any thread.
+ */
+final class HistoryStore {
+
+    private static final int DEFAULT_CAP = 1_000_000;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final Path file;
+    private final int cap;
+
+    // Entry i starts at starts[i]: below mappedSize it is in the mapping, above it in the session buffer
+    private ByteBuffer mapped = ByteBuffer.allocate(0);
+    private long mappedSize;
+    // Size of the file when it was loaded; later lines, from any window, are copied over by compact()
+    private long loadedFileSize;
+    private byte[] session = new byte[4096];
+    private int sessionSize;
+    private long[] starts = new long[1024];
+    private int[] lengths = new int[1024];
+    private int count;
+    private final BitSet dead = new BitSet();
+    private int live;
+    // Everything before this position is dead
+    private int oldestLive;
+
+    // Open addressing: hash of a live entry -> position + 1
+    private long[] hashes = new long[1024];
+    private int[] slots = new int[1024];
+    private int used;
+
+    private HistoryStore(Path file, int cap) {
+        this.file = file;
+        this.cap = cap;
+    }
+
+    static Path defaultLocation() {
+        String configured = System.getProperty("shellui.history");
+        return configured != null
+                ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".shellui", "history");
+    }
+
+    /**
+     * Returns a store for the file and loads the file in the background.
+     * Commands added before loading finishes are kept after the loaded ones.
+     */
+    static HistoryStore open(Path file) {
+        HistoryStore store = new HistoryStore(file, Integer.getInteger("shellui.historySize", DEFAULT_CAP));
+        Thread.ofVirtual().name("history-load").start(store::load);
+        return store;
+    }
+
+    /** Number of positions, including dead entries. */
+    synchronized int size() {
+        return count;
+    }
+
+    /** Number of live entries. */
+    synchronized int liveCount() {
+        return live;
+    }
+
+    synchronized String get(int position) {
+        return new String(bytes(position), StandardCharsets.UTF_8);
+    }
+
+    synchronized boolean isLive(int position) {
+        return position >= 0 && position < count && !dead.get(position);
+    }
+
+    /** The nearest live position before {@code position}, or -1. */
+    synchronized int previous(int position) {
+        int previous = Math.min(position, count) - 1;
+        while (previous >= 0 && dead.get(previous)) {
+            previous--;
+        }
+        return previous;
+    }
+
+    /** The nearest live position after {@code position}, or {@link #size()}. */
+    synchronized int next(int position) {
+        int next = dead.nextClearBit(Math.max(0, position + 1));
+        return Math.min(next, count);
+    }
+
+    /** Records a command, appending it to the file. Blank commands are ignored. */
+    void add(String command) {
+        String line = command.replace('\n', ' ').replace('\r', ' ').strip();
+        if (line.isEmpty()) {
+            return;
+        }
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (sessionSize + bytes.length > session.length) {
+                session = Arrays.copyOf(session, Math.max(session.length * 2, sessionSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, session, sessionSize, bytes.length);
+            index(mappedSize + sessionSize, bytes.length, hash(bytes, 0, bytes.length));
+            sessionSize += bytes.length;
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                // One write per line, so appends from several windows do not interleave
+                byte[] record = Arrays.copyOf(bytes, bytes.length + 1);
+                record[bytes.length] = '\n';
+                Files.write(file, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                // History is a convenience; a read-only home must not break commands
+            }
+        }
+    }
+
+    /**
+     * The newest live position at or before {@code from} whose command
+     * contains {@code query}, or -1. This is what Ctrl+R steps through.
+     *
+     * Commands from this session are checked one by one. The mapped part is
+     * searched as one block of bytes, backwards a chunk at a time, and a hit
+     * is mapped to its entry by binary search over the line offsets.
+     */
+    int searchBackward(String query, int from) {
+        byte[] needle = query.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            int position = Math.min(from, count - 1);
+            for (; position >= 0 && starts[position] >= mappedSize; position--) {
+                if (!dead.get(position) && contains(position, needle)) {
+                    return position;
+                }
+            }
+            return position < 0 ? -1 : searchMapped(needle, position);
+        }
+    }
+
+    private int searchMapped(byte[] needle, int from) {
+        if (needle.length == 0) {
+            return previous(from + 1);
+        }
+        if (needle.length >= CHUNK_SIZE) {
+            return -1;
+        }
+        byte[] chunk = new byte[CHUNK_SIZE];
+        // Search [low, end) for a needle ending at or before end
+        long end = starts[from] + lengths[from];
+        while (end >= needle.length) {
+            long low = Math.max(0, end - CHUNK_SIZE);
+            int length = (int) (end - low);
+            mapped.get((int) low, chunk, 0, length);
+            int last = needle[needle.length - 1];
+            int i = length - 1;
+            while (i >= needle.length - 1) {
+                if (chunk[i] == last && matchesAt(chunk, i - needle.length + 1, needle)) {
+                    long hit = low + i - needle.length + 1;
+                    int position = positionOf(hit);
+                    long entryStart = starts[position];
+                    if (hit < entryStart) {
+                        // Before the first entry, in the partial line of a mapping that starts mid-file
+                        i--;
+                        continue;
+                    }
+                    if (!dead.get(position) && hit + needle.length <= entryStart + lengths[position]) {
+                        return position;
+                    }
+                    // Skip the rest of this entry
+                    if (entryStart < low) {
+                        end = entryStart;
+                        break;
+                    }
+                    i = (int) (entryStart - low) - 1;
+                    continue;
+                }
+                i--;
+            }
+            if (i < needle.length - 1) {
+                // Keep needle.length - 1 bytes of overlap so a match across the chunk boundary is found
+                end = low == 0 ? 0 : low + needle.length - 1;
+                if (low == 0) {
+                    break;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Substring test for an entry of this session. */
+    private boolean contains(int position, byte[] needle) {
+        int start = (int) (starts[position] - mappedSize);
+        for (int i = start; i <= start + lengths[position] - needle.length; i++) {
+            if (matchesAt(session, i, needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAt(byte[] bytes, int at, byte[] needle) {
+        for (int j = 0; j < needle.length; j++) {
+            if (bytes[at + j] != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The entry containing a mapped offset. */
+    private int positionOf(long offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /** Forgets every entry and empties the file. */
+    void clear() {
+        synchronized (this) {
+            mapped = ByteBuffer.allocate(0);
+            mappedSize = 0;
+            loadedFileSize = 0;
+            sessionSize = 0;
+            count = 0;
+            live = 0;
+            oldestLive = 0;
+            dead.clear();
+            Arrays.fill(hashes, 0);
+            Arrays.fill(slots, 0);
+            used = 0;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Nothing more to do; the next add appends to whatever is left
+        }
+    }
+
+    private void load() {
+        HistoryStore loaded = new HistoryStore(file, cap);
+        long offset;
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            // Far beyond any cap; keep the newest 2 GB
+            offset = Math.max(0, size - Integer.MAX_VALUE);
+            loaded.mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, size - offset);
+            loaded.mappedSize = size - offset;
+        } catch (IOException e) {
+            return;
+        }
+
+        // Index without holding the lock, so the EDT never waits for a big file. The mapping is
+        // copied through a buffer a chunk at a time; scanning an array is much faster than get(i)
+        ByteBuffer data = loaded.mapped;
+        int limit = data.limit();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int start = 0;
+        // A mapping that starts inside the file starts mid-line
+        boolean partial = offset > 0;
+        for (int chunkStart = 0; chunkStart < limit; chunkStart += CHUNK_SIZE) {
+            int chunkLength = Math.min(CHUNK_SIZE, limit - chunkStart);
+            data.get(chunkStart, chunk, 0, chunkLength);
+            for (int i = 0; i < chunkLength; i++) {
+                if (chunk[i] != '\n') {
+                    continue;
+                }
+                int end = chunkStart + i;
+                if (end > start && !partial) {
+                    long hash = start >= chunkStart
+                            ? hash(chunk, start - chunkStart, end - start)
+                            : hash(data, start, end - start);
+                    loaded.index(start, end - start, hash);
+                }
+                partial = false;
+                start = end + 1;
+            }
+        }
+        int loadedLines = loaded.count;
+
+        synchronized (this) {
+            // Commands added meanwhile go after the loaded ones
+            for (int i = 0; i < count; i++) {
+                byte[] entry = bytes(i);
+                if (loaded.sessionSize + entry.length > loaded.session.length) {
+                    loaded.session = Arrays.copyOf(loaded.session,
+                            Math.max(loaded.session.length * 2, loaded.sessionSize + entry.length));
+                }
+                System.arraycopy(entry, 0, loaded.session, loaded.sessionSize, entry.length);
+                loaded.index(loaded.mappedSize + loaded.sessionSize, entry.length, hash(entry, 0, entry.length));
+                loaded.sessionSize += entry.length;
+            }
+            mapped = loaded.mapped;
+            mappedSize = loaded.mappedSize;
+            loadedFileSize = size;
+            session = loaded.session;
+            sessionSize = loaded.sessionSize;
+            starts = loaded.starts;
+            lengths = loaded.lengths;
+            count = loaded.count;
+            dead.clear();
+            dead.or(loaded.dead);
+            live = loaded.live;
+            oldestLive = loaded.oldestLive;
+            hashes = loaded.hashes;
+            slots = loaded.slots;
+            used = loaded.used;
+        }
+        if (loadedLines > 2L * live + 1024) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live entries, oldest first. Holds the
+     * lock so no add of this window is lost; lines other windows appended
+     * since the load are copied from the end of the file just before the
+     * move. Commands of this window may then be in the file twice, which the
+     * next load resolves like any duplicate.
+     */
+    private synchronized void compact() {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                byte[] buffer = new byte[64 * 1024];
+                int filled = 0;
+                for (int position = next(-1); position < count; position = next(position)) {
+                    byte[] entry = bytes(position);
+                    if (filled + entry.length + 1 > buffer.length) {
+                        out.write(buffer, 0, filled);
+                        filled = 0;
+                    }
+                    if (entry.length + 1 > buffer.length) {
+                        out.write(entry);
+                        out.write('\n');
+                        continue;
+                    }
+                    System.arraycopy(entry, 0, buffer, filled, entry.length);
+                    buffer[filled + entry.length] = '\n';
+                    filled += entry.length + 1;
+                }
+                out.write(buffer, 0, filled);
+            }
+            long compactedSize = appendTail(temporary);
+            // The mapping keeps the old contents readable; where it cannot be replaced, try next time
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            loadedFileSize = compactedSize;
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Left for the next compaction to overwrite
+            }
+        }
+    }
+
+    /**
+     * Copies what was appended to the file since the load, until the file
+     * stops growing; returns the size of the compacted file.
+     */
+    private long appendTail(Path temporary) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long copied = loadedFileSize;
+            long size;
+            while ((size = source.size()) > copied) {
+                copied += source.transferTo(copied, size - copied, target);
+            }
+            return target.size();
+        }
+    }
+
+    private void index(long start, int length, long hash) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        int position = count++;
+        starts[position] = start;
+        lengths[position] = length;
+        live++;
+
+        int previous = putHash(hash, position);
+        if (previous >= 0) {
+            dead.set(previous);
+            live--;
+        }
+        // Over the cap: drop the oldest live entries
+        while (live > cap) {
+            oldestLive = dead.nextClearBit(oldestLive);
+            dead.set(oldestLive);
+            live--;
+        }
+    }
+
+    /**
+     * Maps the hash to the position; returns the position it replaced, or -1.
+     * A slot is only taken over when its entry has the same bytes, so two
+     * commands whose hashes collide both stay live.
+     */
+    private int putHash(long hash, int position) {
+        if ((used + 1) * 2 > hashes.length) {
+            rehash();
+        }
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slots[slot] != 0 && (hashes[slot] != hash || !sameBytes(slots[slot] - 1, position))) {
+            slot = (slot + 1) & mask;
+        }
+        int previous = slots[slot] - 1;
+        if (slots[slot] == 0) {
+            used++;
+        }
+        hashes[slot] = hash;
+        slots[slot] = position + 1;
+        return previous >= 0 && !dead.get(previous) ? previous : -1;
+    }
+
+    private void rehash() {
+        long[] oldHashes = hashes;
+        int[] oldSlots = slots;
+        hashes = new long[oldHashes.length * 2];
+        slots = new int[oldSlots.length * 2];
+        used = 0;
+        int mask = hashes.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            // Entries that have gone dead through the cap are not carried over
+            if (oldSlots[i] != 0 && !dead.get(oldSlots[i] - 1)) {
+                long hash = oldHashes[i];
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = hash;
+                slots[slot] = oldSlots[i];
+                used++;
+            }
+        }
+    }
+
+    /** FNV-1a over a command's bytes. */
+    private static long hash(byte[] bytes, int from, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < from + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long hash(ByteBuffer bytes, int from, int length) {
+        byte[] copy = new byte[length];
+        bytes.get(from, copy);
+        return hash(copy, 0, length);
+    }
+
+    private boolean sameBytes(int position, int other) {
+        return lengths[position] == lengths[other] && Arrays.equals(bytes(position), bytes(other));
+    }
+
+    private byte[] bytes(int position) {
+        byte[] bytes = new byte[lengths[position]];
+        long start = starts[position];
+        if (start < mappedSize) {
+            mapped.get((int) start, bytes);
+        } else {
+            System.arraycopy(session, (int) (start - mappedSize), bytes, 0, bytes.length);
+        }
+        return bytes;
+    }
+}
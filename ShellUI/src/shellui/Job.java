@@ -0,0 +1,178 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.ArrayDeque;
+
+/**
+ * A command's output stream, which can be attached to the screen (the
+ * command runs in the foreground) or detached into a bounded buffer (it runs
+ * as a background job). Every command gets one, so Ctrl+Z can send a running
+ * command to the background and {@code fg} can bring it back; attaching
+ * replays what was buffered, then output streams to the screen again.
+ *
+ * The buffer keeps the newest 1M chars ({@code -Dshellui.jobBuffer=<chars>});
+ * a job that writes more loses its oldest output, and {@code fg} says how
+ * much.
+ */
+final class Job implements OutputSink {
+
+    enum State {
+        RUNNING("Running"), DONE("Done"), FAILED("Failed"), KILLED("Killed");
+
+        final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final int BUFFER_CHARS = Integer.getInteger("shellui.jobBuffer", 1 << 20);
+
+    private final CommandTask task;
+    private final OutputSink screen;
+    private final long startNanos = System.nanoTime();
+    // Plain (text, style) pairs and highlighted batches, oldest first
+    private final ArrayDeque<Object> buffered = new ArrayDeque<>();
+    private long bufferedChars;
+    private long droppedChars;
+    private boolean attached;
+    private volatile State state = State.RUNNING;
+    private volatile long endNanos;
+    private int number;
+
+    private record Segment(String text, String style) {
+    }
+
+    Job(CommandTask task, OutputSink screen, boolean attached) {
+        this.task = task;
+        this.screen = screen;
+        this.attached = attached;
+    }
+
+    CommandTask task() {
+        return task;
+    }
+
+    String commandLine() {
+        return task.getCommandLine();
+    }
+
+    /** The job number shown as {@code [n]}; 0 until it is first put in the background. */
+    int number() {
+        return number;
+    }
+
+    void setNumber(int number) {
+        this.number = number;
+    }
+
+    State state() {
+        return state;
+    }
+
+    long elapsedNanos() {
+        return (state == State.RUNNING ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    synchronized long bufferedChars() {
+        return bufferedChars;
+    }
+
+    synchronized boolean isAttached() {
+        return attached;
+    }
+
+    /*
+     * The screen is written outside the lock: it may block the command
+     * thread until the EDT catches up, and the EDT takes this lock for
+     * Ctrl+Z and fg.
+     */
+    @Override
+    public void append(String text, String style) {
+        task.metrics().addOutput(text.length());
+        synchronized (this) {
+            if (!attached) {
+                if (text.length() > BUFFER_CHARS) {
+                    droppedChars += text.length() - BUFFER_CHARS;
+                    text = text.substring(text.length() - BUFFER_CHARS);
+                }
+                buffered.addLast(new Segment(text, style));
+                bufferedChars += text.length();
+                trim();
+                return;
+            }
+        }
+        screen.append(text, style);
+    }
+
+    @Override
+    public void append(StyledText text) {
+        task.metrics().addOutput(text.length());
+        synchronized (this) {
+            if (!attached) {
+                buffered.addLast(text);
+                bufferedChars += text.text().length();
+                trim();
+                return;
+            }
+        }
+        screen.append(text);
+    }
+
+    /** Shows what was buffered and sends further output straight to the screen. */
+    synchronized void attach() {
+        if (droppedChars > 0) {
+            screen.append(String.format("[%,d earlier chars of output were dropped]%n", droppedChars), "directory");
+        }
+        for (Object entry : buffered) {
+            if (entry instanceof Segment segment) {
+                screen.append(segment.text(), segment.style());
+            } else {
+                screen.append((StyledText) entry);
+            }
+        }
+        buffered.clear();
+        bufferedChars = 0;
+        droppedChars = 0;
+        attached = true;
+    }
+
+    /** Buffers further output instead of showing it. */
+    synchronized void detach() {
+        attached = false;
+    }
+
+    void finish(State finalState) {
+        endNanos = System.nanoTime();
+        state = finalState;
+    }
+
+    /** The job's line in {@code jobs} and in the finish notice, e.g. {@code [2]  Running  du -h / &}. */
+    String describe(boolean current) {
+        StringBuilder line = new StringBuilder();
+        line.append('[').append(number).append(']').append(current ? '+' : ' ').append(' ');
+        line.append(String.format("%-8s", state.label)).append(' ').append(commandLine());
+        if (state == State.RUNNING) {
+            line.append(" &");
+        }
+        line.append(String.format("  (%s", Sizes.seconds(elapsedNanos())));
+        long chars = bufferedChars();
+        if (chars > 0) {
+            line.append(String.format(", %,d chars of output waiting; fg %%%d shows it", chars, number));
+        }
+        return line.append(')').toString();
+    }
+
+    private void trim() {
+        while (bufferedChars > BUFFER_CHARS && buffered.size() > 1) {
+            Object oldest = buffered.removeFirst();
+            long length = oldest instanceof Segment segment ? segment.text().length()
+                    : ((StyledText) oldest).text().length();
+            bufferedChars -= length;
+            droppedChars += length;
+        }
+    }
+}
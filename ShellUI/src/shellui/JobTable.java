@@ -0,0 +1,107 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The background jobs of the session, numbered like bash: a new job gets
+ * one more than the highest number in use, and {@code %%} or no argument
+ * means the newest. Jobs stay listed after they finish until their output
+ * has been seen. Used on the EDT only.
+ */
+final class JobTable {
+
+    private final List<Job> jobs = new ArrayList<>();
+    private final Set<Job> reported = new HashSet<>();
+
+    /** Puts the job in the background list; it keeps its number from an earlier time unless that is taken. */
+    void add(Job job) {
+        if (job.number() == 0 || jobs.stream().anyMatch(other -> other.number() == job.number())) {
+            job.setNumber(jobs.stream().mapToInt(Job::number).max().orElse(0) + 1);
+        }
+        jobs.add(job);
+    }
+
+    void remove(Job job) {
+        jobs.remove(job);
+        reported.remove(job);
+    }
+
+    /**
+     * Jobs that finished since the last call. Those with no output left to
+     * see are dropped from the table; the others stay until {@code fg}.
+     */
+    List<Job> takeFinished() {
+        List<Job> finished = new ArrayList<>();
+        for (Job job : List.copyOf(jobs)) {
+            if (job.state() != Job.State.RUNNING && reported.add(job)) {
+                finished.add(job);
+                if (job.bufferedChars() == 0) {
+                    remove(job);
+                }
+            }
+        }
+        return finished;
+    }
+
+    List<Job> all() {
+        return List.copyOf(jobs);
+    }
+
+    boolean isEmpty() {
+        return jobs.isEmpty();
+    }
+
+    /** The newest job, shown with a + in listings. */
+    Job current() {
+        return jobs.isEmpty() ? null : jobs.get(jobs.size() - 1);
+    }
+
+    /**
+     * The job for {@code %n}, {@code n}, {@code %%}, {@code %+}, {@code %text}
+     * (the command starts with text) or an empty spec (the newest job).
+     */
+    Job find(String command, String spec) {
+        String key = spec.startsWith("%") ? spec.substring(1) : spec;
+        Job found = null;
+        if (key.isEmpty() || key.equals("%") || key.equals("+")) {
+            found = current();
+        } else if (key.chars().allMatch(Character::isDigit)) {
+            int number = Integer.parseInt(key);
+            found = jobs.stream().filter(job -> job.number() == number).findFirst().orElse(null);
+        } else {
+            for (int i = jobs.size() - 1; i >= 0 && found == null; i--) {
+                if (jobs.get(i).commandLine().startsWith(key)) {
+                    found = jobs.get(i);
+                }
+            }
+        }
+        if (found == null) {
+            throw new RuntimeException(command + ": " + (spec.isEmpty() ? "current" : spec) + ": no such job");
+        }
+        return found;
+    }
+
+    /** Short text for the status bar, e.g. {@code Jobs: [1] du running  [2] wget done}; empty without jobs. */
+    String statusText() {
+        if (jobs.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("Jobs:");
+        for (Job job : jobs) {
+            String line = job.commandLine();
+            int space = line.indexOf(' ');
+            text.append("  [").append(job.number()).append("] ")
+                    .append(space < 0 ? line : line.substring(0, space)).append(' ')
+                    .append(job.state().label.toLowerCase(Locale.ROOT));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only store of styled output lines with a scrollback cap.
+ *
+ * Lines are kept UTF-8 encoded in segments of up to 1024 lines / 64 KB, with
+ * one end offset and one style byte per line. When the cap is exceeded the
+ * oldest whole segment is dropped, so memory stays bounded by roughly
+ * {@code maxLines} lines no matter how much output a session produces.
+ * Lines are addressed by an absolute line number that keeps increasing as
+ * old lines are dropped. A line longer than 16K chars is wrapped, so output
+ * without newlines (a minified file, say) cannot grow one line without bound.
+ * Not thread-safe; the output view uses it on the EDT.
+ */
+final class LineStore {
+
+    private static final int SEGMENT_LINES = 1024;
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final int MAX_LINE_CHARS = 16 * 1024;
+
+    private static final class Segment {
+
+        final long firstLine;
+        byte[] data = new byte[4096];
+        int size;
+        final int[] ends = new int[SEGMENT_LINES];
+        final byte[] styles = new byte[SEGMENT_LINES];
+        int count;
+        // Longest line in chars, so the widest line can be found again when a segment is dropped
+        int maxLength;
+
+        Segment(long firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        boolean canTake(int bytes) {
+            return count < SEGMENT_LINES && (count == 0 || size + bytes <= SEGMENT_BYTES);
+        }
+
+        void add(byte[] line, int chars, byte style) {
+            if (size + line.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + line.length, Math.min(data.length * 2, SEGMENT_BYTES)));
+            }
+            System.arraycopy(line, 0, data, size, line.length);
+            size += line.length;
+            ends[count] = size;
+            styles[count] = style;
+            count++;
+            maxLength = Math.max(maxLength, chars);
+        }
+
+        void seal() {
+            if (data.length != size) {
+                data = Arrays.copyOf(data, size);
+            }
+        }
+
+        String line(int i) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            return new String(data, start, ends[i] - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final int maxLines;
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextLine;
+    private int storedLines;
+    private int maxLineLength;
+
+    // The last line may still be growing; it is only encoded once complete
+    private final StringBuilder partial = new StringBuilder();
+    private byte partialStyle;
+    private boolean hasPartial;
+
+    LineStore(int maxLines) {
+        this.maxLines = Math.max(SEGMENT_LINES, maxLines);
+    }
+
+    void append(CharSequence text, byte style) {
+        int start = 0;
+        while (start < text.length()) {
+            if (!hasPartial) {
+                partialStyle = style;
+                hasPartial = true;
+            }
+            int limit = Math.min(text.length(), start + MAX_LINE_CHARS - partial.length());
+            int end = start;
+            while (end < limit && text.charAt(end) != '\n') {
+                end++;
+            }
+            partial.append(text, start, end);
+            if (end < text.length() && text.charAt(end) == '\n') {
+                commitPartial();
+                start = end + 1;
+            } else {
+                if (partial.length() >= MAX_LINE_CHARS) {
+                    wrapPartial();
+                }
+                start = end;
+            }
+        }
+        maxLineLength = Math.max(maxLineLength, partial.length());
+    }
+
+    /** Absolute number of the oldest line still retained. */
+    long firstLineNumber() {
+        return nextLine - storedLines;
+    }
+
+    int lineCount() {
+        return storedLines + (hasPartial ? 1 : 0);
+    }
+
+    /** Length in chars of the longest line seen, used to size the view. */
+    int maxLineLength() {
+        return maxLineLength;
+    }
+
+    /** Returns the line at the given index, where 0 is the oldest retained line. */
+    String line(int index) {
+        if (index == storedLines && hasPartial) {
+            return partial.toString();
+        }
+        Segment segment = segmentFor(index);
+        return segment.line((int) (firstLineNumber() + index - segment.firstLine));
+    }
+
+    byte style(int index) {
+        if (index == storedLines && hasPartial) {
+            return partialStyle;
+        }
+        Segment segment = segmentFor(index);
+        return segment.styles[(int) (firstLineNumber() + index - segment.firstLine)];
+    }
+
+    void clear() {
+        segments.clear();
+        storedLines = 0;
+        maxLineLength = 0;
+        partial.setLength(0);
+        hasPartial = false;
+    }
+
+    private void commitPartial() {
+        commit(partial.toString(), partialStyle);
+        partial.setLength(0);
+        hasPartial = false;
+    }
+
+    /** Ends an over-long line as if it had a newline; never between the two halves of a surrogate pair. */
+    private void wrapPartial() {
+        char last = partial.charAt(partial.length() - 1);
+        if (!Character.isHighSurrogate(last)) {
+            commitPartial();
+            return;
+        }
+        partial.setLength(partial.length() - 1);
+        byte style = partialStyle;
+        commitPartial();
+        partial.append(last);
+        partialStyle = style;
+        hasPartial = true;
+    }
+
+    private void commit(String line, byte style) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || !last.canTake(bytes.length)) {
+            if (last != null) {
+                last.seal();
+            }
+            last = new Segment(nextLine);
+            segments.add(last);
+        }
+        last.add(bytes, line.length(), style);
+        nextLine++;
+        storedLines++;
+        maxLineLength = Math.max(maxLineLength, line.length());
+
+        // Drop whole segments so trimming stays O(1) per line on average
+        while (storedLines - segments.get(0).count >= maxLines) {
+            Segment dropped = segments.remove(0);
+            storedLines -= dropped.count;
+            if (dropped.maxLength >= maxLineLength) {
+                maxLineLength = partial.length();
+                for (Segment segment : segments) {
+                    maxLineLength = Math.max(maxLineLength, segment.maxLength);
+                }
+            }
+        }
+    }
+
+    private Segment segmentFor(int index) {
+        if (index < 0 || index >= storedLines) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + lineCount());
+        }
+        long target = firstLineNumber() + index;
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).firstLine <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The shell's own file name database, written by {@code updatedb} and read
+ * by {@code locate}.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   header      magic, root, entry/block/trigram counts, section offsets
+ *   blocks      64 sorted paths each, front-coded against the previous path:
+ *               varint shared-prefix, varint suffix length, suffix bytes,
+ *               flag byte (1 = directory) and, for directories, the mtime
+ *   block index one long offset per block, plus the end offset
+ *   trigrams    sorted (trigram, posting offset, posting count) triples
+ *   postings    per trigram, delta-coded ids of the blocks containing it
+ * </pre>
+ * Trigrams are taken from the ASCII-lowercased UTF-8 bytes of each path.
+ * A substring query intersects the postings of its trigrams and only
+ * decodes the few candidate blocks, so lookups over millions of paths take
+ * milliseconds. The file is memory-mapped, never loaded.
+ *
+ * Rebuilds are incremental: a directory whose mtime matches the previous
+ * index reuses its recorded entry names instead of being listed again.
+ */
+final class LocateIndex implements Closeable {
+
+    private static final byte[] MAGIC = "SHLOCDB1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_ENTRIES = 64;
+    private static final int TRIGRAM_RECORD = 12;
+
+    /** What a rebuild did, for the updatedb summary. */
+    record BuildStats(long entries, long directoriesListed, long directoriesReused, long bytes, long nanos) {
+    }
+
+    private record Entry(String path, boolean directory, long mtime) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final String root;
+    private final int entryCount;
+    private final int blockCount;
+    private final int trigramCount;
+    private final int blockIndexOffset;
+    private final int trigramOffset;
+    private final int postingsOffset;
+
+    private LocateIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        byte[] magic = new byte[MAGIC.length];
+        data.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a locate database");
+        }
+        int position = MAGIC.length;
+        int rootLength = data.getShort(position) & 0xFFFF;
+        byte[] rootBytes = new byte[rootLength];
+        data.get(position + 2, rootBytes);
+        this.root = new String(rootBytes, StandardCharsets.UTF_8);
+        position += 2 + rootLength;
+        this.entryCount = data.getInt(position);
+        this.blockCount = data.getInt(position + 4);
+        this.trigramCount = data.getInt(position + 8);
+        this.blockIndexOffset = data.getInt(position + 12);
+        this.trigramOffset = data.getInt(position + 16);
+        this.postingsOffset = data.getInt(position + 20);
+    }
+
+    static Path defaultLocation() {
+        String configured = System.getProperty("shellui.locatedb");
+        return configured != null
+                ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".shellui", "locate.db");
+    }
+
+    static LocateIndex open(Path database) throws IOException {
+        FileChannel channel = FileChannel.open(database, StandardOpenOption.READ);
+        try {
+            return new LocateIndex(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    String root() {
+        return root;
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reports every indexed path containing {@code query}. Returns the number
+     * of matches.
+     */
+    long search(String query, boolean ignoreCase, Consumer<String> results) {
+        String needle = ignoreCase ? query.toLowerCase(Locale.ROOT) : query;
+        byte[] folded = fold(query.getBytes(StandardCharsets.UTF_8));
+        boolean asciiQuery = query.chars().allMatch(c -> c < 0x80);
+
+        // Non-ASCII queries under -i cannot use the ASCII-folded trigrams
+        int[] candidates = folded.length >= 3 && (asciiQuery || !ignoreCase) ? candidateBlocks(folded) : null;
+        long matches = 0;
+        List<String> entries = new ArrayList<>(BLOCK_ENTRIES);
+        int count = candidates != null ? candidates.length : blockCount;
+        for (int i = 0; i < count; i++) {
+            entries.clear();
+            decodeBlock(candidates != null ? candidates[i] : i, entries, null);
+            for (String path : entries) {
+                String haystack = ignoreCase ? path.toLowerCase(Locale.ROOT) : path;
+                if (haystack.contains(needle)) {
+                    results.accept(path);
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /** Intersects the posting lists of all trigrams in the query. */
+    private int[] candidateBlocks(byte[] query) {
+        int[] trigrams = trigrams(query, 0, query.length);
+        int[][] postings = new int[trigrams.length][];
+        for (int i = 0; i < trigrams.length; i++) {
+            postings[i] = postings(trigrams[i]);
+            if (postings[i].length == 0) {
+                return postings[i];
+            }
+        }
+        Arrays.sort(postings, Comparator.comparingInt(p -> p.length));
+        int[] result = postings[0];
+        for (int i = 1; i < postings.length && result.length > 0; i++) {
+            result = intersect(result, postings[i]);
+        }
+        return result;
+    }
+
+    private int[] postings(int trigram) {
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = data.getInt(trigramOffset + mid * TRIGRAM_RECORD);
+            if (key < trigram) {
+                low = mid + 1;
+            } else if (key > trigram) {
+                high = mid - 1;
+            } else {
+                int offset = data.getInt(trigramOffset + mid * TRIGRAM_RECORD + 4);
+                int count = data.getInt(trigramOffset + mid * TRIGRAM_RECORD + 8);
+                int[] blocks = new int[count];
+                int[] cursor = {postingsOffset + offset};
+                int block = 0;
+                for (int i = 0; i < count; i++) {
+                    block += readVarInt(data, cursor);
+                    blocks[i] = block;
+                }
+                return blocks;
+            }
+        }
+        return new int[0];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Decodes one block's paths (and, if wanted, the directory records). */
+    private void decodeBlock(int block, List<String> paths, List<Entry> records) {
+        int[] cursor = {(int) data.getLong(blockIndexOffset + block * 8)};
+        int end = (int) data.getLong(blockIndexOffset + (block + 1) * 8);
+        byte[] previous = new byte[256];
+        while (cursor[0] < end) {
+            int shared = readVarInt(data, cursor);
+            int suffix = readVarInt(data, cursor);
+            if (shared + suffix > previous.length) {
+                previous = Arrays.copyOf(previous, Math.max(previous.length * 2, shared + suffix));
+            }
+            data.get(cursor[0], previous, shared, suffix);
+            cursor[0] += suffix;
+            String path = new String(previous, 0, shared + suffix, StandardCharsets.UTF_8);
+            boolean directory = data.get(cursor[0]++) == 1;
+            long mtime = directory ? readVarLong(data, cursor) : 0;
+            paths.add(path);
+            if (records != null) {
+                records.add(new Entry(path, directory, mtime));
+            }
+        }
+    }
+
+    private List<Entry> allEntries() {
+        List<Entry> records = new ArrayList<>(entryCount);
+        List<String> paths = new ArrayList<>(BLOCK_ENTRIES);
+        for (int block = 0; block < blockCount; block++) {
+            paths.clear();
+            decodeBlock(block, paths, records);
+        }
+        return records;
+    }
+
+    // ---- building -------------------------------------------------------
+
+    /**
+     * Rebuilds the database at {@code database} for the tree under
+     * {@code root}, reusing directory listings from the previous database
+     * where the directory's mtime has not changed.
+     */
+    static BuildStats update(Path database, Path root, CommandTask task) throws IOException {
+        long start = System.nanoTime();
+        String rootName = root.toAbsolutePath().normalize().toString();
+
+        Map<String, PreviousDirectory> previous = new HashMap<>();
+        if (Files.exists(database)) {
+            try (LocateIndex old = open(database)) {
+                if (old.root().equals(rootName)) {
+                    previous = PreviousDirectory.index(old.allEntries());
+                }
+            } catch (IOException e) {
+                // Unreadable or old format: rebuild from scratch
+            }
+        }
+
+        Walk walk = new Walk(previous, task);
+        List<Entry> entries = WorkerPool.invoke(walk.new DirectoryScan(Path.of(rootName)), Long.MAX_VALUE, null);
+        entries.sort(Comparator.comparing(Entry::path));
+
+        Files.createDirectories(database.toAbsolutePath().getParent());
+        Path temporary = database.resolveSibling(database.getFileName() + ".tmp");
+        long bytes = write(temporary, rootName, entries);
+        Files.move(temporary, database, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new BuildStats(entries.size(), walk.listed.get(), walk.reused.get(), bytes, System.nanoTime() - start);
+    }
+
+    private static long write(Path file, String root, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int blockCount = (entries.size() + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+        long[] blockOffsets = new long[blockCount + 1];
+        Map<Integer, Posting> postings = new HashMap<>();
+
+        byte[] previous = new byte[0];
+        for (int block = 0; block < blockCount; block++) {
+            blockOffsets[block] = blocks.size();
+            previous = new byte[0];
+            int from = block * BLOCK_ENTRIES;
+            int to = Math.min(entries.size(), from + BLOCK_ENTRIES);
+            Set<Integer> blockTrigrams = new HashSet<>();
+            for (int i = from; i < to; i++) {
+                Entry entry = entries.get(i);
+                byte[] path = entry.path().getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                int limit = Math.min(previous.length, path.length);
+                while (shared < limit && previous[shared] == path[shared]) {
+                    shared++;
+                }
+                writeVarLong(blocks, shared);
+                writeVarLong(blocks, path.length - shared);
+                blocks.write(path, shared, path.length - shared);
+                blocks.write(entry.directory() ? 1 : 0);
+                if (entry.directory()) {
+                    writeVarLong(blocks, entry.mtime());
+                }
+                previous = path;
+
+                byte[] folded = fold(path);
+                for (int trigram : trigrams(folded, 0, folded.length)) {
+                    blockTrigrams.add(trigram);
+                }
+            }
+            for (int trigram : blockTrigrams) {
+                postings.computeIfAbsent(trigram, k -> new Posting()).add(block);
+            }
+        }
+        blockOffsets[blockCount] = blocks.size();
+
+        int[] keys = postings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        byte[] rootBytes = root.getBytes(StandardCharsets.UTF_8);
+        int headerSize = MAGIC.length + 2 + rootBytes.length + 24;
+        int blockIndexOffset = headerSize + blocks.size();
+        int trigramOffset = blockIndexOffset + blockOffsets.length * 8;
+        int postingsOffset = trigramOffset + keys.length * TRIGRAM_RECORD;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeShort(rootBytes.length);
+            out.write(rootBytes);
+            out.writeInt(entries.size());
+            out.writeInt(blockCount);
+            out.writeInt(keys.length);
+            out.writeInt(blockIndexOffset);
+            out.writeInt(trigramOffset);
+            out.writeInt(postingsOffset);
+            blocks.writeTo(out);
+            for (long offset : blockOffsets) {
+                out.writeLong(headerSize + offset);
+            }
+            int postingOffset = 0;
+            for (int key : keys) {
+                Posting posting = postings.get(key);
+                out.writeInt(key);
+                out.writeInt(postingOffset);
+                out.writeInt(posting.count);
+                postingOffset += posting.size;
+            }
+            for (int key : keys) {
+                Posting posting = postings.get(key);
+                out.write(posting.data, 0, posting.size);
+            }
+            return out.size();
+        }
+    }
+
+    /** Delta-coded block ids for one trigram, appended in increasing order. */
+    private static final class Posting {
+
+        byte[] data = new byte[4];
+        int size;
+        int count;
+        int last;
+
+        void add(int block) {
+            int delta = block - last;
+            last = block;
+            count++;
+            while (true) {
+                if (size + 5 > data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                if ((delta & ~0x7F) == 0) {
+                    data[size++] = (byte) delta;
+                    return;
+                }
+                data[size++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+        }
+    }
+
+    /** Directory listing recorded by the previous database. */
+    private static final class PreviousDirectory {
+
+        final long mtime;
+        final List<String> names = new ArrayList<>();
+        final List<Boolean> directories = new ArrayList<>();
+
+        PreviousDirectory(long mtime) {
+            this.mtime = mtime;
+        }
+
+        static Map<String, PreviousDirectory> index(List<Entry> entries) {
+            Map<String, PreviousDirectory> byPath = new HashMap<>();
+            for (Entry entry : entries) {
+                if (entry.directory()) {
+                    byPath.put(entry.path(), new PreviousDirectory(entry.mtime()));
+                }
+            }
+            for (Entry entry : entries) {
+                // String arithmetic: names that are not valid in the current locale cannot become Paths
+                String path = entry.path();
+                int separator = path.lastIndexOf(File.separatorChar);
+                if (separator < 0 || separator == path.length() - 1) {
+                    continue;
+                }
+                boolean rootParent = separator == 0 || (separator == 2 && path.charAt(1) == ':');
+                PreviousDirectory directory = byPath.get(path.substring(0, rootParent ? separator + 1 : separator));
+                if (directory != null) {
+                    directory.names.add(path.substring(separator + 1));
+                    directory.directories.add(entry.directory());
+                }
+            }
+            return byPath;
+        }
+    }
+
+    /** One rebuild: a fork-join walk that reuses unchanged directory listings. */
+    private static final class Walk {
+
+        final Map<String, PreviousDirectory> previous;
+        final CommandTask task;
+        final AtomicLong listed = new AtomicLong();
+        final AtomicLong reused = new AtomicLong();
+
+        Walk(Map<String, PreviousDirectory> previous, CommandTask task) {
+            this.previous = previous;
+            this.task = task;
+        }
+
+        final class DirectoryScan extends RecursiveTask<List<Entry>> {
+
+            private final Path directory;
+
+            DirectoryScan(Path directory) {
+                this.directory = directory;
+            }
+
+            @Override
+            protected List<Entry> compute() {
+                if (task != null && task.isCancelled()) {
+                    throw new CancellationException("Command cancelled");
+                }
+                List<Entry> entries = new ArrayList<>();
+                long mtime;
+                try {
+                    mtime = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                            .lastModifiedTime().toMillis();
+                } catch (IOException e) {
+                    return entries;
+                }
+                entries.add(new Entry(directory.toString(), true, mtime));
+
+                List<DirectoryScan> subdirectories = new ArrayList<>();
+                PreviousDirectory old = previous.get(directory.toString());
+                if (old != null && old.mtime == mtime && reuse(directory, old, entries, subdirectories)) {
+                    reused.incrementAndGet();
+                } else {
+                    listed.incrementAndGet();
+                    try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                        for (Path child : children) {
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                subdirectories.add(new DirectoryScan(child));
+                            } else {
+                                entries.add(new Entry(child.toString(), false, 0));
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Unreadable directory: index the name only
+                    }
+                }
+
+                invokeAll(subdirectories);
+                for (DirectoryScan subdirectory : subdirectories) {
+                    entries.addAll(subdirectory.join());
+                }
+                return entries;
+            }
+
+            /** Takes the children from the previous run; names cannot have changed since then. */
+            private boolean reuse(Path directory, PreviousDirectory old, List<Entry> entries,
+                    List<DirectoryScan> subdirectories) {
+                int entryCount = entries.size();
+                try {
+                    for (int i = 0; i < old.names.size(); i++) {
+                        Path child = directory.resolve(old.names.get(i));
+                        if (old.directories.get(i)) {
+                            subdirectories.add(new DirectoryScan(child));
+                        } else {
+                            entries.add(new Entry(child.toString(), false, 0));
+                        }
+                    }
+                    return true;
+                } catch (InvalidPathException e) {
+                    // A recorded name is not representable here; list the directory instead
+                    entries.subList(entryCount, entries.size()).clear();
+                    subdirectories.clear();
+                    return false;
+                }
+            }
+        }
+    }
+
+    // ---- encoding helpers -----------------------------------------------
+
+    private static byte[] fold(byte[] bytes) {
+        byte[] folded = bytes.clone();
+        for (int i = 0; i < folded.length; i++) {
+            if (folded[i] >= 'A' && folded[i] <= 'Z') {
+                folded[i] |= 0x20;
+            }
+        }
+        return folded;
+    }
+
+    private static int[] trigrams(byte[] bytes, int from, int to) {
+        int count = Math.max(0, to - from - 2);
+        int[] trigrams = new int[count];
+        for (int i = 0; i < count; i++) {
+            trigrams[i] = (bytes[from + i] & 0xFF) << 16 | (bytes[from + i + 1] & 0xFF) << 8 | (bytes[from + i + 2] & 0xFF);
+        }
+        return trigrams;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer, int[] cursor) {
+        return (int) readVarLong(buffer, cursor);
+    }
+
+    private static long readVarLong(ByteBuffer buffer, int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * In-process file type detection used by {@code file}. Only the first 512
+ * bytes of a file are read. They are matched against a signature table that
+ * is bucketed by first byte when the class loads, so a lookup tests a handful
+ * of candidates instead of the whole table. Files that match no signature
+ * are classified as ASCII, UTF-8, UTF-16 or ISO-8859 text, or as data.
+ *
+ * Results are cached by absolute path and are reused while the file's mtime
+ * and size are unchanged. Several files are classified in parallel on the
+ * {@link WorkerPool}, 64 files per task.
+ */
+final class MagicDetector {
+
+    private static final int HEAD_BYTES = 512;
+    private static final int FILES_PER_BATCH = 64;
+    private static final int MAX_CACHED = 100_000;
+
+    /** Magic bytes at an offset; {@code describe} may read more of the header for details. */
+    private record Signature(int offset, byte[] magic, Function<ByteBuffer, String> describe) {
+    }
+
+    private record Cached(FileTime modified, long size, String description) {
+    }
+
+    // Signatures at offset 0, by first byte; the rest are tried after them
+    private static final List<List<Signature>> BY_FIRST_BYTE = new ArrayList<>();
+    private static final List<Signature> AT_OFFSET = new ArrayList<>();
+    private static final Map<Path, Cached> CACHE = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            BY_FIRST_BYTE.add(new ArrayList<>());
+        }
+        // One char per byte (ISO-8859-1); bytes outside printable ASCII are written as Unicode escapes
+        add(0, "\u007fELF", MagicDetector::describeElf);
+        add(0, "MZ", MagicDetector::describePe);
+        add(0, "\u00ca\u00fe\u00ba\u00be", MagicDetector::describeCafebabe);
+        add(0, "\u00fe\u00ed\u00fa\u00ce", "Mach-O 32-bit executable (big-endian)");
+        add(0, "\u00ce\u00fa\u00ed\u00fe", "Mach-O 32-bit executable");
+        add(0, "\u00fe\u00ed\u00fa\u00cf", "Mach-O 64-bit executable (big-endian)");
+        add(0, "\u00cf\u00fa\u00ed\u00fe", "Mach-O 64-bit executable");
+        add(0, "\u0000asm", "WebAssembly (wasm) binary module");
+        add(0, "\u0089PNG\r\n\u001a\n", head -> "PNG image data, "
+                + head.order(ByteOrder.BIG_ENDIAN).getInt(16) + " x " + head.getInt(20));
+        add(0, "\u00ff\u00d8\u00ff", "JPEG image data");
+        add(0, "GIF87a", MagicDetector::describeGif);
+        add(0, "GIF89a", MagicDetector::describeGif);
+        add(0, "BM", MagicDetector::describeBmp);
+        add(0, "II*\u0000", "TIFF image data, little-endian");
+        add(0, "MM\u0000*", "TIFF image data, big-endian");
+        add(0, "RIFF", MagicDetector::describeRiff);
+        add(0, "OggS", "Ogg data");
+        add(0, "fLaC", "FLAC audio bitstream data");
+        add(0, "ID3", head -> "Audio file with ID3 version 2." + head.get(3));
+        add(0, "%PDF-", head -> "PDF document, version " + ascii(head, 5, 3));
+        add(0, "%!PS", "PostScript document text");
+        add(0, "{\\rtf", "Rich Text Format data");
+        add(0, "PK\u0003\u0004", MagicDetector::describeZip);
+        add(0, "PK\u0005\u0006", "Zip archive data (empty)");
+        add(0, "\u001f\u008b", MagicDetector::describeGzip);
+        add(0, "BZh", "bzip2 compressed data");
+        add(0, "\u00fd7zXZ\u0000", "XZ compressed data");
+        add(0, "(\u00b5/\u00fd", "Zstandard compressed data");
+        add(0, "7z\u00bc\u00af'\u001c", "7-zip archive data");
+        add(0, "Rar!\u001a\u0007", "RAR archive data");
+        add(0, "SQLite format 3\u0000", "SQLite 3.x database");
+        add(0, "!<arch>\n", "current ar archive");
+        add(0, "\u00d0\u00cf\u0011\u00e0\u00a1\u00b1\u001a\u00e1", "Composite Document File V2 Document (MS Office)");
+        add(0, "#!", MagicDetector::describeScript);
+        add(4, "ftyp", head -> "ISO Media, brand " + ascii(head, 8, 4).trim());
+        add(257, "ustar", "POSIX tar archive");
+    }
+
+    private MagicDetector() {
+    }
+
+    /** Type of one file, like the output of {@code file} without the name. */
+    static String describe(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return "cannot open (" + e.getMessage() + ")";
+        }
+        if (attributes.isDirectory()) {
+            return "directory";
+        }
+        if (attributes.isSymbolicLink()) {
+            try {
+                return "symbolic link to " + Files.readSymbolicLink(path);
+            } catch (IOException e) {
+                return "symbolic link";
+            }
+        }
+        if (attributes.isOther()) {
+            return "special file";
+        }
+        if (attributes.size() == 0) {
+            return "empty";
+        }
+
+        Path key = path.toAbsolutePath().normalize();
+        Cached cached = CACHE.get(key);
+        if (cached != null && cached.size() == attributes.size()
+                && cached.modified().equals(attributes.lastModifiedTime())) {
+            return cached.description();
+        }
+        String description;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEAD_BYTES);
+            while (head.hasRemaining() && channel.read(head) > 0) {
+                // Fill the buffer; short files stop at EOF
+            }
+            description = classify(head.flip());
+        } catch (IOException e) {
+            return "cannot open (" + e.getMessage() + ")";
+        }
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        CACHE.put(key, new Cached(attributes.lastModifiedTime(), attributes.size(), description));
+        return description;
+    }
+
+    /** Describes many files in parallel; the result is in the order given. */
+    static List<String> describeAll(List<Path> paths, CommandTask task) {
+        String[] results = new String[paths.size()];
+        List<RecursiveAction> batches = new ArrayList<>();
+        for (int start = 0; start < paths.size(); start += FILES_PER_BATCH) {
+            int from = start;
+            int to = Math.min(paths.size(), start + FILES_PER_BATCH);
+            batches.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    for (int i = from; i < to; i++) {
+                        if (task != null && task.isCancelled()) {
+                            throw new CancellationException("Command cancelled");
+                        }
+                        results[i] = describe(paths.get(i));
+                    }
+                }
+            });
+        }
+        WorkerPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(batches);
+            }
+        }, Long.MAX_VALUE, null);
+        return List.of(results);
+    }
+
+    /**
+     * The files named by one argument, resolved against {@code base}: the
+     * path itself, or for a glob such as {@code *.so} or {@code lib/*.jar} the
+     * matching entries of its directory, sorted by name. With
+     * {@code recursive}, directories are replaced by the files below them.
+     */
+    static List<Path> expand(Path base, String argument, boolean recursive) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        int slash = argument.lastIndexOf('/');
+        String namePattern = argument.substring(slash + 1);
+        if (namePattern.chars().noneMatch(c -> c == '*' || c == '?' || c == '[')) {
+            paths.add(base.resolve(argument));
+        } else {
+            Path directory = slash < 0 ? base : base.resolve(slash == 0 ? "/" : argument.substring(0, slash));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + namePattern);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    // Like the shell, a wildcard does not match hidden files
+                    String name = entry.getFileName().toString();
+                    if (matcher.matches(entry.getFileName()) && (!name.startsWith(".") || namePattern.startsWith("."))) {
+                        paths.add(entry);
+                    }
+                }
+            }
+            paths.sort(null);
+        }
+        if (!recursive) {
+            return paths;
+        }
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try (var walk = Files.walk(path)) {
+                    walk.filter(p -> !Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /** Classifies the first bytes of a file. */
+    static String classify(ByteBuffer head) {
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        if (head.hasRemaining()) {
+            for (Signature signature : BY_FIRST_BYTE.get(head.get(0) & 0xFF)) {
+                String description = match(signature, head);
+                if (description != null) {
+                    return description;
+                }
+            }
+        }
+        for (Signature signature : AT_OFFSET) {
+            String description = match(signature, head);
+            if (description != null) {
+                return description;
+            }
+        }
+        return describeText(head);
+    }
+
+    private static String match(Signature signature, ByteBuffer head) {
+        byte[] magic = signature.magic();
+        if (head.limit() < signature.offset() + magic.length) {
+            return null;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (head.get(signature.offset() + i) != magic[i]) {
+                return null;
+            }
+        }
+        try {
+            return signature.describe().apply(head.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IndexOutOfBoundsException e) {
+            // Header shorter than the details need; a weak match is no match
+            return null;
+        }
+    }
+
+    private static void add(int offset, String magic, String description) {
+        add(offset, magic, head -> description);
+    }
+
+    private static void add(int offset, String magic, Function<ByteBuffer, String> describe) {
+        Signature signature = new Signature(offset, magic.getBytes(StandardCharsets.ISO_8859_1), describe);
+        if (offset == 0) {
+            BY_FIRST_BYTE.get(signature.magic()[0] & 0xFF).add(signature);
+        } else {
+            AT_OFFSET.add(signature);
+        }
+    }
+
+    private static String describeElf(ByteBuffer head) {
+        boolean is64 = head.get(4) == 2;
+        boolean little = head.get(5) == 1;
+        head.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        String type = switch (head.getShort(16)) {
+            case 1 -> "relocatable";
+            case 2 -> "executable";
+            case 3 -> hasInterpreter(head, is64) ? "pie executable" : "shared object";
+            case 4 -> "core file";
+            default -> "file";
+        };
+        String machine = switch (head.getShort(18)) {
+            case 3 -> "Intel 80386";
+            case 8 -> "MIPS";
+            case 20 -> "PowerPC";
+            case 21 -> "64-bit PowerPC";
+            case 40 -> "ARM";
+            case 62 -> "x86-64";
+            case 183 -> "ARM aarch64";
+            case 243 -> "RISC-V";
+            default -> "unknown arch " + head.getShort(18);
+        };
+        return "ELF " + (is64 ? "64" : "32") + "-bit " + (little ? "LSB" : "MSB") + " " + type + ", " + machine;
+    }
+
+    /** True if a program header within the sample is PT_INTERP, which marks a PIE rather than a library. */
+    private static boolean hasInterpreter(ByteBuffer head, boolean is64) {
+        long offset = is64 ? head.getLong(32) : head.getInt(28) & 0xFFFFFFFFL;
+        int entrySize = head.getShort(is64 ? 54 : 42) & 0xFFFF;
+        int count = head.getShort(is64 ? 56 : 44) & 0xFFFF;
+        for (int i = 0; i < count && entrySize >= 4 && offset + (long) (i + 1) * entrySize <= head.limit(); i++) {
+            if (head.getInt((int) (offset + (long) i * entrySize)) == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describePe(ByteBuffer head) {
+        int pe = head.getInt(0x3C);
+        if (pe <= 0 || pe + 26 > head.limit() || head.getInt(pe) != 0x00004550) {
+            return "MS-DOS executable";
+        }
+        boolean dll = (head.getShort(pe + 22) & 0x2000) != 0;
+        String kind = head.getShort(pe + 24) == 0x20b ? "PE32+" : "PE32";
+        String machine = switch (head.getShort(pe + 4) & 0xFFFF) {
+            case 0x14c -> "Intel 80386";
+            case 0x8664 -> "x86-64";
+            case 0xaa64 -> "Aarch64";
+            default -> "unknown machine";
+        };
+        return kind + " executable" + (dll ? " (DLL)" : "") + " for MS Windows, " + machine;
+    }
+
+    private static String describeCafebabe(ByteBuffer head) {
+        // Shared by Java classes and Mach-O universal binaries; the latter have a small architecture count
+        int second = head.order(ByteOrder.BIG_ENDIAN).getInt(4);
+        if (second > 0 && second < 30) {
+            return "Mach-O universal binary with " + second + " architectures";
+        }
+        int major = head.getShort(6) & 0xFFFF;
+        return "compiled Java class data, version " + major + "." + (head.getShort(4) & 0xFFFF)
+                + (major > 44 ? " (Java " + (major > 48 ? String.valueOf(major - 44) : "1." + (major - 44)) + ")" : "");
+    }
+
+    private static String describeGif(ByteBuffer head) {
+        return "GIF image data, version " + ascii(head, 3, 3) + ", "
+                + (head.getShort(6) & 0xFFFF) + " x " + (head.getShort(8) & 0xFFFF);
+    }
+
+    private static String describeBmp(ByteBuffer head) {
+        int headerSize = head.getInt(14);
+        if (headerSize != 12 && headerSize != 40 && headerSize != 56 && headerSize != 108 && headerSize != 124) {
+            return null;
+        }
+        return headerSize == 12
+                ? "PC bitmap, " + (head.getShort(18) & 0xFFFF) + " x " + (head.getShort(20) & 0xFFFF)
+                : "PC bitmap, " + head.getInt(18) + " x " + Math.abs(head.getInt(22));
+    }
+
+    private static String describeRiff(ByteBuffer head) {
+        return switch (ascii(head, 8, 4)) {
+            case "WAVE" -> "RIFF (little-endian) data, WAVE audio";
+            case "AVI " -> "RIFF (little-endian) data, AVI video";
+            case "WEBP" -> "RIFF (little-endian) data, Web/P image";
+            default -> "RIFF (little-endian) data";
+        };
+    }
+
+    private static String describeZip(ByteBuffer head) {
+        // The name of the first entry tells jars and Office documents from plain zips
+        int nameLength = head.getShort(26) & 0xFFFF;
+        String first = 30 + nameLength <= head.limit() ? ascii(head, 30, nameLength) : "";
+        if (first.startsWith("META-INF/")) {
+            return "Java archive data (JAR)";
+        }
+        if (first.equals("[Content_Types].xml") || first.startsWith("word/") || first.startsWith("xl/")
+                || first.startsWith("ppt/")) {
+            return "Microsoft OOXML document (Zip)";
+        }
+        if (first.equals("mimetype")) {
+            return "OpenDocument / EPUB (Zip)";
+        }
+        return "Zip archive data";
+    }
+
+    private static String describeGzip(ByteBuffer head) {
+        StringBuilder description = new StringBuilder("gzip compressed data");
+        if ((head.get(3) & 0x08) != 0) {
+            int start = 10;
+            if ((head.get(3) & 0x04) != 0) {
+                start += 2 + (head.getShort(10) & 0xFFFF);
+            }
+            int end = start;
+            while (end < head.limit() && head.get(end) != 0) {
+                end++;
+            }
+            if (end > start && end < head.limit()) {
+                byte[] name = new byte[end - start];
+                head.get(start, name);
+                description.append(", was \"").append(new String(name, StandardCharsets.ISO_8859_1)).append('"');
+            }
+        }
+        return description.toString();
+    }
+
+    private static String describeScript(ByteBuffer head) {
+        int end = 2;
+        while (end < head.limit() && head.get(end) != '\n') {
+            end++;
+        }
+        String[] words = ascii(head, 2, end - 2).trim().split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return null;
+        }
+        String interpreter = words[0].substring(words[0].lastIndexOf('/') + 1);
+        if (interpreter.equals("env") && words.length > 1) {
+            interpreter = words[1];
+        }
+        return interpreter + " script, " + describeText(head) + " executable";
+    }
+
+    /** Text encodings and line terminators, like file's text classification. */
+    private static String describeText(ByteBuffer head) {
+        int length = head.limit();
+        if (length >= 3 && (head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+            return "UTF-8 Unicode (with BOM) text" + lineTerminators(head, 3);
+        }
+        if (length >= 2 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xFE) {
+            return "Little-endian UTF-16 Unicode text";
+        }
+        if (length >= 2 && (head.get(0) & 0xFF) == 0xFE && (head.get(1) & 0xFF) == 0xFF) {
+            return "Big-endian UTF-16 Unicode text";
+        }
+
+        int zeroEven = 0;
+        int zeroOdd = 0;
+        boolean high = false;
+        boolean control = false;
+        for (int i = 0; i < length; i++) {
+            int b = head.get(i) & 0xFF;
+            if (b == 0) {
+                if (i % 2 == 0) {
+                    zeroEven++;
+                } else {
+                    zeroOdd++;
+                }
+            } else if (b >= 0x80) {
+                high = true;
+            } else if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1B)
+                    || b == 0x7F) {
+                control = true;
+            }
+        }
+        if (zeroEven + zeroOdd > 0) {
+            // ASCII stored as UTF-16 has a zero in every other byte
+            if (zeroOdd >= length / 2 - 1 && zeroEven == 0) {
+                return "Little-endian UTF-16 Unicode text (no BOM)";
+            }
+            if (zeroEven >= length / 2 - 1 && zeroOdd == 0) {
+                return "Big-endian UTF-16 Unicode text (no BOM)";
+            }
+            return "data";
+        }
+        if (control) {
+            return "data";
+        }
+        if (!high) {
+            return "ASCII text" + lineTerminators(head, 0);
+        }
+        return (isUtf8(head) ? "UTF-8 Unicode text" : "ISO-8859 text") + lineTerminators(head, 0);
+    }
+
+    private static String lineTerminators(ByteBuffer head, int from) {
+        boolean crlf = false;
+        boolean cr = false;
+        for (int i = from; i < head.limit(); i++) {
+            if (head.get(i) == '\r') {
+                if (i + 1 < head.limit() && head.get(i + 1) == '\n') {
+                    crlf = true;
+                } else if (i + 1 < head.limit()) {
+                    cr = true;
+                }
+            }
+        }
+        return crlf ? ", with CRLF line terminators" : cr ? ", with CR line terminators" : "";
+    }
+
+    /** Valid UTF-8, allowing a sequence cut off by the end of the sample. */
+    private static boolean isUtf8(ByteBuffer head) {
+        int length = head.limit();
+        int i = 0;
+        while (i < length) {
+            int b = head.get(i) & 0xFF;
+            int continuation = b < 0x80 ? 0 : b >= 0xC2 && b < 0xE0 ? 1 : b >= 0xE0 && b < 0xF0 ? 2
+                    : b >= 0xF0 && b < 0xF5 ? 3 : -1;
+            if (continuation < 0) {
+                return false;
+            }
+            for (int j = 1; j <= continuation; j++) {
+                if (i + j >= length) {
+                    return true;
+                }
+                if ((head.get(i + j) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+
+    private static String ascii(ByteBuffer head, int offset, int length) {
+        byte[] bytes = new byte[Math.max(0, Math.min(length, head.limit() - offset))];
+        head.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
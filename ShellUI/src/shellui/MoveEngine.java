@@ -0,0 +1,104 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * In-process move used by {@code mv}. Every source is first renamed with
+ * {@link StandardCopyOption#ATOMIC_MOVE}, which is a single rename(2) /
+ * MoveFileEx call when source and target are on the same file store. When
+ * the file system reports a cross-device move the source is streamed over
+ * with {@link CopyEngine} and then deleted.
+ */
+final class MoveEngine {
+
+    private final OutputSink out;
+    private final CommandTask task;
+
+    MoveEngine(OutputSink out, CommandTask task) {
+        this.out = out;
+        this.task = task;
+    }
+
+    /**
+     * Moves the sources to {@code target}. With more than one source the
+     * target must be an existing directory. Returns a one line summary.
+     */
+    String move(List<Path> sources, Path target) {
+        long start = System.nanoTime();
+        boolean intoDirectory = Files.isDirectory(target);
+        if (sources.size() > 1 && !intoDirectory) {
+            throw new RuntimeException("mv: target is not a directory: " + target);
+        }
+
+        int renamed = 0;
+        int copied = 0;
+        for (Path source : sources) {
+            if (task != null) {
+                task.checkCancelled();
+            }
+            if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                throw new RuntimeException("Source file/directory does not exist: " + source);
+            }
+            Path destination = intoDirectory ? target.resolve(source.getFileName().toString()) : target;
+            try {
+                Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+                renamed++;
+            } catch (AtomicMoveNotSupportedException e) {
+                // Different file store: copy across, then remove the original
+                moveAcrossDevices(source, destination);
+                copied++;
+            } catch (IOException e) {
+                throw new RuntimeException("Move failed: " + source + " → " + destination + ": " + e.getMessage());
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(sources.size()).append(" item(s) in ").append(Sizes.seconds(System.nanoTime() - start));
+        if (copied > 0) {
+            summary.append(" (").append(renamed).append(" renamed, ").append(copied).append(" copied across devices)");
+        }
+        return summary.toString();
+    }
+
+    private void moveAcrossDevices(Path source, Path destination) {
+        // As rename(2) would: a file may replace a file, but nothing replaces or goes into a directory here
+        if (Files.isDirectory(destination)
+                || Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS) && Files.exists(destination)) {
+            throw new RuntimeException("Move failed: " + source + " → " + destination + ": destination exists");
+        }
+        out.append("mv: " + source + " is on another device, copying\n", "output");
+        CopyEngine copier = new CopyEngine(out, task);
+        out.append(copier.copyTo(source, destination) + "\n", "output");
+        try {
+            deleteTree(source);
+        } catch (IOException e) {
+            throw new RuntimeException("Copied, but could not remove " + source + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import javax.swing.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams styled text into the output view. Command threads append runs, or
+ * whole {@link StyledText} batches that were highlighted on the command
+ * thread, to a lock-free queue; a Swing timer drains it about once per frame
+ * and appends consecutive runs of the same style in one go, with a single
+ * layout and scroll per batch, so the EDT pays per batch rather than per line.
+ *
+ * The queue is bounded: a command thread that gets more than about 4M chars
+ * ahead of the view waits until the EDT has caught up, so streaming a huge
+ * file costs bounded memory and never floods the event queue.
+ */
+final class OutputPipeline implements OutputSink {
+
+    private static final int FLUSH_INTERVAL_MS = 16;
+    // Upper bound per flush so a flood of output cannot starve repaints and input
+    private static final int MAX_CHARS_PER_FLUSH = 256 * 1024;
+    private static final long MAX_QUEUED_CHARS = 4L * 1024 * 1024;
+
+    private final OutputView view;
+    private final Queue<StyledText> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong queuedChars = new AtomicLong();
+    private final Object drained = new Object();
+    private final Timer timer;
+    // The command whose output was queued last; screen updates are counted for it in stats
+    private volatile String lastCommand;
+
+    OutputPipeline(OutputView view) {
+        this.view = view;
+        this.timer = new Timer(FLUSH_INTERVAL_MS, e -> flush());
+        this.timer.setRepeats(false);
+    }
+
+    @Override
+    public void append(String text, String style) {
+        if (!text.isEmpty()) {
+            append(StyledText.of(text, style));
+        }
+    }
+
+    /** Queues a highlighted batch; all of its runs reach the view in the same flush. */
+    @Override
+    public void append(StyledText text) {
+        if (text.length() == 0) {
+            return;
+        }
+        if (queuedChars.get() > MAX_QUEUED_CHARS && !SwingUtilities.isEventDispatchThread()) {
+            awaitDrain();
+        }
+        CommandMetrics.Sample sample = CommandMetrics.current();
+        lastCommand = sample != null ? sample.command() : null;
+        queuedChars.addAndGet(text.length());
+        pending.add(text);
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(timer::restart);
+        }
+    }
+
+    /**
+     * Discards queued output and empties the view. Must be called on the EDT.
+     */
+    void clear() {
+        // Only what was taken off the queue is uncounted; a racing append is counted and queued as usual
+        StyledText text;
+        while ((text = pending.poll()) != null) {
+            queuedChars.addAndGet(-text.length());
+        }
+        signalDrained();
+        view.clear();
+    }
+
+    private void awaitDrain() {
+        synchronized (drained) {
+            while (queuedChars.get() > MAX_QUEUED_CHARS) {
+                try {
+                    drained.wait(100);
+                } catch (InterruptedException e) {
+                    // Cancelled: keep the interrupt for the command and let this text through
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void signalDrained() {
+        synchronized (drained) {
+            drained.notifyAll();
+        }
+    }
+
+    private void flush() {
+        long startNanos = System.nanoTime();
+        String command = lastCommand;
+        StringBuilder batch = new StringBuilder();
+        String batchStyle = null;
+        int budget = MAX_CHARS_PER_FLUSH;
+
+        StyledText text;
+        while (budget > 0 && (text = pending.poll()) != null) {
+            for (int run = 0; run < text.runCount(); run++) {
+                if (!text.runStyle(run).equals(batchStyle)) {
+                    insert(batch, batchStyle);
+                    batchStyle = text.runStyle(run);
+                }
+                batch.append(text.text(), text.runStart(run), text.runEnd(run));
+            }
+            budget -= text.length();
+        }
+        long queued = queuedChars.addAndGet(-(MAX_CHARS_PER_FLUSH - budget));
+        insert(batch, batchStyle);
+        view.appendFinished();
+        if (command != null) {
+            CommandMetrics.recordRender(command, System.nanoTime() - startNanos);
+        }
+        if (queued <= MAX_QUEUED_CHARS) {
+            signalDrained();
+        }
+
+        // Clear the flag before re-checking so a concurrent append is never lost
+        scheduled.set(false);
+        if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+            timer.restart();
+        }
+    }
+
+    private void insert(StringBuilder batch, String style) {
+        if (batch.length() == 0) {
+            return;
+        }
+        view.append(batch.toString(), style);
+        batch.setLength(0);
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+/**
+ * Destination for command output. Implementations must accept calls from any
+ * thread; the style is one of the names configured in the output pane
+ * ("output", "error", "command", "directory", "default").
+ */
+interface OutputSink {
+
+    void append(String text, String style);
+
+    /** Appends a batch of highlighted runs; sinks that can apply it in one update override this. */
+    default void append(StyledText text) {
+        for (int run = 0; run < text.runCount(); run++) {
+            append(text.text().substring(text.runStart(run), text.runEnd(run)), text.runStyle(run));
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import javax.swing.*;
+import javax.swing.text.*;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only output component that paints only the lines inside the visible
+ * clip. Text lives in a {@link LineStore}, so the cost of painting and
+ * scrolling does not depend on how much output has been produced.
+ *
+ * Styles are looked up by name in the same StyleContext the rest of the UI
+ * configures. Selection is line based: drag to select, Ctrl+C to copy and
+ * Ctrl+A to select everything.
+ */
+final class OutputView extends JComponent implements Scrollable {
+
+    private static final int INSET = 4;
+    private static final int TAB_WIDTH = 8;
+    private static final Color SELECTION_COLOR = new Color(184, 207, 229);
+
+    private final LineStore store;
+    private final StyleContext styleContext;
+    private final List<String> styleNames = new ArrayList<>();
+
+    private Font plainFont;
+    private Font boldFont;
+    private int lineHeight;
+    private int ascent;
+    private int charWidth;
+
+    // Absolute line numbers so the selection survives scrollback trimming
+    private long selectionAnchor = -1;
+    private long selectionEnd = -1;
+
+    private long firstLineBeforeAppend = -1;
+    private boolean stickToBottom = true;
+
+    OutputView(StyleContext styleContext, int scrollbackLines) {
+        this.styleContext = styleContext;
+        this.store = new LineStore(scrollbackLines);
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setFocusable(true);
+        setFont(new Font("Monospaced", Font.PLAIN, 12));
+        installSelectionHandlers();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        plainFont = font.deriveFont(Font.PLAIN);
+        boldFont = font.deriveFont(Font.BOLD);
+        FontMetrics metrics = getFontMetrics(plainFont);
+        lineHeight = metrics.getHeight();
+        ascent = metrics.getAscent();
+        charWidth = Math.max(1, metrics.charWidth('m'));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Appends a run of text. Call {@link #appendFinished()} once the batch is
+     * complete so layout and scrolling happen once per batch. EDT only.
+     */
+    void append(String text, String style) {
+        if (firstLineBeforeAppend < 0) {
+            firstLineBeforeAppend = store.firstLineNumber();
+            stickToBottom = isAtBottom();
+        }
+        store.append(text, styleId(style));
+    }
+
+    void appendFinished() {
+        if (firstLineBeforeAppend < 0) {
+            return;
+        }
+        long dropped = store.firstLineNumber() - firstLineBeforeAppend;
+        firstLineBeforeAppend = -1;
+
+        JViewport viewport = getViewport();
+        revalidate();
+        repaint();
+        if (viewport == null) {
+            return;
+        }
+        // Lay out now so the view position can be set against the new size
+        viewport.getParent().validate();
+        Point position = viewport.getViewPosition();
+        if (stickToBottom) {
+            position.y = Math.max(0, getHeight() - viewport.getExtentSize().height);
+        } else if (dropped > 0) {
+            // Keep the lines the user is looking at in place while old ones are trimmed
+            position.y = (int) Math.max(0, position.y - dropped * lineHeight);
+        } else {
+            return;
+        }
+        viewport.setViewPosition(position);
+    }
+
+    void clear() {
+        store.clear();
+        selectionAnchor = -1;
+        selectionEnd = -1;
+        revalidate();
+        repaint();
+    }
+
+    String getSelectedText() {
+        if (selectionAnchor < 0) {
+            return "";
+        }
+        long first = Math.max(Math.min(selectionAnchor, selectionEnd), store.firstLineNumber());
+        long last = Math.min(Math.max(selectionAnchor, selectionEnd), store.firstLineNumber() + store.lineCount() - 1);
+        StringBuilder text = new StringBuilder();
+        for (long line = first; line <= last; line++) {
+            text.append(store.line((int) (line - store.firstLineNumber()))).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(store.maxLineLength() * charWidth + 2 * INSET,
+                store.lineCount() * lineHeight + 2 * INSET);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int count = store.lineCount();
+        if (count == 0) {
+            return;
+        }
+        int first = Math.max(0, (clip.y - INSET) / lineHeight);
+        int last = Math.min(count - 1, (clip.y + clip.height - INSET) / lineHeight);
+        int firstColumn = Math.max(0, (clip.x - INSET) / charWidth);
+        int columns = clip.width / charWidth + 2;
+        long base = store.firstLineNumber();
+
+        for (int i = first; i <= last; i++) {
+            int y = INSET + i * lineHeight;
+            if (isSelected(base + i)) {
+                g.setColor(SELECTION_COLOR);
+                g.fillRect(clip.x, y, clip.width, lineHeight);
+            }
+
+            String text = expandTabs(store.line(i));
+            if (firstColumn >= text.length()) {
+                continue;
+            }
+            Style style = styleContext.getStyle(styleNames.get(store.style(i)));
+            g.setColor(style != null ? StyleConstants.getForeground(style) : Color.BLACK);
+            g.setFont(style != null && StyleConstants.isBold(style) ? boldFont : plainFont);
+            // Only draw the columns inside the clip; very long lines stay cheap
+            String visible = text.substring(firstColumn, Math.min(text.length(), firstColumn + columns));
+            g.drawString(visible, INSET + firstColumn * charWidth, y + ascent);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL
+                ? Math.max(lineHeight, visibleRect.height - lineHeight)
+                : Math.max(charWidth, visibleRect.width - charWidth);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        JViewport viewport = getViewport();
+        return viewport != null && viewport.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        JViewport viewport = getViewport();
+        return viewport != null && viewport.getHeight() > getPreferredSize().height;
+    }
+
+    private JViewport getViewport() {
+        return getParent() instanceof JViewport viewport ? viewport : null;
+    }
+
+    private boolean isAtBottom() {
+        JViewport viewport = getViewport();
+        if (viewport == null) {
+            return true;
+        }
+        Rectangle view = viewport.getViewRect();
+        return view.y + view.height >= getHeight() - lineHeight;
+    }
+
+    private boolean isSelected(long line) {
+        return selectionAnchor >= 0
+                && line >= Math.min(selectionAnchor, selectionEnd)
+                && line <= Math.max(selectionAnchor, selectionEnd);
+    }
+
+    private byte styleId(String style) {
+        int id = styleNames.indexOf(style);
+        if (id < 0) {
+            id = styleNames.size();
+            styleNames.add(style);
+        }
+        return (byte) id;
+    }
+
+    private long lineAt(int y) {
+        int index = Math.max(0, Math.min(store.lineCount() - 1, (y - INSET) / lineHeight));
+        return store.firstLineNumber() + index;
+    }
+
+    static String expandTabs(String line) {
+        if (line.indexOf('\t') < 0) {
+            return line;
+        }
+        StringBuilder expanded = new StringBuilder(line.length() + TAB_WIDTH);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                do {
+                    expanded.append(' ');
+                } while (expanded.length() % TAB_WIDTH != 0);
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    private void installSelectionHandlers() {
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
+                if (store.lineCount() == 0) {
+                    return;
+                }
+                long line = lineAt(e.getY());
+                if (e.isShiftDown() && selectionAnchor >= 0) {
+                    selectionEnd = line;
+                } else {
+                    selectionAnchor = line;
+                    selectionEnd = line;
+                }
+                repaint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (selectionAnchor < 0) {
+                    return;
+                }
+                selectionEnd = lineAt(e.getY());
+                scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+
+        int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, menuMask), "copy");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A, menuMask), "select-all");
+        getActionMap().put("copy", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String text = getSelectedText();
+                if (!text.isEmpty()) {
+                    Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+                }
+            }
+        });
+        getActionMap().put("select-all", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (store.lineCount() > 0) {
+                    selectionAnchor = store.firstLineNumber();
+                    selectionEnd = store.firstLineNumber() + store.lineCount() - 1;
+                    repaint();
+                }
+            }
+        });
+    }
+}
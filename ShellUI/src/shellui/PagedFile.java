@@ -0,0 +1,373 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * A text file opened by the {@code less} pager. The file is memory-mapped in
+ * 1 GB regions on first access and never read as a whole: positions are
+ * byte offsets, and lines are found by scanning for newlines around the
+ * position being shown, so opening even a multi-GB file costs one page.
+ *
+ * Line numbers come from an index that a background thread builds lazily.
+ * It keeps the offset of every 64th line, so it costs 8 bytes per 64 lines,
+ * and a line number is resolved by a binary search plus a scan of at most
+ * 64 lines. Until the indexer has reached a position its line number is
+ * simply unknown.
+ */
+final class PagedFile implements Closeable {
+
+    /** Longest part of a single line that is decoded for display. */
+    static final int MAX_LINE_BYTES = 16 * 1024;
+
+    private static final long REGION_SIZE = 1L << 30;
+    private static final int CHECKPOINT_LINES = 64;
+    private static final int SCAN_BUFFER = 64 * 1024;
+    private static final int LINE_SCAN_BUFFER = 4096;
+    private static final int SEARCH_BUFFER = 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private volatile long size;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    // Offset of line k * CHECKPOINT_LINES at index k; guarded by this
+    private long[] checkpoints = new long[1024];
+    private int checkpointCount = 1;
+    private volatile long indexedLines;
+    private volatile long indexedBytes;
+    private volatile boolean indexComplete;
+    private volatile int generation;
+    private Thread indexer;
+    private volatile boolean closed;
+
+    private PagedFile(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static PagedFile open(Path path) throws IOException {
+        return new PagedFile(path, FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Picks up a change in file size (follow mode). Returns true if the file
+     * changed; a file that shrank is treated as rewritten and re-indexed.
+     */
+    boolean refresh() throws IOException {
+        long newSize = channel.size();
+        if (newSize == size) {
+            return false;
+        }
+        synchronized (this) {
+            if (newSize < size) {
+                regions = new MappedByteBuffer[0];
+                checkpointCount = 1;
+                indexedLines = 0;
+                indexedBytes = 0;
+                generation++;
+            } else if (regions.length > 0) {
+                // The last region was mapped short; map it again at its new length
+                regions[regions.length - 1] = null;
+            }
+            indexComplete = false;
+            size = newSize;
+        }
+        startIndexing();
+        return true;
+    }
+
+    /** Starts (or resumes) the background line index, if it is not running. */
+    synchronized void startIndexing() {
+        if (closed || indexComplete || (indexer != null && indexer.isAlive())) {
+            return;
+        }
+        indexer = Thread.ofVirtual().name("less-index").start(this::buildIndex);
+    }
+
+    boolean isIndexComplete() {
+        return indexComplete;
+    }
+
+    long indexedBytes() {
+        return indexedBytes;
+    }
+
+    /** Number of lines, once the index is complete (a last line without a newline counts). */
+    long lineCount() {
+        long lines = indexedLines;
+        return size > 0 && lastByte() != '\n' ? lines + 1 : lines;
+    }
+
+    /** 0-based line number of the line starting at {@code offset}, or -1 if not indexed that far yet. */
+    long lineNumberOf(long offset) {
+        if (offset > indexedBytes && !indexComplete) {
+            return -1;
+        }
+        long checkpoint;
+        int k;
+        synchronized (this) {
+            k = Arrays.binarySearch(checkpoints, 0, checkpointCount, offset);
+            if (k < 0) {
+                k = -k - 2;
+            }
+            checkpoint = checkpoints[k];
+        }
+        long line = (long) k * CHECKPOINT_LINES;
+        for (long position = checkpoint; position < offset; position = nextLineStart(position)) {
+            line++;
+        }
+        return line;
+    }
+
+    /** Start offset of the 0-based line, or -1 if the index has not reached it yet. */
+    long offsetOfLine(long line) {
+        long k = line / CHECKPOINT_LINES;
+        long position;
+        synchronized (this) {
+            if (k >= checkpointCount) {
+                return indexComplete ? lastLineStart() : -1;
+            }
+            position = checkpoints[(int) k];
+        }
+        for (long i = k * CHECKPOINT_LINES; i < line && position < size; i++) {
+            long next = nextLineStart(position);
+            if (next >= size) {
+                break;
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    /** Offset just after the newline ending the line at {@code position}, or the file size. */
+    long nextLineStart(long position) {
+        byte[] buffer = new byte[LINE_SCAN_BUFFER];
+        while (position < size) {
+            int n = read(position, buffer, buffer.length);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /** Start of the line containing {@code position}. */
+    long lineStart(long position) {
+        byte[] buffer = new byte[LINE_SCAN_BUFFER];
+        long end = Math.min(position, size);
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.length);
+            int n = read(start, buffer, (int) (end - start));
+            for (int i = n - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /** Start of the line before the one starting at {@code start}. */
+    long previousLineStart(long start) {
+        return start <= 0 ? 0 : lineStart(start - 1);
+    }
+
+    /** Start of the last line that has any content. */
+    long lastLineStart() {
+        long end = size;
+        if (end > 0 && lastByte() == '\n') {
+            end--;
+        }
+        return lineStart(end);
+    }
+
+    /** The line starting at {@code start}, without its line terminator, capped at {@link #MAX_LINE_BYTES}. */
+    String lineText(long start) {
+        byte[] buffer = new byte[MAX_LINE_BYTES];
+        int n = read(start, buffer, buffer.length);
+        int end = 0;
+        while (end < n && buffer[end] != '\n') {
+            end++;
+        }
+        if (end > 0 && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return new String(buffer, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the next line after (or, backwards, before) the line starting at
+     * {@code from} that contains a match. Returns its start offset, or -1
+     * when there is none or the search was cancelled.
+     */
+    long search(Pattern pattern, long from, boolean forward, BooleanSupplier cancelled) {
+        return forward ? searchForward(pattern, nextLineStart(from), cancelled)
+                : searchBackward(pattern, from, cancelled);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    private long searchForward(Pattern pattern, long position, BooleanSupplier cancelled) {
+        // Decode a large block at a time and test it line by line; a line cut at
+        // the end of the block is read again at the start of the next one
+        byte[] buffer = new byte[SEARCH_BUFFER];
+        while (position < size && !cancelled.getAsBoolean()) {
+            int n = read(position, buffer, buffer.length);
+            if (n <= 0) {
+                break;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    if (matches(pattern, buffer, lineStart, i)) {
+                        return position + lineStart;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0 || position + n >= size) {
+                // One line longer than the buffer, or the last line of the file
+                if (lineStart < n && matches(pattern, buffer, lineStart, n)) {
+                    return position + lineStart;
+                }
+                lineStart = n;
+            }
+            position += lineStart;
+        }
+        return -1;
+    }
+
+    private long searchBackward(Pattern pattern, long from, BooleanSupplier cancelled) {
+        long position = from;
+        while (position > 0 && !cancelled.getAsBoolean()) {
+            position = previousLineStart(position);
+            if (pattern.matcher(lineText(position)).find()) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(Pattern pattern, byte[] buffer, int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return pattern.matcher(new String(buffer, start, end - start, StandardCharsets.UTF_8)).find();
+    }
+
+    private void buildIndex() {
+        byte[] buffer = new byte[SCAN_BUFFER];
+        int startGeneration;
+        long position;
+        long lines;
+        synchronized (this) {
+            startGeneration = generation;
+            position = indexedBytes;
+            lines = indexedLines;
+        }
+        while (!closed && position < size) {
+            int n = read(position, buffer, buffer.length);
+            if (n <= 0) {
+                break;
+            }
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    return;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n' && ++lines % CHECKPOINT_LINES == 0) {
+                        if (checkpointCount == checkpoints.length) {
+                            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+                        }
+                        checkpoints[checkpointCount++] = position + i + 1;
+                    }
+                }
+                position += n;
+                indexedLines = lines;
+                indexedBytes = position;
+            }
+        }
+        synchronized (this) {
+            if (!closed && generation == startGeneration && position >= size) {
+                indexComplete = true;
+            }
+        }
+    }
+
+    private byte lastByte() {
+        byte[] last = new byte[1];
+        return read(size - 1, last, 1) == 1 ? last[0] : 0;
+    }
+
+    /**
+     * Copies up to {@code length} bytes at {@code position} into the buffer.
+     * Returns the number copied, which is short at the end of the file.
+     */
+    private int read(long position, byte[] buffer, int length) {
+        if (position < 0) {
+            return 0;
+        }
+        int n = (int) Math.max(0, Math.min(length, size - position));
+        int done = 0;
+        try {
+            while (done < n) {
+                long offset = position + done;
+                MappedByteBuffer region = region((int) (offset / REGION_SIZE));
+                int inRegion = (int) (offset % REGION_SIZE);
+                int count = Math.min(n - done, region.limit() - inRegion);
+                if (count <= 0) {
+                    break;
+                }
+                region.get(inRegion, buffer, done, count);
+                done += count;
+            }
+        } catch (IOException | InternalError e) {
+            // Unreadable, or truncated under the mapping; stop here as if at the end of the file
+        }
+        return done;
+    }
+
+    private synchronized MappedByteBuffer region(int index) throws IOException {
+        if (index >= regions.length) {
+            regions = Arrays.copyOf(regions, index + 1);
+        }
+        if (regions[index] == null) {
+            long start = index * REGION_SIZE;
+            regions[index] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        }
+        return regions[index];
+    }
+}
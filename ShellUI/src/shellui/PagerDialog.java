@@ -0,0 +1,477 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Built-in pager window for {@code less}. Only the lines on screen are
+ * decoded and painted, straight from the memory-mapped {@link PagedFile};
+ * the top of the page is a byte offset, so scrolling anywhere in a huge file
+ * works before the line index has been built.
+ *
+ * Keys follow less: Space/f/PgDn and b/PgUp page, j/k/arrows scroll, g/G
+ * go to the start/end and Ng/NG or :N to line N, / and ? search forward and
+ * backward, n/N repeat the search, F follows a growing file and q closes.
+ */
+final class PagerDialog extends JDialog {
+
+    private static final int INSET = 4;
+    private static final int SCROLL_RANGE = 10_000;
+    private static final int HORIZONTAL_STEP = 8;
+    private static final int STATUS_INTERVAL_MS = 250;
+    private static final Color MATCH_COLOR = new Color(255, 230, 120);
+
+    private final PagedFile file;
+    private final PageView view = new PageView();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, SCROLL_RANGE);
+    private final JLabel status = new JLabel(" ");
+    private final JTextField prompt = new JTextField();
+    private final Timer statusTimer;
+
+    private long top;
+    private int leftColumn;
+    private boolean following;
+    private boolean updatingScrollBar;
+    private String count = "";
+    private String message = "";
+    private long pendingLine = -1;
+
+    // Search state; the search itself runs on a background thread
+    private Pattern searchPattern;
+    private boolean searchForward = true;
+    private char promptKind;
+    private volatile Thread searchThread;
+
+    private PagerDialog(Frame owner, PagedFile file) {
+        super(owner, file.path().getFileName() + " - less", false);
+        this.file = file;
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        status.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        status.setBorder(BorderFactory.createEmptyBorder(2, INSET, 2, INSET));
+        prompt.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        prompt.setVisible(false);
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(prompt, BorderLayout.SOUTH);
+
+        add(view, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+        add(bottom, BorderLayout.SOUTH);
+        setSize(900, 650);
+        setLocationRelativeTo(owner);
+
+        scrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBar) {
+                following = false;
+                top = file.lineStart(Math.round((double) e.getValue() / SCROLL_RANGE * file.size()));
+                pageChanged();
+            }
+        });
+        view.addMouseWheelListener(e -> scrollLines(e.getWheelRotation() * 3));
+        installKeys();
+        installPrompt();
+
+        statusTimer = new Timer(STATUS_INTERVAL_MS, e -> tick());
+        statusTimer.start();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                statusTimer.stop();
+                cancelSearch();
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                    // Nothing left to release
+                }
+            }
+        });
+    }
+
+    /** Opens the file in a new pager window. Returns immediately; EDT only. */
+    static void open(Frame owner, PagedFile file) {
+        PagerDialog dialog = new PagerDialog(owner, file);
+        file.startIndexing();
+        dialog.setVisible(true);
+        dialog.view.requestFocusInWindow();
+        dialog.updateStatus();
+    }
+
+    private void installKeys() {
+        view.setFocusable(true);
+        view.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN, KeyEvent.VK_ENTER -> scrollLines(repeat());
+                    case KeyEvent.VK_UP -> scrollLines(-repeat());
+                    case KeyEvent.VK_PAGE_DOWN -> scrollLines(repeat() * view.rows());
+                    case KeyEvent.VK_PAGE_UP -> scrollLines(-repeat() * view.rows());
+                    case KeyEvent.VK_HOME -> goToStart();
+                    case KeyEvent.VK_END -> goToEnd();
+                    case KeyEvent.VK_LEFT -> scrollColumns(-HORIZONTAL_STEP);
+                    case KeyEvent.VK_RIGHT -> scrollColumns(HORIZONTAL_STEP);
+                    case KeyEvent.VK_ESCAPE -> {
+                        if (searchThread != null || following) {
+                            cancelSearch();
+                            following = false;
+                            message = "";
+                            updateStatus();
+                        } else {
+                            dispose();
+                        }
+                    }
+                    default -> {
+                        return;
+                    }
+                }
+                count = "";
+                e.consume();
+            }
+
+            @Override
+            public void keyTyped(KeyEvent e) {
+                char c = e.getKeyChar();
+                if (Character.isDigit(c)) {
+                    if (count.length() < 12) {
+                        count += c;
+                    }
+                    updateStatus();
+                    return;
+                }
+                switch (c) {
+                    case ' ', 'f' -> scrollLines(repeat() * view.rows());
+                    case 'b' -> scrollLines(-repeat() * view.rows());
+                    case 'd' -> scrollLines(repeat() * view.rows() / 2);
+                    case 'u' -> scrollLines(-repeat() * view.rows() / 2);
+                    case 'j', 'e' -> scrollLines(repeat());
+                    case 'k', 'y' -> scrollLines(-repeat());
+                    case 'g', '<' -> {
+                        if (count.isEmpty()) {
+                            goToStart();
+                        } else {
+                            goToLine(repeat());
+                        }
+                    }
+                    case 'G', '>' -> {
+                        if (count.isEmpty()) {
+                            goToEnd();
+                        } else {
+                            goToLine(repeat());
+                        }
+                    }
+                    case '/', '?', ':' -> showPrompt(c);
+                    case 'n' -> repeatSearch(searchForward);
+                    case 'N' -> repeatSearch(!searchForward);
+                    case 'F' -> startFollowing();
+                    case 'q', 'Q' -> dispose();
+                    default -> {
+                        // Not a pager key
+                    }
+                }
+                count = "";
+            }
+        });
+    }
+
+    private void installPrompt() {
+        prompt.addActionListener(e -> {
+            String text = prompt.getText();
+            hidePrompt();
+            if (promptKind == ':') {
+                try {
+                    goToLine(Long.parseLong(text.trim()));
+                } catch (NumberFormatException ex) {
+                    message = "Not a line number: " + text;
+                    updateStatus();
+                }
+            } else if (!text.isEmpty()) {
+                startSearch(text, promptKind == '/');
+            } else if (searchPattern != null) {
+                repeatSearch(promptKind == '/');
+            }
+        });
+        prompt.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    hidePrompt();
+                    e.consume();
+                }
+            }
+        });
+    }
+
+    private void showPrompt(char kind) {
+        promptKind = kind;
+        prompt.setText("");
+        prompt.setToolTipText(kind == ':' ? "Line number" : kind == '/' ? "Search forward" : "Search backward");
+        prompt.setVisible(true);
+        message = kind == ':' ? "Go to line:" : kind + " (regular expression, Enter to search)";
+        updateStatus();
+        validate();
+        prompt.requestFocusInWindow();
+    }
+
+    private void hidePrompt() {
+        prompt.setVisible(false);
+        validate();
+        view.requestFocusInWindow();
+    }
+
+    private long repeat() {
+        return count.isEmpty() ? 1 : Long.parseLong(count);
+    }
+
+    private void scrollLines(long lines) {
+        following = false;
+        if (lines > 0) {
+            long last = lastTop();
+            for (long i = 0; i < lines && top < last; i++) {
+                top = file.nextLineStart(top);
+            }
+            top = Math.min(top, last);
+        } else {
+            for (long i = 0; i < -lines && top > 0; i++) {
+                top = file.previousLineStart(top);
+            }
+        }
+        pageChanged();
+    }
+
+    private void scrollColumns(int columns) {
+        leftColumn = Math.max(0, leftColumn + columns);
+        view.repaint();
+    }
+
+    private void goToStart() {
+        following = false;
+        top = 0;
+        pageChanged();
+    }
+
+    private void goToEnd() {
+        top = lastTop();
+        pageChanged();
+    }
+
+    /** Goes to a 1-based line; waits for the index when it has not got that far yet. */
+    private void goToLine(long line) {
+        following = false;
+        long offset = file.offsetOfLine(Math.max(0, line - 1));
+        if (offset < 0) {
+            pendingLine = line;
+            message = "Indexing to line " + line + " ...";
+            updateStatus();
+            return;
+        }
+        pendingLine = -1;
+        message = "";
+        top = offset;
+        pageChanged();
+    }
+
+    /** The top offset at which the last line of the file sits at the bottom of the page. */
+    private long lastTop() {
+        long position = file.lastLineStart();
+        for (int i = 1; i < view.rows() && position > 0; i++) {
+            position = file.previousLineStart(position);
+        }
+        return position;
+    }
+
+    private void startFollowing() {
+        following = true;
+        message = "Waiting for data... (Esc to stop)";
+        goToEnd();
+    }
+
+    private void startSearch(String text, boolean forward) {
+        try {
+            // Like less -i with smart case: an all lowercase pattern ignores case
+            int flags = text.equals(text.toLowerCase(Locale.ROOT)) ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            searchPattern = Pattern.compile(text, flags);
+        } catch (PatternSyntaxException e) {
+            message = "Invalid pattern: " + e.getDescription();
+            updateStatus();
+            return;
+        }
+        searchForward = forward;
+        repeatSearch(forward);
+    }
+
+    private void repeatSearch(boolean forward) {
+        if (searchPattern == null) {
+            message = "No previous search";
+            updateStatus();
+            return;
+        }
+        cancelSearch();
+        following = false;
+        Pattern pattern = searchPattern;
+        long from = top;
+        message = "Searching " + (forward ? "forward" : "backward") + " for " + pattern.pattern() + " ... (Esc to stop)";
+        updateStatus();
+
+        Thread[] self = new Thread[1];
+        self[0] = Thread.ofVirtual().name("less-search").unstarted(() -> {
+            long found = file.search(pattern, from, forward, () -> searchThread != self[0]);
+            SwingUtilities.invokeLater(() -> {
+                if (searchThread != self[0]) {
+                    return;
+                }
+                searchThread = null;
+                if (found < 0) {
+                    message = "Pattern not found";
+                } else {
+                    message = "";
+                    top = found;
+                }
+                pageChanged();
+            });
+        });
+        searchThread = self[0];
+        self[0].start();
+    }
+
+    private void cancelSearch() {
+        searchThread = null;
+    }
+
+    private void tick() {
+        if (following) {
+            try {
+                if (file.refresh()) {
+                    top = lastTop();
+                    pageChanged();
+                }
+            } catch (IOException e) {
+                following = false;
+                message = "Cannot read " + file.path() + ": " + e.getMessage();
+            }
+        }
+        if (pendingLine >= 0) {
+            goToLine(pendingLine);
+        }
+        updateStatus();
+    }
+
+    private void pageChanged() {
+        updatingScrollBar = true;
+        long size = file.size();
+        scrollBar.setValue(size == 0 ? 0 : (int) (top * SCROLL_RANGE / size));
+        updatingScrollBar = false;
+        view.repaint();
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        StringBuilder text = new StringBuilder(file.path().getFileName().toString());
+        long line = file.lineNumberOf(top);
+        text.append("  line ").append(line < 0 ? "?" : String.valueOf(line + 1));
+        if (file.isIndexComplete()) {
+            text.append('/').append(file.lineCount());
+        }
+        long size = file.size();
+        text.append(String.format("  %d%%", size == 0 ? 100 : top * 100 / size));
+        if (!file.isIndexComplete()) {
+            text.append(String.format("  (indexing %d%%)", size == 0 ? 100 : file.indexedBytes() * 100 / size));
+        }
+        if (following) {
+            text.append("  [follow]");
+        }
+        if (!count.isEmpty()) {
+            text.append("  ").append(count);
+        }
+        if (!message.isEmpty()) {
+            text.append("  ").append(message);
+        }
+        status.setText(text.toString());
+    }
+
+    /** Paints the lines from {@code top} down to the bottom of the window. */
+    private final class PageView extends JComponent {
+
+        private final Font font = new Font("Monospaced", Font.PLAIN, 12);
+
+        PageView() {
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setFont(font);
+        }
+
+        int rows() {
+            return Math.max(1, (getHeight() - 2 * INSET) / getFontMetrics(font).getHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            FontMetrics metrics = g.getFontMetrics(font);
+            int lineHeight = metrics.getHeight();
+            int charWidth = Math.max(1, metrics.charWidth('m'));
+            int columns = getWidth() / charWidth + 1;
+            g.setFont(font);
+
+            long position = top;
+            long size = file.size();
+            for (int row = 0; row < rows() && position < size; row++) {
+                String text = displayText(file.lineText(position));
+                int y = INSET + row * lineHeight;
+                for (int[] match : matches(text)) {
+                    int start = Math.max(match[0], leftColumn);
+                    int end = Math.min(match[1], leftColumn + columns);
+                    if (end > start) {
+                        g.setColor(MATCH_COLOR);
+                        g.fillRect(INSET + (start - leftColumn) * charWidth, y, (end - start) * charWidth, lineHeight);
+                    }
+                }
+                if (leftColumn < text.length()) {
+                    g.setColor(Color.BLACK);
+                    g.drawString(text.substring(leftColumn, Math.min(text.length(), leftColumn + columns)),
+                            INSET, y + metrics.getAscent());
+                }
+                position = file.nextLineStart(position);
+            }
+        }
+
+        private List<int[]> matches(String text) {
+            List<int[]> spans = new ArrayList<>();
+            if (searchPattern != null) {
+                Matcher matcher = searchPattern.matcher(text);
+                while (matcher.find() && matcher.end() > matcher.start()) {
+                    spans.add(new int[]{matcher.start(), matcher.end()});
+                }
+            }
+            return spans;
+        }
+
+        /** Tabs expanded and control characters shown as '.', so columns line up. */
+        private String displayText(String line) {
+            String text = OutputView.expandTabs(line);
+            StringBuilder shown = null;
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isISOControl(text.charAt(i))) {
+                    if (shown == null) {
+                        shown = new StringBuilder(text);
+                    }
+                    shown.setCharAt(i, '.');
+                }
+            }
+            return shown != null ? shown.toString() : text;
+        }
+    }
+}
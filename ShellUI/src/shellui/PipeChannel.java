@@ -0,0 +1,197 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded text pipe between two stages of a {@link Pipeline}. The writer's
+ * text is passed on in chunks of up to 16K chars through a queue of at most
+ * 64 chunks, so a fast producer waits for a slow consumer instead of
+ * buffering without limit. Small writes are coalesced while the reader is
+ * busy and passed on at once while it is waiting.
+ *
+ * When the reader stops early (head has its lines) it closes its end; the
+ * writer's next write then throws {@link Closed}, which ends the upstream
+ * stage quietly, the way SIGPIPE ends a process in a shell pipeline.
+ */
+final class PipeChannel implements OutputSink {
+
+    private static final int CHUNK_CHARS = 16 * 1024;
+    private static final int CAPACITY = 64;
+    private static final long POLL_MS = 50;
+    // Compared by identity; never equal to a real chunk
+    private static final String END = new String("");
+
+    /** Thrown to the writer once the reader has closed the pipe. */
+    static final class Closed extends RuntimeException {
+
+        Closed() {
+            super("Broken pipe", null, false, false);
+        }
+    }
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    // Guards pending; the writer may hold it while waiting for room in the queue
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final StringBuilder pending = new StringBuilder();
+    private volatile boolean readerClosed;
+    private boolean writerClosed;
+
+    // Reader state: the chunk being read and where the next line starts
+    private String chunk = "";
+    private int position;
+    private boolean ended;
+
+    /** Any stage output except errors; errors are shown by the stage itself. */
+    @Override
+    public void append(String text, String style) {
+        write(text);
+    }
+
+    void write(String text) {
+        if (readerClosed) {
+            throw new Closed();
+        }
+        writeLock.lock();
+        try {
+            pending.append(text);
+            if (pending.length() >= CHUNK_CHARS || queue.isEmpty()) {
+                flushPending();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Ends the stream; the reader sees end of input after the text written so far. */
+    void closeWriter() {
+        writeLock.lock();
+        try {
+            if (writerClosed) {
+                return;
+            }
+            writerClosed = true;
+            flushPending();
+            put(END);
+        } catch (Closed e) {
+            // Nobody is reading any more
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Stops reading; the writer fails with {@link Closed} from now on. */
+    void closeReader() {
+        readerClosed = true;
+        queue.clear();
+    }
+
+    /** The next line without its terminator, or null at end of input. */
+    String readLine() {
+        StringBuilder carry = null;
+        while (true) {
+            int newline = chunk.indexOf('\n', position);
+            if (newline >= 0) {
+                String line = carry == null
+                        ? chunk.substring(position, newline)
+                        : carry.append(chunk, position, newline).toString();
+                position = newline + 1;
+                return line;
+            }
+            if (position < chunk.length()) {
+                if (carry == null) {
+                    carry = new StringBuilder();
+                }
+                carry.append(chunk, position, chunk.length());
+            }
+            if (!nextChunk()) {
+                // A last line without a newline still counts
+                return carry == null || carry.isEmpty() ? null : carry.toString();
+            }
+        }
+    }
+
+    /** True if the next read returns without waiting for the writer. */
+    boolean ready() {
+        return position < chunk.length() || !queue.isEmpty() || ended;
+    }
+
+    /** The next piece of text as written, or null at end of input. */
+    String read() {
+        if (position < chunk.length()) {
+            String rest = chunk.substring(position);
+            position = chunk.length();
+            return rest;
+        }
+        return nextChunk() ? read() : null;
+    }
+
+    private boolean nextChunk() {
+        if (ended) {
+            return false;
+        }
+        String next;
+        try {
+            next = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            while (next == null) {
+                // The writer may be holding back a few small writes; take them rather than wait for more
+                takePending();
+                next = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            throw new CancellationException("Command cancelled");
+        }
+        if (next == END) {
+            ended = true;
+            chunk = "";
+            position = 0;
+            return false;
+        }
+        chunk = next;
+        position = 0;
+        return true;
+    }
+
+    private void takePending() {
+        // If the writer holds the lock it is busy putting chunks, and there is nothing to take
+        if (writeLock.tryLock()) {
+            try {
+                if (pending.length() > 0) {
+                    flushPending();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void flushPending() {
+        for (int start = 0; start < pending.length(); start += CHUNK_CHARS) {
+            put(pending.substring(start, Math.min(pending.length(), start + CHUNK_CHARS)));
+        }
+        pending.setLength(0);
+    }
+
+    private void put(String text) {
+        try {
+            while (!queue.offer(text, POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (readerClosed) {
+                    throw new Closed();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new CancellationException("Command cancelled");
+        }
+        if (readerClosed) {
+            queue.clear();
+            throw new Closed();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process versions of the commands that read a pipe: cat, grep, head,
+ * tail, wc, sort and uniq. Each reads its input line by line from a
+ * {@link PipeChannel}. Output into another pipe is written line by line;
+ * output to the screen is buffered and flushed every 16K chars and whenever
+ * the input has nothing more ready, so results appear as soon as they are
+ * known. All but sort and tail use constant
+ * memory; head stops reading, and so stops the stages before it, once it has
+ * its lines.
+ */
+final class PipeFilters {
+
+    private static final int FLUSH_CHARS = 16 * 1024;
+
+    /** One filter stage, ready to run. */
+    interface Filter {
+
+        void run(PipeChannel in, OutputSink out, CommandTask task);
+    }
+
+    private PipeFilters() {
+    }
+
+    /**
+     * The filter for a stage, or null if the command is not a filter or was
+     * given files to read, in which case it runs as an ordinary command.
+     */
+    static Filter parse(String command, List<String> args) {
+        return switch (command) {
+            case "cat" -> args.isEmpty() || args.equals(List.of("-")) ? PipeFilters::cat : null;
+            case "grep" -> grep(args);
+            case "head" -> head(args);
+            case "tail" -> tail(args);
+            case "wc" -> wc(args);
+            case "sort" -> sort(args);
+            case "uniq" -> uniq(args);
+            default -> null;
+        };
+    }
+
+    private static void cat(PipeChannel in, OutputSink out, CommandTask task) {
+        String text;
+        while ((text = in.read()) != null) {
+            checkCancelled(task);
+            out.append(text, "output");
+        }
+    }
+
+    private static Filter grep(List<String> args) {
+        boolean ignoreCase = false;
+        boolean invert = false;
+        boolean count = false;
+        boolean numbers = false;
+        String pattern = null;
+        for (String arg : args) {
+            if (pattern == null && arg.startsWith("-") && arg.length() > 1) {
+                for (char option : arg.substring(1).toCharArray()) {
+                    switch (option) {
+                        case 'i' -> ignoreCase = true;
+                        case 'v' -> invert = true;
+                        case 'c' -> count = true;
+                        case 'n' -> numbers = true;
+                        default -> throw new RuntimeException("grep: invalid option -- '" + option + "'");
+                    }
+                }
+            } else if (pattern == null) {
+                pattern = arg;
+            } else {
+                // grep with files ignores its input
+                return null;
+            }
+        }
+        if (pattern == null) {
+            throw new RuntimeException("grep requires a pattern");
+        }
+        boolean literal = GrepEngine.isLiteral(pattern);
+        String needle = pattern;
+        Pattern regex = literal && !ignoreCase ? null
+                : Pattern.compile(literal ? Pattern.quote(pattern) : pattern,
+                        ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        boolean invertMatch = invert;
+        boolean countOnly = count;
+        boolean lineNumbers = numbers;
+        return (in, out, task) -> {
+            Matcher matcher = regex == null ? null : regex.matcher("");
+            Output output = new Output(out, in);
+            long lineNumber = 0;
+            long matches = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                checkCancelled(task);
+                lineNumber++;
+                boolean found = matcher == null ? line.contains(needle) : matcher.reset(line).find();
+                if (found != invertMatch) {
+                    matches++;
+                    if (!countOnly) {
+                        if (lineNumbers) {
+                            output.text.append(lineNumber).append(':');
+                        }
+                        output.line(line);
+                    }
+                }
+                output.flushIfIdle();
+            }
+            if (countOnly) {
+                output.line(Long.toString(matches));
+            }
+            output.flush();
+        };
+    }
+
+    private static Filter head(List<String> args) {
+        long[] lines = {10};
+        if (!parseLineCount(args, "head", lines)) {
+            return null;
+        }
+        return (in, out, task) -> {
+            Output output = new Output(out, in);
+            String line;
+            for (long i = 0; i < lines[0] && (line = in.readLine()) != null; i++) {
+                checkCancelled(task);
+                output.line(line);
+                output.flushIfIdle();
+            }
+            output.flush();
+            // Done: stop everything that is still writing into this stage
+            in.closeReader();
+        };
+    }
+
+    private static Filter tail(List<String> args) {
+        long[] lines = {10};
+        if (!parseLineCount(args, "tail", lines)) {
+            return null;
+        }
+        return (in, out, task) -> {
+            ArrayDeque<String> last = new ArrayDeque<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                checkCancelled(task);
+                last.addLast(line);
+                if (last.size() > lines[0]) {
+                    last.removeFirst();
+                }
+            }
+            Output output = new Output(out, in);
+            for (String kept : last) {
+                output.line(kept);
+            }
+            output.flush();
+        };
+    }
+
+    private static Filter wc(List<String> args) {
+        int parsed = 0;
+        for (String arg : args) {
+            if (!arg.startsWith("-") || arg.length() < 2) {
+                return null;
+            }
+            for (char option : arg.substring(1).toCharArray()) {
+                switch (option) {
+                    case 'l' -> parsed |= WcEngine.LINES;
+                    case 'w' -> parsed |= WcEngine.WORDS;
+                    case 'm' -> parsed |= WcEngine.CHARS;
+                    case 'c' -> parsed |= WcEngine.BYTES;
+                    default -> throw new RuntimeException("wc: invalid option -- '" + option + "'");
+                }
+            }
+        }
+        int fields = parsed != 0 ? parsed : WcEngine.LINES | WcEngine.WORDS | WcEngine.CHARS;
+        return (in, out, task) -> {
+            long lines = 0;
+            long words = 0;
+            long chars = 0;
+            long bytes = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                checkCancelled(task);
+                lines++;
+                chars += line.codePointCount(0, line.length()) + 1;
+                bytes += utf8Length(line) + 1;
+                boolean inWord = false;
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    boolean space = c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\r';
+                    if (!space && !inWord) {
+                        words++;
+                    }
+                    inWord = !space;
+                }
+            }
+            WcEngine.Counts counts = new WcEngine.Counts(lines, words, chars, bytes, false, false);
+            // Like wc reading stdin: no file name, and no padding before a single count
+            String result = WcEngine.format(counts, fields, "");
+            out.append((Integer.bitCount(fields) == 1 ? result.strip() : result.stripTrailing()) + "\n", "output");
+        };
+    }
+
+    private static Filter sort(List<String> args) {
+        boolean reverse = false;
+        boolean numeric = false;
+        boolean unique = false;
+        boolean foldCase = false;
+        for (String arg : args) {
+            if (!arg.startsWith("-") || arg.length() < 2) {
+                return null;
+            }
+            for (char option : arg.substring(1).toCharArray()) {
+                switch (option) {
+                    case 'r' -> reverse = true;
+                    case 'n' -> numeric = true;
+                    case 'u' -> unique = true;
+                    case 'f' -> foldCase = true;
+                    default -> throw new RuntimeException("sort: invalid option -- '" + option + "'");
+                }
+            }
+        }
+        Comparator<String> order = numeric
+                ? Comparator.comparingDouble(PipeFilters::leadingNumber).thenComparing(Comparator.naturalOrder())
+                : foldCase ? String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder())
+                : Comparator.naturalOrder();
+        Comparator<String> comparator = reverse ? order.reversed() : order;
+        boolean uniqueLines = unique;
+        return (in, out, task) -> {
+            // Sorting needs all of its input; this is the one stage whose memory grows with it
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                checkCancelled(task);
+                lines.add(line);
+            }
+            lines.sort(comparator);
+            Output output = new Output(out, in);
+            String previous = null;
+            for (String sorted : lines) {
+                if (!uniqueLines || previous == null || comparator.compare(previous, sorted) != 0) {
+                    output.line(sorted);
+                }
+                previous = sorted;
+            }
+            output.flush();
+        };
+    }
+
+    private static Filter uniq(List<String> args) {
+        boolean count = false;
+        for (String arg : args) {
+            if (!arg.equals("-c")) {
+                return null;
+            }
+            count = true;
+        }
+        boolean withCounts = count;
+        return (in, out, task) -> {
+            Output output = new Output(out, in);
+            String previous = null;
+            long repeats = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                checkCancelled(task);
+                if (line.equals(previous)) {
+                    repeats++;
+                    continue;
+                }
+                if (previous != null) {
+                    output.counted(previous, repeats, withCounts);
+                    output.flushIfIdle();
+                }
+                previous = line;
+                repeats = 1;
+            }
+            if (previous != null) {
+                output.counted(previous, repeats, withCounts);
+            }
+            output.flush();
+        };
+    }
+
+    /** Reads -n N, -nN or -N into {@code lines[0]}; false if there are file operands. */
+    private static boolean parseLineCount(List<String> args, String command, long[] lines) {
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            String count;
+            if (arg.equals("-n") && i + 1 < args.size()) {
+                count = args.get(++i);
+            } else if (arg.startsWith("-n")) {
+                count = arg.substring(2);
+            } else if (arg.startsWith("-") && arg.length() > 1) {
+                count = arg.substring(1);
+            } else {
+                return false;
+            }
+            try {
+                lines[0] = Long.parseLong(count);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(command + ": invalid number of lines: " + count);
+            }
+        }
+        return true;
+    }
+
+    private static double leadingNumber(String line) {
+        int start = 0;
+        while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        if (end < line.length() && (line.charAt(end) == '-' || line.charAt(end) == '+')) {
+            end++;
+        }
+        while (end < line.length() && (Character.isDigit(line.charAt(end)) || line.charAt(end) == '.')) {
+            end++;
+        }
+        try {
+            return Double.parseDouble(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int utf8Length(String line) {
+        int length = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) >= 0x80) {
+                return line.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return length;
+    }
+
+    private static void checkCancelled(CommandTask task) {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    /** Output buffer of a filter. */
+    private static final class Output {
+
+        final StringBuilder text = new StringBuilder();
+        final OutputSink out;
+        final PipeChannel in;
+
+        Output(OutputSink out, PipeChannel in) {
+            this.out = out;
+            this.in = in;
+        }
+
+        void line(String line) {
+            text.append(line).append('\n');
+            // A pipe coalesces writes itself and must not hold back lines a stage like head is waiting for
+            if (text.length() >= FLUSH_CHARS || out instanceof PipeChannel) {
+                flush();
+            }
+        }
+
+        void counted(String line, long count, boolean withCount) {
+            if (withCount) {
+                String number = Long.toString(count);
+                text.append("       ", Math.min(7, number.length()), 7).append(number).append(' ');
+            }
+            line(line);
+        }
+
+        /** Passes on what is buffered if the next read would wait, so slow input still streams. */
+        void flushIfIdle() {
+            if (text.length() > 0 && !in.ready()) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (text.length() > 0) {
+                out.append(text.toString(), "output");
+                text.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs a command line with {@code |} as concurrent stages connected by
+ * bounded {@link PipeChannel}s.
+ *
+ * <ul>
+ * <li>cat, grep, head, tail, wc, sort and uniq reading the pipe run as
+ * in-process {@link PipeFilters}.</li>
+ * <li>Other built-in commands run as usual on a thread of their own, with
+ * their output sent into the next pipe instead of to the screen.</li>
+ * <li>Runs of external programs are started together with
+ * {@link ProcessBuilder#startPipeline}, so the operating system connects
+ * them directly; their ends are pumped from and into the adjacent pipes.</li>
+ * </ul>
+ *
+ * The last stage may be redirected: built-in stages then write into a
+ * {@link FileSink}, and external programs are given the file with
+ * {@link ProcessBuilder#redirectOutput}, so the output never passes through
+ * this process at all.
+ *
+ * Errors of every stage go to the screen. A stage that stops reading early
+ * closes its input pipe, and the stage writing into it then ends as well,
+ * so {@code cat huge.log | grep ERROR | head} stops reading the file once
+ * head has its ten lines.
+ */
+final class Pipeline {
+
+    /** Runs built-in commands; the shell's {@code executeSystemCommand}. */
+    interface Builtins {
+
+        boolean isBuiltin(String command);
+
+        String run(String command, String arguments) throws Exception;
+    }
+
+    // The sink a stage's output goes to, for the thread running the stage
+    private static final ThreadLocal<OutputSink> STAGE_OUTPUT = new ThreadLocal<>();
+
+    private record Stage(String command, String arguments, List<String> words) {
+    }
+
+    private final List<Stage> stages;
+    private final Builtins builtins;
+    private final File workingDirectory;
+    private final boolean windows;
+    private final OutputSink screen;
+    private final OutputSink errors;
+    private final Redirection redirection;
+    private final CommandTask task;
+    // Stage threads add their helpers here while run() is joining
+    private final Queue<Thread> threads = new ConcurrentLinkedQueue<>();
+    private final List<FileSink> files = new ArrayList<>();
+
+    /**
+     * @param screen where the output of the last stage goes
+     * @param errors where error messages of all stages go
+     * @param redirection redirections of the last stage, already removed from its text
+     */
+    Pipeline(List<String> stages, Builtins builtins, File workingDirectory, boolean windows, OutputSink screen,
+            OutputSink errors, Redirection redirection, CommandTask task) {
+        this.stages = new ArrayList<>();
+        for (String stage : stages) {
+            List<String> words = split(stage);
+            String arguments = stage.substring(stage.indexOf(words.get(0)) + words.get(0).length()).trim();
+            this.stages.add(new Stage(words.get(0), arguments, words.subList(1, words.size())));
+        }
+        this.builtins = builtins;
+        this.workingDirectory = workingDirectory;
+        this.windows = windows;
+        this.screen = screen;
+        this.errors = errors;
+        this.redirection = redirection;
+        this.task = task;
+    }
+
+    /**
+     * The stages of a command line split at {@code |} outside quotes, or a
+     * single element if it has no pipe.
+     */
+    static List<String> stages(String commandLine) {
+        List<String> stages = new ArrayList<>();
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < commandLine.length(); i++) {
+            char c = commandLine.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '|') {
+                stages.add(commandLine.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        stages.add(commandLine.substring(start).trim());
+        if (stages.size() > 1 && stages.stream().anyMatch(String::isEmpty)) {
+            throw new RuntimeException("syntax error near unexpected token `|'");
+        }
+        return stages;
+    }
+
+    /** The sink for output of the stage running on this thread, or null outside a pipeline. */
+    static OutputSink stageOutput() {
+        return STAGE_OUTPUT.get();
+    }
+
+    /** Runs all stages and waits for them to finish. */
+    void run() throws InterruptedException, IOException {
+        try {
+            startAll();
+            Thread thread;
+            while ((thread = threads.poll()) != null) {
+                thread.join();
+            }
+        } finally {
+            for (FileSink file : files) {
+                file.close();
+            }
+        }
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Command cancelled");
+        }
+    }
+
+    private void startAll() throws IOException {
+        PipeChannel input = null;
+        int i = 0;
+        while (i < stages.size()) {
+            Stage stage = stages.get(i);
+            boolean hasInput = i > 0;
+            PipeFilters.Filter filter = hasInput ? PipeFilters.parse(stage.command(), stage.words()) : null;
+            if (filter != null || builtins.isBuiltin(stage.command())) {
+                if (i == stages.size() - 1) {
+                    startLastStage(stage, filter, input);
+                    return;
+                }
+                PipeChannel output = new PipeChannel();
+                startStage(stage, filter, input, output, output, errors);
+                input = output;
+                i++;
+            } else {
+                // A run of external programs becomes one operating-system pipeline
+                int end = i + 1;
+                while (end < stages.size() && !builtins.isBuiltin(stages.get(end).command())
+                        && PipeFilters.parse(stages.get(end).command(), stages.get(end).words()) == null) {
+                    end++;
+                }
+                PipeChannel output = end == stages.size() ? null : new PipeChannel();
+                startExternal(stages.subList(i, end), input, output);
+                input = output;
+                i = end;
+            }
+        }
+    }
+
+    /** The last in-process stage writes to the screen or to its redirection files. */
+    private void startLastStage(Stage stage, PipeFilters.Filter filter, PipeChannel input) throws IOException {
+        OutputSink stageErrors = errors;
+        if (redirection.errors() != null) {
+            stageErrors = open(redirection.errors(), redirection.appendErrors(), null);
+        }
+        OutputSink target = screen;
+        if (redirection.output() != null) {
+            target = open(redirection.output(), redirection.appendOutput(),
+                    redirection.errorsToOutput() ? null : stageErrors);
+            if (redirection.errorsToOutput()) {
+                stageErrors = target;
+            }
+        } else if (redirection.errorsToOutput()) {
+            stageErrors = screen;
+        }
+        startStage(stage, filter, input, null, target, stageErrors);
+    }
+
+    private FileSink open(Path file, boolean append, OutputSink fileErrors) throws IOException {
+        FileSink sink = FileSink.open(file, append, fileErrors);
+        files.add(sink);
+        return sink;
+    }
+
+    /**
+     * @param output the pipe to the next stage, closed when this one ends; null for the last stage
+     * @param target where the stage writes: {@code output}, the screen or a file
+     */
+    private void startStage(Stage stage, PipeFilters.Filter filter, PipeChannel input, PipeChannel output,
+            OutputSink target, OutputSink stageErrors) {
+        fork(stage, () -> {
+            if (filter != null) {
+                filter.run(input, target, task);
+                return;
+            }
+            // A built-in that does not read the pipe
+            if (input != null) {
+                input.closeReader();
+            }
+            // A file sink passes errors on by itself
+            STAGE_OUTPUT.set(target instanceof FileSink ? target : routed(target, stageErrors));
+            try {
+                String result = builtins.run(stage.command(), stage.arguments());
+                if (result != null && !result.isEmpty()) {
+                    target.append(result.endsWith("\n") ? result : result + "\n", "output");
+                }
+            } catch (Exception e) {
+                if (e instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new RuntimeException(e.getMessage(), e);
+            } finally {
+                STAGE_OUTPUT.remove();
+            }
+        }, input, output, stageErrors);
+    }
+
+    private void startExternal(List<Stage> group, PipeChannel input, PipeChannel output) {
+        List<ProcessBuilder> builders = new ArrayList<>();
+        for (Stage stage : group) {
+            List<String> command = new ArrayList<>();
+            if (windows) {
+                command.add("cmd.exe");
+                command.add("/c");
+                command.add(stage.command() + (stage.arguments().isEmpty() ? "" : " " + stage.arguments()));
+            } else {
+                command.add(stage.command());
+                command.addAll(stage.words());
+            }
+            builders.add(new ProcessBuilder(command).directory(workingDirectory));
+        }
+        if (output == null) {
+            // The last programs write straight to the redirection files; their streams here are then empty
+            ProcessBuilder last = builders.get(builders.size() - 1);
+            if (redirection.output() != null) {
+                last.redirectOutput(redirect(redirection.output(), redirection.appendOutput()));
+            }
+            if (redirection.errors() != null) {
+                last.redirectError(redirect(redirection.errors(), redirection.appendErrors()));
+            } else if (redirection.errorsToOutput()) {
+                last.redirectErrorStream(true);
+            }
+        }
+        Stage first = group.get(0);
+        fork(first, () -> {
+            List<Process> processes;
+            CommandMetrics.Timing spawn = CommandMetrics.time(CommandMetrics.Phase.SPAWN);
+            try {
+                processes = ProcessBuilder.startPipeline(builders);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            spawn.stop();
+            for (Process process : processes) {
+                if (task != null) {
+                    task.track(process);
+                }
+                pumpErrors(process);
+            }
+            Process head = processes.get(0);
+            Process tail = processes.get(processes.size() - 1);
+            if (input != null) {
+                feed(input, head);
+            } else {
+                closeQuietly(head.getOutputStream());
+            }
+            try (Reader reader = CommandMetrics.reader(tail.getInputStream(), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    (output != null ? output : screen).append(new String(buffer, 0, read), "output");
+                }
+            } catch (PipeChannel.Closed e) {
+                // The next stage is done; end these programs like SIGPIPE would
+                processes.forEach(Process::destroy);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            try {
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+            } catch (InterruptedException e) {
+                throw new CancellationException("Command cancelled");
+            }
+        }, null, output, errors);
+    }
+
+    private static ProcessBuilder.Redirect redirect(Path file, boolean append) {
+        return append ? ProcessBuilder.Redirect.appendTo(file.toFile()) : ProcessBuilder.Redirect.to(file.toFile());
+    }
+
+    /** Copies the pipe into the first program's stdin on a thread of its own. */
+    private void feed(PipeChannel input, Process process) {
+        Thread feeder = task != null
+                ? task.fork("pipe-feed", () -> copy(input, process))
+                : Thread.ofVirtual().name("pipe-feed").start(() -> copy(input, process));
+        threads.add(feeder);
+    }
+
+    private static void copy(PipeChannel input, Process process) {
+        try (Writer writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = input.read()) != null) {
+                writer.write(text);
+                if (!input.ready()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The program stopped reading; stop the stages before it
+        } catch (CancellationException e) {
+            process.destroy();
+        } finally {
+            input.closeReader();
+        }
+    }
+
+    private void pumpErrors(Process process) {
+        Runnable pump = () -> {
+            try (Reader reader = new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    errors.append(new String(buffer, 0, read), "error");
+                }
+            } catch (IOException e) {
+                // Process gone
+            }
+        };
+        threads.add(task != null ? task.fork("pipe-stderr", pump) : Thread.ofVirtual().start(pump));
+    }
+
+    /** Runs a stage on its own thread; whatever happens, its pipes are closed when it ends. */
+    private void fork(Stage stage, Runnable body, PipeChannel input, PipeChannel output, OutputSink stageErrors) {
+        Runnable guarded = () -> {
+            try {
+                body.run();
+            } catch (PipeChannel.Closed e) {
+                // The next stage stopped reading; that is a normal way to end
+            } catch (CancellationException e) {
+                // Reported once for the whole pipeline
+            } catch (RuntimeException e) {
+                if (!isPipeClosed(e)) {
+                    stageErrors.append(stage.command() + ": " + e.getMessage() + "\n", "error");
+                }
+            } finally {
+                if (input != null) {
+                    input.closeReader();
+                }
+                if (output != null) {
+                    output.closeWriter();
+                }
+            }
+        };
+        threads.add(task != null ? task.fork("pipe-" + stage.command(), guarded)
+                : Thread.ofVirtual().name("pipe-" + stage.command()).start(guarded));
+    }
+
+    /** Stage output for a built-in: errors to the error sink, everything else to the target. */
+    private static OutputSink routed(OutputSink target, OutputSink stageErrors) {
+        return (text, style) -> {
+            if (style.equals("error")) {
+                stageErrors.append(text, style);
+            } else {
+                target.append(text, style);
+            }
+        };
+    }
+
+    /** Broken pipes may come back wrapped, e.g. from a fork-join task. */
+    private static boolean isPipeClosed(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PipeChannel.Closed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /** Words of a stage, honouring single and double quotes. */
+    static List<String> split(String stage) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < stage.length(); i++) {
+            char c = stage.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        if (words.isEmpty()) {
+            throw new RuntimeException("syntax error near unexpected token `|'");
+        }
+        return words;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The {@code >}, {@code >>}, {@code 2>}, {@code 2>>} and {@code 2>&1}
+ * redirections of a command, taken out of its text. Only redirections
+ * outside quotes count, so {@code grep ">" notes.txt} still searches for
+ * a {@code >}.
+ */
+final class Redirection {
+
+    static final Redirection NONE = new Redirection(null, false, null, false, false);
+
+    private final Path output;
+    private final boolean appendOutput;
+    private final Path errors;
+    private final boolean appendErrors;
+    private final boolean errorsToOutput;
+
+    private Redirection(Path output, boolean appendOutput, Path errors, boolean appendErrors,
+            boolean errorsToOutput) {
+        this.output = output;
+        this.appendOutput = appendOutput;
+        this.errors = errors;
+        this.appendErrors = appendErrors;
+        this.errorsToOutput = errorsToOutput;
+    }
+
+    /** A command's text without its redirections, and the redirections. */
+    record Parsed(String command, Redirection redirection) {
+    }
+
+    /** Splits the redirections off a command; relative file names are resolved against {@code directory}. */
+    static Parsed parse(String command, File directory) {
+        StringBuilder rest = new StringBuilder();
+        Path output = null;
+        boolean appendOutput = false;
+        Path errors = null;
+        boolean appendErrors = false;
+        boolean errorsToOutput = false;
+        char quote = 0;
+        int i = 0;
+        while (i < command.length()) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                rest.append(c);
+                i++;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                quote = c;
+                rest.append(c);
+                i++;
+                continue;
+            }
+            boolean atWordStart = i == 0 || Character.isWhitespace(command.charAt(i - 1));
+            boolean toErrors = c == '2' && atWordStart && i + 1 < command.length() && command.charAt(i + 1) == '>';
+            if (c != '>' && !toErrors) {
+                rest.append(c);
+                i++;
+                continue;
+            }
+            i += toErrors ? 2 : 1;
+            boolean append = i < command.length() && command.charAt(i) == '>';
+            if (append) {
+                i++;
+            }
+            if (toErrors && !append && command.startsWith("&1", i)) {
+                errorsToOutput = true;
+                i += 2;
+                continue;
+            }
+            // The file name: the next word, which may be quoted
+            while (i < command.length() && Character.isWhitespace(command.charAt(i))) {
+                i++;
+            }
+            StringBuilder name = new StringBuilder();
+            char nameQuote = 0;
+            while (i < command.length()) {
+                char n = command.charAt(i);
+                if (nameQuote != 0) {
+                    if (n == nameQuote) {
+                        nameQuote = 0;
+                    } else {
+                        name.append(n);
+                    }
+                } else if (n == '"' || n == '\'') {
+                    nameQuote = n;
+                } else if (Character.isWhitespace(n) || n == '>') {
+                    break;
+                } else {
+                    name.append(n);
+                }
+                i++;
+            }
+            if (name.isEmpty()) {
+                throw new RuntimeException("syntax error near unexpected token `"
+                        + (i < command.length() ? command.charAt(i) : "newline") + "'");
+            }
+            Path file = resolve(name.toString(), directory);
+            if (toErrors) {
+                errors = file;
+                appendErrors = append;
+                errorsToOutput = false;
+            } else {
+                output = file;
+                appendOutput = append;
+            }
+        }
+        Redirection redirection = output == null && errors == null && !errorsToOutput ? NONE
+                : new Redirection(output, appendOutput, errors, appendErrors, errorsToOutput);
+        return new Parsed(rest.toString().trim(), redirection);
+    }
+
+    private static Path resolve(String name, File directory) {
+        if (name.equals("~") || name.startsWith("~/")) {
+            name = System.getProperty("user.home") + name.substring(1);
+        }
+        Path path = Path.of(name);
+        return path.isAbsolute() ? path : directory.toPath().resolve(path);
+    }
+
+    boolean isNone() {
+        return this == NONE;
+    }
+
+    /** The file for standard output, or null. */
+    Path output() {
+        return output;
+    }
+
+    boolean appendOutput() {
+        return appendOutput;
+    }
+
+    /** The file for error output, or null. */
+    Path errors() {
+        return errors;
+    }
+
+    boolean appendErrors() {
+        return appendErrors;
+    }
+
+    /** True for {@code 2>&1}: errors go wherever the output goes. */
+    boolean errorsToOutput() {
+        return errorsToOutput;
+    }
+
+    /** Size of the output file now, to tell afterwards how much was written; 0 when it is truncated. */
+    long outputStart() {
+        if (output == null || !appendOutput) {
+            return 0;
+        }
+        try {
+            return Files.exists(output) ? Files.size(output) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** The line shown instead of the output: bytes written, where, and how long it took. */
+    String summary(long outputStart, long startNanos) {
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        long written;
+        try {
+            written = Files.size(output) - outputStart;
+        } catch (IOException e) {
+            written = 0;
+        }
+        return String.format("%s %,d bytes to %s in %,d ms%n", appendOutput ? "Appended" : "Wrote", written, output,
+                millis);
+    }
+}
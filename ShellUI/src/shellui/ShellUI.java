@@ -9,8 +9,6 @@ import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.*;
 import java.util.List;
 
@@ -19,27 +17,33 @@ public class ShellUI extends JFrame {
     // UI Components
     private JComboBox<String> commandComboBox;
     private JTextField argumentsField;
-    private JTextPane outputArea;
+    private OutputView outputArea;
     private JButton executeButton;
     private JButton clearButton;
+    private JButton cancelButton;
     private JLabel currentDirLabel;
 
     // Application state
-    private File currentDirectory;
-    private boolean isWindows;
-    private List<String> commandHistory;
+    private CommandEngine engine;
+    private HistoryStore history;
+    private HistorySearchBar historySearchBar;
     private int historyIndex = -1;
+    // What was in the fields when Ctrl+R was pressed, restored if the search is cancelled
+    private String commandBeforeSearch = "";
     private StyleContext styleContext;
-    private StyledDocument document;
+    private OutputPipeline outputPipeline;
+    private CommandTask runningTask;
+    private Job foregroundJob;
+    private final JobTable jobs = new JobTable();
+    private JLabel jobStatusLabel;
+    private final CompletionIndex completionIndex = new CompletionIndex();
 
-    // Supported commands
-    private static final String[] SUPPORTED_COMMANDS = {
-        "ls", "pwd", "mkdir", "cd", "man", "touch", "cp",
-        "mv", "rm", "rmdir", "cat", "less", "head", "grep",
-        "wc", "chmod", "chown", "chgrp", "addUser", "addGroup",
-        "ps", "quotacheck", "du", "gzip", "file", "find",
-        "locate", "wget", "accessrights", "history", "clear"
-    };
+    // Lines kept in the output view; override with -Dshellui.scrollback=<lines>
+    private static final int DEFAULT_SCROLLBACK_LINES = 100_000;
+    private static final int MAX_COMPLETIONS_SHOWN = 50;
+
+    // Commands that may be given while a foreground command is running
+    private static final Set<String> JOB_COMMANDS = Set.of("jobs", "kill");
 
     public ShellUI() {
         super("Shell Interface - CPIT260 Final Project");
@@ -50,9 +54,20 @@ public class ShellUI extends JFrame {
     }
 
     private void initializeApplication() {
-        isWindows = System.getProperty("os.name").toLowerCase().contains("win");
-        currentDirectory = new File(System.getProperty("user.home"));
-        commandHistory = new ArrayList<>();
+        // The pane is created later, so the engine's console looks it up on each call
+        engine = new CommandEngine(new File(System.getProperty("user.home")), new OutputSink() {
+            @Override
+            public void append(String text, String style) {
+                outputPipeline.append(text, style);
+            }
+
+            @Override
+            public void append(StyledText text) {
+                outputPipeline.append(text);
+            }
+        }, new Frontend());
+        completionIndex.prefetch(engine.currentDirectory().toPath());
+        history = HistoryStore.open(HistoryStore.defaultLocation());
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(900, 650);
@@ -61,24 +76,27 @@ public class ShellUI extends JFrame {
 
     private void setupUIComponents() {
         // Command selection combo box
-        commandComboBox = new JComboBox<>(SUPPORTED_COMMANDS);
+        commandComboBox = new JComboBox<>(CommandEngine.SUPPORTED_COMMANDS);
         commandComboBox.setEditable(true);
         ((JTextComponent) commandComboBox.getEditor().getEditorComponent()).setText("");
 
         // Arguments input field
         argumentsField = new JTextField(30);
 
-        // Output area with styling support
-        outputArea = new JTextPane();
-        outputArea.setEditable(false);
+        // Output area with styling support; only the visible lines are rendered
+        styleContext = new StyleContext();
+        outputArea = new OutputView(styleContext,
+                Integer.getInteger("shellui.scrollback", DEFAULT_SCROLLBACK_LINES));
         outputArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
 
         // Action buttons
         executeButton = new JButton("Execute");
         clearButton = new JButton("Clear Output");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
 
         // Current directory display
-        currentDirLabel = new JLabel("Current Directory: " + currentDirectory.getAbsolutePath());
+        currentDirLabel = new JLabel("Current Directory: " + engine.currentDirectory().getAbsolutePath());
 
         // Layout the components
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -88,18 +106,45 @@ public class ShellUI extends JFrame {
         topPanel.add(argumentsField);
         topPanel.add(executeButton);
         topPanel.add(clearButton);
+        topPanel.add(cancelButton);
 
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.add(topPanel, BorderLayout.NORTH);
         mainPanel.add(new JScrollPane(outputArea), BorderLayout.CENTER);
-        mainPanel.add(currentDirLabel, BorderLayout.SOUTH);
+        historySearchBar = new HistorySearchBar(history, new HistorySearchBar.Listener() {
+            @Override
+            public void preview(String command) {
+                showCommand(command);
+            }
+
+            @Override
+            public void accept(String command, boolean execute) {
+                showCommand(command);
+                argumentsField.requestFocusInWindow();
+                if (execute) {
+                    executeCommand();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                showCommand(commandBeforeSearch);
+                argumentsField.requestFocusInWindow();
+            }
+        });
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(historySearchBar, BorderLayout.NORTH);
+        jobStatusLabel = new JLabel();
+        JPanel statusPanel = new JPanel(new BorderLayout(12, 0));
+        statusPanel.add(currentDirLabel, BorderLayout.CENTER);
+        statusPanel.add(jobStatusLabel, BorderLayout.EAST);
+        bottomPanel.add(statusPanel, BorderLayout.SOUTH);
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
 
         add(mainPanel);
     }
 
     private void configureStyles() {
-        styleContext = new StyleContext();
-        document = outputArea.getStyledDocument();
 
         // Default style
         Style defaultStyle = styleContext.addStyle("default", null);
@@ -123,6 +168,8 @@ public class ShellUI extends JFrame {
         // Directory style (green)
         Style directoryStyle = styleContext.addStyle("directory", defaultStyle);
         StyleConstants.setForeground(directoryStyle, new Color(0, 128, 0));
+
+        outputPipeline = new OutputPipeline(outputArea);
     }
 
     private void setupEventHandlers() {
@@ -139,9 +186,18 @@ public class ShellUI extends JFrame {
             @Override
             public void keyPressed(KeyEvent e) {
                 // Use Ctrl+Space for auto-completion 
-                if (e.getKeyCode() == KeyEvent.VK_SPACE && e.isControlDown()) {
+                if (isCancelKey(e)) {
+                    cancelCommand();
+                    e.consume();
+                } else if (isBackgroundKey(e)) {
+                    backgroundForegroundJob();
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_SPACE && e.isControlDown()) {
                     autoCompletePath();
                     e.consume(); // Prevent the space from being typed
+                } else if (e.getKeyCode() == KeyEvent.VK_R && e.isControlDown()) {
+                    startHistorySearch();
+                    e.consume();
                 } // Keep other key bindings (e.g., Up/Down for history)
                 else if (e.getKeyCode() == KeyEvent.VK_UP || e.getKeyCode() == KeyEvent.VK_DOWN) {
                     navigateHistory(e.getKeyCode() == KeyEvent.VK_UP);
@@ -156,11 +212,36 @@ public class ShellUI extends JFrame {
         // Clear button action
         clearButton.addActionListener(e -> clearOutput());
 
+        // Cancel button action
+        cancelButton.addActionListener(e -> cancelCommand());
+
+        // Do not leave child processes behind when the window is closed
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                cancelCommand();
+                for (Job job : jobs.all()) {
+                    job.task().cancel();
+                }
+                engine.close();
+            }
+        });
+
         // Command selection change
         commandComboBox.addActionListener(e -> updateCommandHint());
     }
 
     private void handleKeyEvents(KeyEvent e, JComponent source) {
+        if (isCancelKey(e)) {
+            cancelCommand();
+            e.consume();
+            return;
+        }
+        if (isBackgroundKey(e)) {
+            backgroundForegroundJob();
+            e.consume();
+            return;
+        }
         switch (e.getKeyCode()) {
             case KeyEvent.VK_ENTER:
                 executeCommand();
@@ -173,6 +254,12 @@ public class ShellUI extends JFrame {
                 }
                 e.consume();
                 break;
+            case KeyEvent.VK_R:
+                if (e.isControlDown()) {
+                    startHistorySearch();
+                    e.consume();
+                }
+                break;
             case KeyEvent.VK_UP:
                 navigateHistory(true);
                 e.consume();
@@ -204,23 +291,25 @@ public class ShellUI extends JFrame {
             case "touch" ->
                 "file_name (creates empty file)";
             case "cp" ->
-                "source_file target_file (copies file)";
+                "[-r] source target (copies files or, with -r, directories)";
             case "mv" ->
-                "source target (moves/renames file)";
+                "source... target (moves/renames files)";
             case "rm" ->
                 "file_name (removes file)";
             case "rmdir" ->
                 "directory_name (removes empty directory)";
             case "cat" ->
-                "file_name (displays file content)";
+                "[-x] [-a] file_name... (displays file content, -x as hex)";
             case "less" ->
                 "file_name (views file content page by page)";
             case "head" ->
-                "[-n lines] file_name (shows first lines of file)";
+                "[-n lines] file_name... (shows first lines of file)";
+            case "tail" ->
+                "[-n lines] [-f] file_name... (shows last lines of file, -f keeps following it)";
             case "grep" ->
-                "pattern file_name (searches for pattern in file)";
+                "[-r] [-i] [-v] [-c] [-l] pattern file... (searches for pattern in files)";
             case "wc" ->
-                "file_name (counts lines, words, characters)";
+                "[-l] [-w] [-m] [-c] [-r] file... (counts lines, words, characters, bytes)";
             case "chmod" ->
                 "permissions file (change file permissions)\n"
                 + "Examples:\n"
@@ -249,21 +338,35 @@ public class ShellUI extends JFrame {
             case "quotacheck" ->
                 "[drive:] (check filesystem quotas)";
             case "du" ->
-                "[directory] (shows disk usage)";
+                "[--max-depth=N] [-s] [--sort] [directory] (shows disk usage)";
             case "gzip" ->
-                "file_name (compresses file)";
+                "[-1..-9] [-k] [-r] [-d] file... (compresses to file.gz in parallel)";
+            case "gunzip" ->
+                "[-k] [-r] file.gz... (decompresses gzip files)";
             case "file" ->
-                "file_name (determines file type)";
+                "[-r] file|directory|glob... (determines file types from their contents)";
             case "find" ->
-                "directory -name pattern (finds files)";
+                "[directory...] [-name glob] [-type f|d|l] [-size [+-]N[ckMG]] [-mtime [+-]N] [-maxdepth N] (finds files)";
             case "locate" ->
-                "pattern (finds files in database)";
+                "[-i] pattern (finds files in the database built by updatedb)";
+            case "updatedb" ->
+                "[directory] (builds the locate database, default: home directory)";
             case "wget" ->
                 "URL (downloads file from internet)";
             case "accessrights" ->
                 "file_or_directory (displays access rights)";
+            case "coprocess" ->
+                "[on | off | status] (runs external commands in one long-lived shell)";
+            case "jobs" ->
+                "(lists background jobs; end a command with & to start one, Ctrl+Z backgrounds the running one)";
+            case "fg" ->
+                "[%n] (brings a job to the foreground and shows its output)";
+            case "kill" ->
+                "%n... | PID (stops a background job, or signals a process)";
+            case "stats" ->
+                "[command | -r] (time per command and phase: spawn, run, read, style, render; -r resets)";
             case "history" ->
-                "(shows command history)";
+                "[N | -c] (shows the last N commands, or clears the history; Ctrl+R searches it)";
             case "clear" ->
                 "(clears the output screen)";
             default ->
@@ -275,1521 +378,243 @@ public class ShellUI extends JFrame {
 
     private void executeCommand() {
         String command = (String) commandComboBox.getSelectedItem();
-        String arguments = argumentsField.getText().trim();
+        String typed = argumentsField.getText().trim();
+        // A trailing & runs the command as a background job
+        boolean background = typed.endsWith("&") && !typed.endsWith("&&");
+        String arguments = background ? typed.substring(0, typed.length() - 1).trim() : typed;
+
+        if (runningTask != null && !background && !JOB_COMMANDS.contains(command)) {
+            // One foreground command at a time; Cancel or Ctrl+C stops it, Ctrl+Z sends it to the background
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+
         String fullCommand = command + (arguments.isEmpty() ? "" : " " + arguments);
 
         // Add to command history (except for history command itself)
         if (!"history".equals(command)) {
-            commandHistory.add(fullCommand);
+            history.add(fullCommand + (background ? " &" : ""));
         }
-        historyIndex = commandHistory.size();
+        historyIndex = -1;
 
-        try {
-            // Display the command in output
-            appendToOutput("$ " + fullCommand + "\n", "command");
+        // Like a shell prompt, tell about background jobs that finished since the last command
+        reportFinishedJobs();
 
-            // Handle special commands
-            switch (command) {
-                case "cd":
-                    appendToOutput(changeDirectory(arguments) + "\n\n", "output");
-                    break;
-                case "pwd":
-                    appendToOutput(currentDirectory.getAbsolutePath() + "\n\n", "output");
-                    break;
-                case "accessrights":
-                    appendToOutput(displayAccessRights(arguments) + "\n\n", "output");
-                    break;
-                case "history":
-                    showCommandHistory();
-                    break;
-                case "clear":
-                    clearOutput();
-                    break;
-                case "man":
-                    String manual = getManualPage(arguments);
-
-                    appendToOutput(manual + "\n\n", "output");
-                    break;
-                default:
-                    // Execute system command
-                    String output = executeSystemCommand(command, arguments);
-                    highlightOutput(output);
-                    appendToOutput("\n", "default");
-            }
-        } catch (Exception ex) {
-            appendToOutput("Error: " + ex.getMessage() + "\n\n", "error");
-        }
+        // Display the command in output
+        appendToOutput("$ " + fullCommand + (background ? " &" : "") + "\n", "command");
 
         // Clear arguments field after execution
         argumentsField.setText("");
-    }
-
-    private String changeDirectory(String dirPath) {
-        File newDir;
-        if (dirPath.isEmpty()) {
-            // Change to home directory
-            newDir = new File(System.getProperty("user.home"));
-        } else if (dirPath.equals("..")) {
-            // Move up one directory
-            newDir = currentDirectory.getParentFile();
-        } else if (dirPath.startsWith("/") || dirPath.startsWith("\\")
-                || (dirPath.length() > 1 && dirPath.charAt(1) == ':')) {
-            // Absolute path
-            newDir = new File(dirPath);
-        } else {
-            // Relative path
-            newDir = new File(currentDirectory, dirPath);
-        }
-
-        if (newDir.exists() && newDir.isDirectory()) {
-            currentDirectory = newDir;
-            currentDirLabel.setText("Current Directory: " + currentDirectory.getAbsolutePath());
-            return "Changed directory to: " + currentDirectory.getAbsolutePath();
-        } else {
-            throw new RuntimeException("Directory not found: " + newDir.getAbsolutePath());
-        }
-    }
 
-    private String displayAccessRights(String path) {
-        File file;
-        if (path.isEmpty()) {
-            file = currentDirectory;
-        } else if (path.startsWith("/") || path.startsWith("\\")
-                || (path.length() > 1 && path.charAt(1) == ':')) {
-            file = new File(path);
-        } else {
-            file = new File(currentDirectory, path);
+        CommandEngine.Parsed parsed;
+        try {
+            parsed = engine.parse(fullCommand);
+        } catch (RuntimeException ex) {
+            appendToOutput("Error: " + ex.getMessage() + "\n\n", "error");
+            return;
         }
-
-        if (!file.exists()) {
-            throw new RuntimeException("File/directory not found: " + file.getAbsolutePath());
+        if (!parsed.isSimple()) {
+            launch(fullCommand, background, task -> {
+                engine.run(command, arguments, parsed, task);
+                appendToOutput("\n", "default");
+            });
+            return;
         }
 
-        StringBuilder rights = new StringBuilder();
-        rights.append("Access rights for: ").append(file.getAbsolutePath()).append("\n");
-
-        if (isWindows) {
-            rights.append("Readable: ").append(file.canRead()).append("\n");
-            rights.append("Writable: ").append(file.canWrite()).append("\n");
-            rights.append("Executable: ").append(file.canExecute()).append("\n");
-            rights.append("Hidden: ").append(file.isHidden()).append("\n");
-        } else {
-            try {
-                Process process = new ProcessBuilder("ls", "-ld", file.getAbsolutePath())
-                        .directory(currentDirectory)
-                        .start();
-
-                String output = readProcessOutput(process);
-                rights.append(output);
-            } catch (IOException ex) {
-                throw new RuntimeException("Failed to get access rights: " + ex.getMessage());
+        try {
+            // Commands that answer at once (cd, pwd, man, stats) and those that only touch UI state run on the EDT
+            String inline = engine.runInline(command, arguments);
+            if (inline != null) {
+                appendToOutput(inline + "\n", "output");
+                return;
             }
-        }
-
-        return rights.toString();
-    }
-
-    private String executeSystemCommand(String command, String arguments) throws IOException, InterruptedException {
-        List<String> commandParts = new ArrayList<>();
-        // Handle commands specially
-        switch (command) {
-            case "cp":
-                return handleCopyCommand(arguments);
-            case "mv":
-                return handleMoveCommand(arguments);
-            case "cat":
-                return handleCatCommand(arguments);
-            case "less":
-                return handleLessCommand(arguments);
-            case "head":
-                return handleHeadCommand(arguments);
-            case "grep":
-                return handleGrepCommand(arguments);
-            case "wc":
-                return handleWcCommand(arguments);
-            case "chmod":
-                return handleChmodCommand(arguments);
-            case "chown":
-                return handleChownCommand(arguments);
-            case "chgrp":
-                return handleChgrpCommand(arguments);
-            case "addUser":
-                return handleAddUserCommand(arguments);
-            case "addGroup":
-                return handleAddGroupCommand(arguments);
-            case "ps":
-                return handlePsCommand(arguments);
-            case "quotacheck":
-                return handleQuotacheckCommand(arguments);
-            case "du":
-                return handleDuCommand(arguments);
-            case "gzip":
-                return handleGzipCommand(arguments);
-            case "file":
-                return handleFileCommand(arguments);
-            case "find":
-                return handleFindCommand(arguments);
-            case "locate":
-                return handleLocateCommand(arguments);
-            case "wget":
-                return handleWgetCommand(arguments);
-            case "accessrights":
-                return handleAccessRightsCommand(arguments);
-            default:
-            // Default command handling
-        }
-        if (isWindows) {
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-
-            // Special handling for Windows commands
             switch (command) {
-                case "cp":
-                    commandParts.add("copy");
-                    break;
-                case "ls":
-                    commandParts.add("dir");
-                    break;
-                case "mkdir":
-                    commandParts.add("mkdir");
-                    break;
-                case "touch":
-                    // Special handling for touch command
-                    if (arguments.isEmpty()) {
-                        throw new RuntimeException("touch requires a filename argument");
-                    }
-                    File touchFile = arguments.startsWith("/") || arguments.startsWith("\\")
-                            || (arguments.length() > 1 && arguments.charAt(1) == ':')
-                            ? new File(arguments) : new File(currentDirectory, arguments);
-                    if (!touchFile.exists()) {
-                        try {
-                            if (!touchFile.createNewFile()) {
-                                throw new RuntimeException("Failed to create file: " + touchFile.getAbsolutePath());
-                            }
-                            return "Created empty file: " + touchFile.getAbsolutePath();
-                        } catch (IOException e) {
-                            throw new RuntimeException("Error creating file: " + e.getMessage());
-                        }
-                    } else {
-                        return "File already exists: " + touchFile.getAbsolutePath();
+                case "history":
+                    appendToOutput(historyText(arguments) + "\n", "output");
+                    return;
+                case "clear":
+                    clearOutput();
+                    return;
+                case "jobs":
+                    listJobs();
+                    return;
+                case "fg":
+                    foregroundJob(arguments);
+                    return;
+                case "kill":
+                    // kill %n stops a job; kill with a PID is the system command
+                    if (arguments.startsWith("%")) {
+                        killJobs(arguments);
+                        return;
                     }
-                case "rm":
-                    commandParts.add("del");
-                    break;
-                case "rmdir":
-                    commandParts.add("rmdir");
                     break;
                 default:
-                    // For commands that are the same in Windows
-                    commandParts.add(command);
-            }
-
-            if (!arguments.isEmpty() && !command.equals("touch")) {
-                commandParts.add(arguments);
-            }
-        } else {
-            // Unix-like systems - just use the command directly
-            commandParts.add(command);
-            if (!arguments.isEmpty()) {
-                commandParts.addAll(Arrays.asList(arguments.split(" ")));
-            }
-            // Handle arguments for copy command
-            if (command.equals("cp") && !arguments.isEmpty()) {
-                // Split arguments while preserving paths with spaces
-                String[] args = arguments.split(" (?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
-                for (String arg : args) {
-                    commandParts.add(arg.replace("\"", ""));
-                }
-            } else if (!arguments.isEmpty()) {
-                commandParts.add(arguments);
-            }
-        }
-
-        ProcessBuilder pb = new ProcessBuilder(commandParts);
-        pb.directory(currentDirectory);
-        pb.redirectErrorStream(true); // Merge error stream with output
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("Command failed with exit code " + exitCode);
-        }
-
-        return output;
-    }
-
-    private String handleCopyCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("cp requires source and destination arguments");
-        }
-
-        // Parse source and destination paths
-        String[] paths = parsePaths(arguments);
-        if (paths.length < 2) {
-            throw new RuntimeException("cp requires both source and destination arguments");
-        }
-
-        String source = paths[0];
-        String destination = paths[1];
-
-        // Verify source exists
-        File sourceFile = resolvePath(source);
-        if (!sourceFile.exists()) {
-            throw new RuntimeException("Source file/directory does not exist: " + source);
-        }
-
-        // Prepare command based on OS
-        List<String> commandParts = new ArrayList<>();
-        if (isWindows) {
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("copy");
-            commandParts.add("\"" + sourceFile.getAbsolutePath() + "\"");
-
-            File destFile = resolvePath(destination);
-            if (destination.endsWith("\\") || destination.endsWith("/")) {
-                // Destination is a directory
-                if (!destFile.exists()) {
-                    destFile.mkdirs();  // Create directory if it doesn't exist
-                }
-                commandParts.add("\"" + destFile.getAbsolutePath() + "\"");
-            } else {
-                // Destination is a file path
-                commandParts.add("\"" + destFile.getAbsolutePath() + "\"");
+                    break;
             }
-        } else {
-            // Unix-like systems
-            commandParts.add("cp");
-            commandParts.add(source);
-            commandParts.add(destination);
-        }
-
-        ProcessBuilder pb = new ProcessBuilder(commandParts);
-        pb.directory(currentDirectory);
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("Copy failed. Verify paths and permissions.\n"
-                    + "Source: " + source + "\n"
-                    + "Destination: " + destination + "\n"
-                    + "System message: " + output);
+        } catch (Exception ex) {
+            appendToOutput("Error: " + ex.getMessage() + "\n\n", "error");
+            return;
         }
 
-        return "Copied successfully: " + source + " → " + destination;
-    }
-
-    private File resolvePath(String path) {
-        if (path.startsWith("/") || path.startsWith("\\")
-                || (path.length() > 1 && path.charAt(1) == ':')) {
-            return new File(path);
-        }
-        return new File(currentDirectory, path);
+        // Everything else may block on the file system or a child process,
+        // so it runs on a virtual thread and reports back through appendToOutput
+        launch(fullCommand, background, task -> {
+            engine.run(command, arguments, parsed, task);
+            appendToOutput("\n", "default");
+        });
     }
 
-    private String[] parsePaths(String arguments) {
-        // Handle quoted paths containing spaces
-        List<String> paths = new ArrayList<>();
-        StringBuilder currentPath = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (char c : arguments.toCharArray()) {
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (Character.isWhitespace(c) && !inQuotes) {
-                if (currentPath.length() > 0) {
-                    paths.add(currentPath.toString());
-                    currentPath.setLength(0);
-                }
-            } else {
-                currentPath.append(c);
-            }
-        }
-
-        if (currentPath.length() > 0) {
-            paths.add(currentPath.toString());
-        }
+    /** The body of a command, run on the command's own thread. */
+    private interface CommandBody {
 
-        return paths.toArray(new String[0]);
+        void run(CommandTask task) throws Exception;
     }
 
-    private String handleMoveCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("mv requires source and destination arguments");
-        }
-
-        // Parse source and destination paths
-        String[] paths = parsePaths(arguments);
-        if (paths.length < 2) {
-            throw new RuntimeException("mv requires both source and destination arguments");
-        }
-
-        String source = paths[0];
-        String destination = paths[1];
-
-        // Verify source exists
-        File sourceFile = resolvePath(source);
-        if (!sourceFile.exists()) {
-            throw new RuntimeException("Source file/directory does not exist: " + source);
-        }
-
-        // Prepare command based on OS
-        List<String> commandParts = new ArrayList<>();
-        if (isWindows) {
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("move");
-            commandParts.add("\"" + sourceFile.getAbsolutePath() + "\"");
-
-            File destFile = resolvePath(destination);
-            if (destination.endsWith("\\") || destination.endsWith("/")) {
-                // Destination is a directory
-                if (!destFile.exists()) {
-                    destFile.mkdirs();  // Create directory if it doesn't exist
-                }
-                commandParts.add("\"" + destFile.getAbsolutePath() + "\"");
-            } else {
-                // Destination is a file path
-                commandParts.add("\"" + destFile.getAbsolutePath() + "\"");
-            }
+    /**
+     * Starts a command on a virtual thread, either in the foreground or as a
+     * background job whose output is kept in its {@link Job} until {@code fg}.
+     */
+    private void launch(String fullCommand, boolean background, CommandBody body) {
+        CommandTask task = new CommandTask(fullCommand, engine.currentDirectory());
+        Job job = new Job(task, outputPipeline, !background);
+        task.setOutput(job);
+        if (background) {
+            jobs.add(job);
+            appendToOutput("[" + job.number() + "] " + fullCommand + "\n\n", "directory");
+            updateJobStatus();
         } else {
-            // Unix-like systems
-            commandParts.add("mv");
-            commandParts.add(source);
-            commandParts.add(destination);
-        }
-
-        ProcessBuilder pb = new ProcessBuilder(commandParts);
-        pb.directory(currentDirectory);
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        String output = readProcessOutput(process);
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("Move failed. Verify paths and permissions.\n"
-                    + "Source: " + source + "\n"
-                    + "Destination: " + destination + "\n"
-                    + "System message: " + output);
+            foregroundJob = job;
+            setRunningTask(task);
         }
-
-        return "Moved successfully: " + source + " → " + destination;
-    }
-
-    private String handleCatCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("cat requires at least one file argument");
-        }
-
-        // Parse file paths (handling spaces in filenames)
-        String[] filePaths = parsePaths(arguments);
-
-        StringBuilder content = new StringBuilder();
-
-        if (isWindows) {
-            // Windows implementation using 'type' command
-            for (String filePath : filePaths) {
-                File file = resolvePath(filePath);
-                if (!file.exists()) {
-                    throw new RuntimeException("File not found: " + filePath);
-                }
-
-                List<String> commandParts = new ArrayList<>();
-                commandParts.add("cmd.exe");
-                commandParts.add("/c");
-                commandParts.add("type");
-                commandParts.add("\"" + file.getAbsolutePath() + "\"");
-
-                ProcessBuilder pb = new ProcessBuilder(commandParts);
-                pb.directory(currentDirectory);
-                pb.redirectErrorStream(true);
-
-                Process process = pb.start();
-                content.append(readProcessOutput(process));
-
-                int exitCode = process.waitFor();
-                if (exitCode != 0) {
-                    throw new RuntimeException("Failed to read file: " + filePath);
-                }
-            }
-        } else {
-            // Unix implementation using native 'cat'
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cat");
-            for (String filePath : filePaths) {
-                File file = resolvePath(filePath);
-                if (!file.exists()) {
-                    throw new RuntimeException("File not found: " + filePath);
-                }
-                commandParts.add(file.getAbsolutePath());
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-            content.append(readProcessOutput(process));
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to read files");
-            }
-        }
-
-        return content.toString();
-    }
-
-    private String handleLessCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("less requires a file argument");
-        }
-
-        String[] parts = parsePaths(arguments);
-        if (parts.length > 1) {
-            throw new RuntimeException("less only supports one file at a time");
-        }
-
-        File file = resolvePath(parts[0]);
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + parts[0]);
-        }
-
-        if (isWindows) {
-            // Windows implementation using more (basic paging)
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("more");
-            commandParts.add("\"" + file.getAbsolutePath() + "\"");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            Process process = pb.start();
-
-            // For Windows, we'll let more handle the paging
-            return "Opening file in pager... Use spacebar to page, Q to quit";
-        } else {
-            // Unix implementation using less
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("less");
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            Process process = pb.start();
-            return readProcessOutput(process);
-            // For Unix, less will handle the paging directly in terminal
-//            return "Opening file in less pager... Use arrow keys, Q to quit";
-        }
-    }
-
-    private String handleHeadCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("head requires a file argument");
-        }
-
-        // Parse arguments for -n option
-        int lines = 10; // default
-        String[] parts = arguments.split(" ");
-        String filePath = arguments;
-
-        if (parts.length >= 2 && parts[0].equals("-n")) {
+        task.start(() -> {
+            Job.State state = Job.State.FAILED;
             try {
-                lines = Integer.parseInt(parts[1]);
-                filePath = arguments.substring(parts[0].length() + parts[1].length() + 2).trim();
-            } catch (NumberFormatException e) {
-                throw new RuntimeException("Invalid line count: " + parts[1]);
-            }
-        }
-
-        filePath = filePath.replace("\"", ""); // Remove quotes if present
-        File file = resolvePath(filePath);
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Windows implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("powershell");
-            commandParts.add("-Command");
-            commandParts.add("Get-Content");
-            commandParts.add("\"" + file.getAbsolutePath() + "\"");
-            commandParts.add("-Head");
-            commandParts.add(String.valueOf(lines));
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("head");
-            commandParts.add("-n");
-            commandParts.add(String.valueOf(lines));
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        }
-    }
-
-    private String handleGrepCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("grep requires a pattern and file argument");
-        }
-
-        // Parse pattern and file path (handling quoted strings)
-        String[] parts = parsePaths(arguments);
-        if (parts.length < 2) {
-            throw new RuntimeException("grep requires both pattern and file arguments");
-        }
-
-        String pattern = parts[0];
-        String filePath = parts[1];
-        File file = resolvePath(filePath);
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Windows implementation using findstr
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("findstr");
-            commandParts.add("/n"); // show line numbers
-            commandParts.add("\"" + pattern + "\"");
-            commandParts.add("\"" + file.getAbsolutePath() + "\"");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("grep");
-            commandParts.add("-n"); // show line numbers
-            commandParts.add("--color=always"); // colored output if supported
-            commandParts.add(pattern);
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        }
-    }
-
-    private String handleWcCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments == null || arguments.trim().isEmpty()) {
-            // If no arguments, read from standard input (not implemented here)
-            throw new RuntimeException("wc requires file arguments or standard input");
-        }
-
-        String[] filePaths = parsePaths(arguments);
-        StringBuilder result = new StringBuilder();
-        int totalLines = 0;
-        int totalWords = 0;
-        int totalChars = 0;
-
-        for (String filePath : filePaths) {
-            File file = resolvePath(filePath);
-            if (!file.exists() || !file.isFile()) {
-                throw new RuntimeException("File not found: " + filePath);
-            }
-
-            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
-
-            // Line count (split by various line endings)
-            int lineCount = content.split("\r\n|\r|\n").length;
-            // Handle empty last line
-            if (content.endsWith("\r") || content.endsWith("\n") || content.endsWith("\r\n")) {
-                lineCount++;
-            }
-
-            // Word count (split by whitespace)
-            String trimmed = content.trim();
-            int wordCount = trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
-
-            // Character count
-            int charCount = content.length();
-
-            // Format output like Unix wc
-            result.append(String.format("%7d %7d %7d %s%n", lineCount, wordCount, charCount, filePath));
-
-            // Update totals
-            totalLines += lineCount;
-            totalWords += wordCount;
-            totalChars += charCount;
-        }
-
-        // Add totals line if multiple files
-        if (filePaths.length > 1) {
-            result.append(String.format("%7d %7d %7d %s%n", totalLines, totalWords, totalChars, "total"));
-        }
-
-        return result.toString();
-    }
-
-    private String handleChmodCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("chmod requires permissions and file arguments");
-        }
-
-        String[] parts = arguments.split(" ", 2);
-        if (parts.length < 2) {
-            throw new RuntimeException("chmod requires both permissions and file arguments");
-        }
-
-        String permissions = parts[0];
-        String filePath = parts[1].replace("\"", "");
-        File file = resolvePath(filePath);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Windows implementation (basic read-only attribute)
-            if (permissions.matches("[0-7]+")) {
-                boolean readable = Integer.parseInt(permissions.substring(0, 1)) >= 4;
-                boolean writable = Integer.parseInt(permissions.substring(1, 2)) >= 2;
-                boolean executable = Integer.parseInt(permissions.substring(2, 3)) >= 1;
-
-                file.setReadable(readable);
-                file.setWritable(writable);
-                file.setExecutable(executable);
-                return "Set permissions for " + filePath;
-            } else {
-                throw new RuntimeException("Windows only supports numeric permissions (e.g., 755)");
-            }
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("chmod");
-            commandParts.add(permissions);
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to change permissions: " + output);
-            }
-            return "Changed permissions for " + filePath;
-        }
-    }
-
-    private String handleChownCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("chown requires owner and file arguments");
-        }
-
-        String[] parts = arguments.split(" ", 2);
-        if (parts.length < 2) {
-            throw new RuntimeException("chown requires both owner and file arguments");
-        }
-
-        String owner = parts[0];
-        String filePath = parts[1].replace("\"", "");
-        File file = resolvePath(filePath);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Windows implementation (requires admin privileges)
-            // Step 1: Take ownership first (required before we can change owner)
-            List<String> takeOwnCommand = new ArrayList<>();
-            takeOwnCommand.add("cmd.exe");
-            takeOwnCommand.add("/c");
-            takeOwnCommand.add("takeown");
-            takeOwnCommand.add("/f");
-            takeOwnCommand.add(file.getAbsolutePath());
-
-            ProcessBuilder takeOwnPb = new ProcessBuilder(takeOwnCommand);
-            takeOwnPb.directory(currentDirectory);
-            takeOwnPb.redirectErrorStream(true);
-            Process takeOwnProcess = takeOwnPb.start();
-
-            String takeOwnOutput = readProcessOutput(takeOwnProcess);
-            int takeOwnExitCode = takeOwnProcess.waitFor();
-
-            if (takeOwnExitCode != 0) {
-                throw new RuntimeException("Failed to take ownership (Admin required): " + takeOwnOutput);
-            }
-
-            // Step 2: Now change the owner using icacls
-            List<String> icaclsCommand = new ArrayList<>();
-            icaclsCommand.add("cmd.exe");
-            icaclsCommand.add("/c");
-            icaclsCommand.add("icacls");
-            icaclsCommand.add(file.getAbsolutePath());
-            icaclsCommand.add("/setowner");
-            icaclsCommand.add(owner);
-            icaclsCommand.add("/t");  // Recursive for directories
-            icaclsCommand.add("/c");  // Continue on errors
-            icaclsCommand.add("/l");  // Process symbolic links
-            icaclsCommand.add("/q");   // Quiet mode
-
-            ProcessBuilder icaclsPb = new ProcessBuilder(icaclsCommand);
-            icaclsPb.directory(currentDirectory);
-            icaclsPb.redirectErrorStream(true);
-            Process icaclsProcess = icaclsPb.start();
-
-            String icaclsOutput = readProcessOutput(icaclsProcess);
-            int icaclsExitCode = icaclsProcess.waitFor();
-
-            if (icaclsExitCode != 0) {
-                throw new RuntimeException("Failed to change owner (Admin required): " + icaclsOutput);
-            }
-
-            return "Changed owner of " + filePath + " to " + owner;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("chown");
-            commandParts.add(owner);
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to change owner: " + output);
+                body.run(task);
+                state = Job.State.DONE;
+            } catch (Exception ex) {
+                if (task.isCancelled()) {
+                    state = Job.State.KILLED;
+                    appendToOutput("^C Command cancelled\n\n", "error");
+                } else {
+                    appendToOutput("Error: " + ex.getMessage() + "\n\n", "error");
+                }
+            } finally {
+                CommandMetrics.finish(task.metrics(), state);
+                job.finish(state);
+                SwingUtilities.invokeLater(() -> jobFinished(job));
             }
-            return "Changed owner of " + filePath + " to " + owner;
-        }
+        });
     }
 
-    private String handleChgrpCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("chgrp requires group and file arguments");
-        }
-
-        String[] parts = arguments.split(" ", 2);
-        if (parts.length < 2) {
-            throw new RuntimeException("chgrp requires both group and file arguments");
-        }
-
-        String group = parts[0];
-        String filePath = parts[1].replace("\"", "");
-        File file = resolvePath(filePath);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Windows implementation using icacls
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("icacls");
-            commandParts.add("\"" + file.getAbsolutePath() + "\"");
-            commandParts.add("/grant:r");
-            commandParts.add(group + ":(R,W,Rc)");
-            commandParts.add("/T"); // Recursive
-            commandParts.add("/C"); // Continue on errors
-            commandParts.add("/Q"); // Quiet mode
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to change group (Run as Administrator): " + output);
-            }
-            return "Modified permissions for group " + group + " on " + filePath;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("chgrp");
-            commandParts.add(group);
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to change group: " + output);
-            }
-            return "Changed group of " + filePath + " to " + group;
+    private void jobFinished(Job job) {
+        if (foregroundJob == job) {
+            foregroundJob = null;
+            setRunningTask(null);
         }
+        updateJobStatus();
     }
 
-    private String handleAddUserCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("addUser requires a username argument");
-        }
-
-        String username = arguments.split(" ")[0].replace("\"", "");
-
-        if (isWindows) {
-            // Windows implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("net");
-            commandParts.add("user");
-            commandParts.add(username);
-            commandParts.add("/add");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to add user (Admin required): " + output);
-            }
-            return "Added user: " + username;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("sudo");
-            commandParts.add("useradd");
-            commandParts.add("-m"); // Create home directory
-            commandParts.add(username);
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to add user (Need sudo): " + output);
-            }
-            return "Added user: " + username;
+    /** Ctrl+Z: the foreground command keeps running as a background job. */
+    private void backgroundForegroundJob() {
+        Job job = foregroundJob;
+        if (job == null) {
+            return;
         }
+        job.detach();
+        foregroundJob = null;
+        setRunningTask(null);
+        jobs.add(job);
+        appendToOutput("\n[" + job.number() + "]+ " + job.commandLine() + " &\n\n", "directory");
+        updateJobStatus();
     }
 
-    private String handleAddGroupCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("addGroup requires a groupname argument");
+    private void listJobs() {
+        if (jobs.isEmpty()) {
+            appendToOutput("No jobs\n\n", "output");
+            return;
         }
-
-        String groupname = arguments.split(" ")[0].replace("\"", "");
-
-        if (isWindows) {
-            // Windows implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("net");
-            commandParts.add("localgroup");
-            commandParts.add(groupname);
-            commandParts.add("/add");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to add group (Admin required): " + output);
-            }
-            return "Added group: " + groupname;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("sudo");
-            commandParts.add("groupadd");
-            commandParts.add(groupname);
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to add group (Need sudo): " + output);
-            }
-            return "Added group: " + groupname;
+        StringBuilder text = new StringBuilder();
+        for (Job job : jobs.all()) {
+            text.append(job.describe(job == jobs.current())).append('\n');
         }
+        appendToOutput(text.append('\n').toString(), "output");
+        // Listed finished jobs count as reported
+        jobs.takeFinished();
+        updateJobStatus();
     }
 
-    private String handlePsCommand(String arguments) throws IOException, InterruptedException {
-        if (isWindows) {
-            // Windows implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("tasklist");
-
-            if (!arguments.isEmpty()) {
-                commandParts.add(arguments);
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("ps");
-            commandParts.add("aux");
-
-            if (!arguments.isEmpty()) {
-                commandParts.addAll(Arrays.asList(arguments.split(" ")));
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
+    private void foregroundJob(String spec) {
+        if (runningTask != null) {
+            throw new RuntimeException("fg: a command is already running in the foreground");
         }
-    }
-
-    private String handleQuotacheckCommand(String arguments) throws IOException, InterruptedException {
-        if (isWindows) {
-            // Improved Windows implementation with actual quota checking
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("fsutil");
-            commandParts.add("quota");
-            commandParts.add("query");
-
-            // Add drive letter if specified
-            if (!arguments.isEmpty()) {
-                String drive = arguments.split(" ")[0];
-                if (drive.matches("^[A-Za-z]:$")) {
-                    commandParts.add(drive);
-                }
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                if (output.contains("This system does not support quotas")) {
-                    return "Quotas are not enabled on this system";
-                }
-                throw new RuntimeException("Failed to check quotas: " + output);
-            }
-
-            if (output.trim().isEmpty()) {
-                return "No quota information available (quotas may be disabled)";
-            }
-            return output;
+        Job job = jobs.find("fg", spec);
+        jobs.remove(job);
+        appendToOutput(job.commandLine() + "\n", "command");
+        job.attach();
+        if (job.state() == Job.State.RUNNING) {
+            // Cancel, Ctrl+C and Ctrl+Z apply to it again
+            foregroundJob = job;
+            setRunningTask(job.task());
         } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("sudo");
-            commandParts.add("quotacheck");
-
-            if (!arguments.isEmpty()) {
-                commandParts.addAll(Arrays.asList(arguments.split(" ")));
-            } else {
-                commandParts.add("-avug"); // Default options
-            }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("quotacheck failed (Need sudo): " + output);
-            }
-            return output;
+            appendToOutput(job.describe(false) + "\n\n", "directory");
         }
+        updateJobStatus();
     }
 
-    private String handleDuCommand(String arguments) throws IOException, InterruptedException {
-        if (isWindows) {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("powershell.exe");
-            commandParts.add("-Command");
-            commandParts.add("function Get-DirectorySize {");
-            commandParts.add("  param ([string]$folder = '.')");
-            commandParts.add("  Get-ChildItem $folder -Recurse -File | ");
-            commandParts.add("  Measure-Object -Property Length -Sum | ");
-            commandParts.add("  Select-Object @{Name='Size (MB)';Expression={[math]::Round($_.Sum / 1MB, 2)}},");
-            commandParts.add("          @{Name='Size (GB)';Expression={[math]::Round($_.Sum / 1GB, 2)}}");
-            commandParts.add("}");
-            commandParts.add("Get-DirectorySize " + (arguments.isEmpty() ? "'" + currentDirectory.getAbsolutePath() + "'" : arguments));
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        } else {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("du");
-            commandParts.add("-h"); // Human readable
-            if (!arguments.isEmpty()) {
-                commandParts.addAll(Arrays.asList(arguments.split(" ")));
+    private void killJobs(String specs) {
+        for (String spec : specs.split("\\s+")) {
+            Job job = jobs.find("kill", spec);
+            if (job.state() == Job.State.RUNNING) {
+                job.task().cancel();
+                appendToOutput("[" + job.number() + "] Killing " + job.commandLine() + "\n", "output");
             } else {
-                commandParts.add(".");
+                jobs.remove(job);
+                appendToOutput("[" + job.number() + "] had already finished; its output was discarded\n", "output");
             }
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        }
-    }
-
-    private String handleGzipCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("gzip requires a file argument");
-        }
-
-        String filePath = arguments.split(" ")[0].replace("\"", "");
-        File file = resolvePath(filePath);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Using built-in compact command
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("compact");
-            commandParts.add("/C");
-            commandParts.add("\"" + file.getAbsolutePath() + "\"");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Compression failed: " + output);
-            }
-            return "Compressed: " + filePath;
-        } else {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("gzip");
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("gzip failed: " + output);
-            }
-            return "Compressed: " + filePath + ".gz";
         }
+        appendToOutput("\n", "default");
+        updateJobStatus();
     }
 
-    private String handleFileCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("file requires a file argument");
-        }
-
-        String filePath = arguments.split(" ")[0].replace("\"", "");
-        File file = resolvePath(filePath);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File not found: " + filePath);
-        }
-
-        if (isWindows) {
-            // Basic file type detection
-            String type = "unknown";
-            if (file.isDirectory()) {
-                type = "directory";
-            } else {
-                String name = file.getName().toLowerCase();
-                if (name.endsWith(".exe")) {
-                    type = "executable";
-                } else if (name.endsWith(".txt")) {
-                    type = "text";
-                } else if (name.endsWith(".jpg") || name.endsWith(".png")) {
-                    type = "image";
-                }
-                // Add more types as needed
-            }
-            return filePath + ": " + type;
-        } else {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("file");
-            commandParts.add(file.getAbsolutePath());
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
+    /** Prints a line for each job that finished since the last prompt, as bash does before its prompt. */
+    private void reportFinishedJobs() {
+        for (Job job : jobs.takeFinished()) {
+            appendToOutput(job.describe(job == jobs.current()) + "\n", "directory");
         }
     }
 
-    private String handleFindCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("find requires a search pattern");
-        }
-
-        if (isWindows) {
-            // Improved Windows implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("dir");
-            commandParts.add("/s/b"); // Recursive, bare format
-            commandParts.add("*" + arguments + "*"); // Wildcard search
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-
-            if (output.contains("File Not Found")) {
-                return "No files matching '" + arguments + "' found in " + currentDirectory;
-            }
-            return output;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("find");
-            commandParts.add(".");
-            commandParts.add("-name");
-            commandParts.add("*" + arguments + "*");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        }
+    private void updateJobStatus() {
+        jobStatusLabel.setText(jobs.statusText());
     }
 
-    private String handleLocateCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("locate requires a search pattern");
-        }
-
-        if (isWindows) {
-            // Windows implementation using dir and findstr
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("cmd.exe");
-            commandParts.add("/c");
-            commandParts.add("dir");
-            commandParts.add("/s/b"); // Recursive search, bare format
-            commandParts.add("*");    // All files
-            commandParts.add("|");
-            commandParts.add("findstr");
-            commandParts.add("/i");    // Case insensitive
-            commandParts.add("\"" + arguments + "\"");
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.directory(currentDirectory);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-
-            if (output.trim().isEmpty()) {
-                return "No files matching '" + arguments + "' found";
-            }
-            return output;
-        } else {
-            // Unix implementation
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("locate");
-            commandParts.add(arguments);
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            return readProcessOutput(process);
-        }
+    private void setRunningTask(CommandTask task) {
+        runningTask = task;
+        executeButton.setEnabled(task == null);
+        cancelButton.setEnabled(task != null);
     }
 
-    private String handleWgetCommand(String arguments) throws IOException, InterruptedException {
-        if (arguments.isEmpty()) {
-            throw new RuntimeException("wget requires a URL argument");
-        }
-
-        String url = arguments.split(" ")[0].replace("\"", "");
-
-        if (isWindows) {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("powershell");
-            commandParts.add("-Command");
-            commandParts.add("Invoke-WebRequest");
-            commandParts.add("-Uri");
-            commandParts.add(url);
-            commandParts.add("-OutFile");
-            commandParts.add(url.substring(url.lastIndexOf('/') + 1));
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("Download failed: " + output);
-            }
-            return "Downloaded: " + url;
-        } else {
-            List<String> commandParts = new ArrayList<>();
-            commandParts.add("wget");
-            commandParts.add(url);
-
-            ProcessBuilder pb = new ProcessBuilder(commandParts);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            String output = readProcessOutput(process);
-            int exitCode = process.waitFor();
-
-            if (exitCode != 0) {
-                throw new RuntimeException("wget failed: " + output);
-            }
-            return "Downloaded: " + url;
+    private void cancelCommand() {
+        if (runningTask != null) {
+            runningTask.cancel();
         }
     }
 
-    private String handleAccessRightsCommand(String arguments) throws IOException {
-        String path = arguments.isEmpty() ? currentDirectory.getAbsolutePath() : arguments;
-        File file = resolvePath(path);
-
-        if (!file.exists()) {
-            throw new RuntimeException("File/directory not found: " + path);
-        }
-
-        StringBuilder rights = new StringBuilder();
-        rights.append("Access rights for: ").append(file.getAbsolutePath()).append("\n");
-
-        if (isWindows) {
-            rights.append("Readable: ").append(file.canRead()).append("\n");
-            rights.append("Writable: ").append(file.canWrite()).append("\n");
-            rights.append("Executable: ").append(file.canExecute()).append("\n");
-            rights.append("Hidden: ").append(file.isHidden()).append("\n");
-
-            try {
-                // Get more detailed ACL info
-                Process process = new ProcessBuilder("icacls", file.getAbsolutePath())
-                        .redirectErrorStream(true)
-                        .start();
-                rights.append("\nDetailed permissions:\n")
-                        .append(readProcessOutput(process));
-            } catch (IOException e) {
-                rights.append("\nCould not retrieve detailed permissions (Admin required)");
-            }
-        } else {
-            try {
-                Process process = new ProcessBuilder("ls", "-ld", file.getAbsolutePath())
-                        .redirectErrorStream(true)
-                        .start();
-                rights.append(readProcessOutput(process));
-
-                // Get ACL info if available
-                try {
-                    Process aclProcess = new ProcessBuilder("getfacl", file.getAbsolutePath())
-                            .redirectErrorStream(true)
-                            .start();
-                    rights.append("\nACL details:\n")
-                            .append(readProcessOutput(aclProcess));
-                } catch (IOException e) {
-                    // getfacl not available
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to get access rights: " + e.getMessage());
-            }
-        }
-
-        return rights.toString();
+    private boolean isCancelKey(KeyEvent e) {
+        // Ctrl+C only means "cancel" while something is running, so copy still works otherwise
+        return runningTask != null && e.getKeyCode() == KeyEvent.VK_C && e.isControlDown();
     }
 
-    private String getManualPage(String command) {
-        Map<String, String> manualPages = new HashMap<>();
-
-        // Common manual pages
-        manualPages.put("pwd", "pwd - Print Working Directory\n"
-                + "Displays the full path of the current directory.\n"
-                + "Usage: pwd");
-
-        manualPages.put("ls", "ls - List Directory Contents\n"
-                + "Displays files and directories in the current directory.\n"
-                + "Options:\n"
-                + "  -l: Long format listing\n"
-                + "  -a: Include hidden files\n"
-                + "Usage: ls [options] [directory]");
-
-        manualPages.put("cd", "cd - Change Directory\n"
-                + "Changes the current working directory.\n"
-                + "Usage: cd [directory]\n"
-                + "Special paths:\n"
-                + "  .. : Parent directory\n"
-                + "  ~  : Home directory");
-
-        manualPages.put("mkdir", "mkdir - Make Directory\n"
-                + "Creates a new directory.\n"
-                + "Usage: mkdir directory_name");
-
-        manualPages.put("man", "man - Manual Pages\n"
-                + "Displays documentation for commands.\n"
-                + "Usage: man command");
-
-        // Additional commands
-        manualPages.put("echo", "echo - Display Message\n"
-                + "Prints text or variables to the terminal.\n"
-                + "Usage: echo [text]");
-
-        manualPages.put("cat", "cat - Concatenate Files\n"
-                + "Displays file contents or combines files.\n"
-                + "Usage: cat [file1] [file2]...");
-
-        manualPages.put("grep", "grep - Global Regular Expression Print\n"
-                + "Searches for patterns in files.\n"
-                + "Options:\n"
-                + "  -i: Case insensitive search\n"
-                + "  -r: Recursive search\n"
-                + "Usage: grep [options] pattern [file]");
-
-        manualPages.put("cp", "cp - Copy Files\n"
-                + "Copies files or directories.\n"
-                + "Usage: cp [source] [destination]");
-
-        manualPages.put("mv", "mv - Move Files\n"
-                + "Moves or renames files/directories.\n"
-                + "Usage: mv [source] [destination]");
-
-        manualPages.put("rm", "rm - Remove Files\n"
-                + "Deletes files or directories.\n"
-                + "Options:\n"
-                + "  -r: Recursive delete (for directories)\n"
-                + "  -f: Force delete\n"
-                + "Usage: rm [options] [file/directory]");
-
-        System.out.println("Requested manual for: " + command);
-
-        String manualEntry = manualPages.get(command);
-        return manualEntry != null ? manualEntry : "We will provide description of '" + command + "' soon.";
-    }
-
-    private String readProcessOutput(Process process) throws IOException {
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-        }
-        return output.toString();
+    private boolean isBackgroundKey(KeyEvent e) {
+        // Ctrl+Z sends the running command to the background, like a shell's suspend-then-bg
+        return runningTask != null && e.getKeyCode() == KeyEvent.VK_Z && e.isControlDown();
     }
 
     private void appendToOutput(String text, String style) {
-        try {
-            document.insertString(document.getLength(), text, styleContext.getStyle(style));
-            outputArea.setCaretPosition(document.getLength());
-        } catch (BadLocationException e) {
-            e.printStackTrace();
-        }
+        engine.appendToOutput(text, style);
     }
 
     private void clearOutput() {
-        outputArea.setText("");
-    }
-
-    private void highlightOutput(String output) {
-        String[] lines = output.split("\n");
-
-        for (String line : lines) {
-            if (line.trim().isEmpty()) {
-                continue;
-            }
-
-            if (line.startsWith("total") || line.matches("^\\d+.*")) {
-                // Disk usage or similar numerical output
-                appendToOutput(line + "\n", "output");
-            } else if (line.matches("^[drwx-]+\\s+\\d+.*")) {
-                // Unix file listing
-                appendToOutput(line + "\n", "output");
-            } else if (line.matches("^\\d+/\\d+/\\d+\\s+\\d+:\\d+\\s+[AP]M.*")) {
-                // Windows dir output
-                appendToOutput(line + "\n", "output");
-            } else if (line.toLowerCase().contains("error") || line.toLowerCase().contains("fail")) {
-                // Error messages
-                appendToOutput(line + "\n", "error");
-            } else if (line.matches("^[A-Za-z]:\\.*")) {
-                // Directory paths
-                appendToOutput(line + "\n", "directory");
-            } else {
-                // Regular output
-                appendToOutput(line + "\n", "output");
-            }
-        }
+        outputPipeline.clear();
     }
 
     private void autoCompleteCommand() {
@@ -1799,7 +624,7 @@ public class ShellUI extends JFrame {
         }
 
         List<String> matches = new ArrayList<>();
-        for (String cmd : SUPPORTED_COMMANDS) {
+        for (String cmd : CommandEngine.SUPPORTED_COMMANDS) {
             if (cmd.toLowerCase().startsWith(partial)) {
                 matches.add(cmd);
             }
@@ -1854,48 +679,47 @@ public class ShellUI extends JFrame {
                 dir = new File(dirPath);
             } else {
                 // Relative path
-                dir = new File(currentDirectory, dirPath);
+                dir = new File(engine.currentDirectory(), dirPath);
             }
         } else {
             // Just a filename in current directory
-            dir = currentDirectory;
+            dir = engine.currentDirectory();
             filePattern = partialPath;
         }
 
-        if (!dir.exists() || !dir.isDirectory()) {
+        List<CompletionIndex.Candidate> candidates = completionIndex.complete(dir.toPath(), filePattern,
+                MAX_COMPLETIONS_SHOWN);
+        if (candidates.isEmpty()) {
             return;
         }
-
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return;
-        }
-
+        String separator = engine.isWindows() ? "\\" : "/";
         List<String> matches = new ArrayList<>();
-        for (File file : files) {
-            if (file.getName().toLowerCase().startsWith(filePattern.toLowerCase())) {
-                matches.add(file.getName() + (file.isDirectory() ? (isWindows ? "\\" : "/") : ""));
-            }
+        for (CompletionIndex.Candidate candidate : candidates) {
+            matches.add(candidate.name() + (candidate.directory() ? separator : ""));
         }
 
+        String directoryPart = partialPath.substring(0,
+                Math.max(partialPath.lastIndexOf('/'), partialPath.lastIndexOf('\\')) + 1);
         if (matches.size() == 1) {
-            String completed = prefix + partialPath.substring(0,
-                    partialPath.lastIndexOf('/') + partialPath.lastIndexOf('\\') + 1) + matches.get(0);
-            argumentsField.setText(completed);
-        } else if (matches.size() > 1) {
-            // Find common prefix
-            String commonPrefix = findCommonPrefix(matches);
+            argumentsField.setText(prefix + directoryPart + matches.get(0));
+        } else {
+            // Fuzzy matches are ranked, not prefixes of each other, so only real prefixes are extended
+            String commonPrefix = candidates.get(0).fuzzy() ? "" : findCommonPrefix(matches);
             if (commonPrefix.length() > filePattern.length()) {
-                String completed = prefix + partialPath.substring(0,
-                        partialPath.lastIndexOf('/') + partialPath.lastIndexOf('\\') + 1) + commonPrefix;
-                argumentsField.setText(completed);
+                argumentsField.setText(prefix + directoryPart + commonPrefix);
             }
 
             // Show possible completions
-            appendToOutput("Possible completions:\n", "output");
+            appendToOutput(candidates.get(0).fuzzy() ? "Closest matches:\n" : "Possible completions:\n", "output");
+            StringBuilder list = new StringBuilder();
             for (String match : matches) {
-                appendToOutput("  " + match + "\n", "output");
+                list.append("  ").append(match).append('\n');
+            }
+            int total = completionIndex.count(dir.toPath(), filePattern);
+            if (total > matches.size()) {
+                list.append("  ... and ").append(total - matches.size()).append(" more\n");
             }
+            appendToOutput(list.toString(), "output");
             appendToOutput("\n", "default");
         }
     }
@@ -1918,54 +742,117 @@ public class ShellUI extends JFrame {
     }
 
     private void navigateHistory(boolean up) {
-        if (commandHistory.isEmpty()) {
+        if (history.liveCount() == 0) {
             return;
         }
 
+        // -1 means past the most recent command
         if (up) {
-            if (historyIndex > 0) {
-                historyIndex--;
+            int previous = history.previous(historyIndex < 0 ? history.size() : historyIndex);
+            if (previous >= 0) {
+                historyIndex = previous;
             }
         } else {
-            if (historyIndex < commandHistory.size() - 1) {
-                historyIndex++;
-            } else if (historyIndex == commandHistory.size() - 1) {
-                historyIndex++;
+            if (historyIndex < 0) {
+                return;
+            }
+            historyIndex = history.next(historyIndex);
+            if (historyIndex >= history.size()) {
                 // Clear fields when going past the most recent command
+                historyIndex = -1;
                 commandComboBox.setSelectedItem("");
                 argumentsField.setText("");
                 return;
             }
         }
 
-        if (historyIndex >= 0 && historyIndex < commandHistory.size()) {
-            String historyCommand = commandHistory.get(historyIndex);
-            // Split into command and arguments
-            int firstSpace = historyCommand.indexOf(' ');
-            if (firstSpace > 0) {
-                commandComboBox.setSelectedItem(historyCommand.substring(0, firstSpace));
-                argumentsField.setText(historyCommand.substring(firstSpace + 1));
-            } else {
-                commandComboBox.setSelectedItem(historyCommand);
-                argumentsField.setText("");
-            }
+        if (history.isLive(historyIndex)) {
+            showCommand(history.get(historyIndex));
+        }
+    }
+
+    private void showCommand(String fullCommand) {
+        // Split into command and arguments
+        int firstSpace = fullCommand.indexOf(' ');
+        if (firstSpace > 0) {
+            commandComboBox.setSelectedItem(fullCommand.substring(0, firstSpace));
+            argumentsField.setText(fullCommand.substring(firstSpace + 1));
+        } else {
+            commandComboBox.setSelectedItem(fullCommand);
+            argumentsField.setText("");
         }
     }
 
-    private void showCommandHistory() {
-        if (commandHistory.isEmpty()) {
-            appendToOutput("No commands in history\n\n", "output");
+    private void startHistorySearch() {
+        if (historySearchBar.isActive()) {
             return;
         }
+        String command = ((JTextComponent) commandComboBox.getEditor().getEditorComponent()).getText().trim();
+        String arguments = argumentsField.getText().trim();
+        commandBeforeSearch = command + (arguments.isEmpty() ? "" : " " + arguments);
+        historySearchBar.start();
+    }
 
-        appendToOutput("Command history:\n", "output");
-        for (int i = 0; i < commandHistory.size(); i++) {
-            appendToOutput(String.format("%3d: %s\n", i + 1, commandHistory.get(i)), "output");
+    /** The {@code history} listing, or clears it for {@code -c}; the text ends with a newline. */
+    private String historyText(String arguments) {
+        if (arguments.equals("-c")) {
+            history.clear();
+            historyIndex = -1;
+            return "History cleared\n";
         }
-        appendToOutput("\n", "default");
+        int limit;
+        try {
+            limit = arguments.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(arguments);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("history takes a number of entries or -c");
+        }
+        int total = history.liveCount();
+        if (total == 0) {
+            return "No commands in history\n";
+        }
+
+        // Numbered oldest first like bash; only the newest entries when a count is given
+        int skip = Math.max(0, total - limit);
+        StringBuilder text = new StringBuilder("Command history:\n");
+        int number = 0;
+        for (int position = history.next(-1); position < history.size(); position = history.next(position)) {
+            if (++number > skip) {
+                String label = Integer.toString(number);
+                text.append("   ", Math.min(3, label.length()), 3).append(label).append(": ")
+                        .append(history.get(position)).append('\n');
+            }
+        }
+        return text.toString();
     }
 
-    public static void main(String[] args) {
+    /** What the engine needs from the window: the pager, the directory label and the history. */
+    private class Frontend implements CommandEngine.Frontend {
+
+        @Override
+        public boolean page(PagedFile file) {
+            SwingUtilities.invokeLater(() -> PagerDialog.open(ShellUI.this, file));
+            return true;
+        }
+
+        @Override
+        public void directoryChanged(File directory) {
+            completionIndex.prefetch(directory.toPath());
+            SwingUtilities.invokeLater(() ->
+                    currentDirLabel.setText("Current Directory: " + directory.getAbsolutePath()));
+        }
+
+        @Override
+        public String history(String arguments) {
+            return historyText(arguments);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessShell.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        CommandMetrics.register();
         SwingUtilities.invokeLater(() -> {
             ShellUI shell = new ShellUI();
             shell.setVisible(true);
@@ -0,0 +1,54 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.Locale;
+
+/**
+ * Human readable sizes and rates for command output (1K = 1024 bytes),
+ * always with a decimal point whatever the user's locale.
+ */
+final class Sizes {
+
+    private static final String UNITS = "KMGTPE";
+
+    private Sizes() {
+    }
+
+    static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        double value = bytes / (double) (1L << (unit * 10));
+        return (value < 10 ? String.format(Locale.ROOT, "%.1f", value)
+                : String.format(Locale.ROOT, "%.0f", value)) + UNITS.charAt(unit - 1);
+    }
+
+    static String rate(long bytes, long nanos) {
+        if (nanos <= 0) {
+            return format(bytes) + "/s";
+        }
+        return format((long) (bytes * 1_000_000_000.0 / nanos)) + "/s";
+    }
+
+    static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1_000_000_000.0);
+    }
+
+    /** A duration in the unit that suits it: 850 ns, 42 us, 3.1 ms, 2.40 s. */
+    static String duration(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.0f us", nanos / 1_000.0);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+        }
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1_000_000_000.0);
+    }
+}
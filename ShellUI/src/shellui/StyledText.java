@@ -0,0 +1,150 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.Arrays;
+
+/**
+ * A block of output text with its style runs, handed to the output pipeline
+ * as one unit so the EDT applies a whole batch of highlighted lines in a
+ * single update. Runs are stored as end offsets into the text; adjacent runs
+ * always have different styles.
+ */
+final class StyledText {
+
+    private final String text;
+    private final int[] ends;
+    private final String[] styles;
+    private final int runCount;
+
+    private StyledText(String text, int[] ends, String[] styles, int runCount) {
+        this.text = text;
+        this.ends = ends;
+        this.styles = styles;
+        this.runCount = runCount;
+    }
+
+    static StyledText of(String text, String style) {
+        return new StyledText(text, new int[]{text.length()}, new String[]{style}, 1);
+    }
+
+    String text() {
+        return text;
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    int runCount() {
+        return runCount;
+    }
+
+    int runStart(int run) {
+        return run == 0 ? 0 : ends[run - 1];
+    }
+
+    int runEnd(int run) {
+        return ends[run];
+    }
+
+    String runStyle(int run) {
+        return styles[run];
+    }
+
+    /**
+     * Highlights {@code text} line by line and sends it to the sink in
+     * batches of about 64K chars. Trailing text without a newline is styled
+     * as a line of its own. With {@code skipBlankLines}, empty and
+     * whitespace-only lines are dropped, CRLF endings become LF and every
+     * line ends with a newline.
+     */
+    static void highlight(CharSequence text, Highlighter highlighter, boolean skipBlankLines, OutputSink out) {
+        Builder batch = new Builder();
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int newline = start;
+            while (newline < length && text.charAt(newline) != '\n') {
+                newline++;
+            }
+            int end = newline;
+            if (skipBlankLines) {
+                if (end > start && text.charAt(end - 1) == '\r') {
+                    end--;
+                }
+                if (isBlank(text, start, end)) {
+                    start = newline + 1;
+                    continue;
+                }
+            }
+            String style = highlighter.style(text, start, end);
+            if (skipBlankLines) {
+                batch.append(text, start, end, style);
+                batch.append("\n", 0, 1, style);
+            } else {
+                batch.append(text, start, Math.min(newline + 1, length), style);
+            }
+            if (batch.length() >= Builder.BATCH_CHARS) {
+                out.append(batch.build());
+            }
+            start = newline + 1;
+        }
+        if (batch.length() > 0) {
+            out.append(batch.build());
+        }
+    }
+
+    private static boolean isBlank(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Accumulates runs, merging consecutive ones of the same style. */
+    static final class Builder {
+
+        static final int BATCH_CHARS = 64 * 1024;
+
+        private final StringBuilder text = new StringBuilder();
+        private int[] ends = new int[16];
+        private String[] styles = new String[16];
+        private int runCount;
+
+        void append(CharSequence source, int start, int end, String style) {
+            if (start == end) {
+                return;
+            }
+            text.append(source, start, end);
+            if (runCount > 0 && styles[runCount - 1].equals(style)) {
+                ends[runCount - 1] = text.length();
+                return;
+            }
+            if (runCount == ends.length) {
+                ends = Arrays.copyOf(ends, runCount * 2);
+                styles = Arrays.copyOf(styles, runCount * 2);
+            }
+            ends[runCount] = text.length();
+            styles[runCount] = style;
+            runCount++;
+        }
+
+        int length() {
+            return text.length();
+        }
+
+        /** Returns the batch so far and starts a new one. */
+        StyledText build() {
+            StyledText built = new StyledText(text.toString(), Arrays.copyOf(ends, runCount),
+                    Arrays.copyOf(styles, runCount), runCount);
+            text.setLength(0);
+            runCount = 0;
+            return built;
+        }
+    }
+}
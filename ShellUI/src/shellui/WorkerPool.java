@@ -0,0 +1,55 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package shellui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shared fork-join pool for the in-process file commands. The work is mostly
+ * file system I/O, so the pool is sized above the core count to keep the disk
+ * busy while some workers are blocked.
+ */
+final class WorkerPool {
+
+    static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private WorkerPool() {
+    }
+
+    /**
+     * Runs the task on the pool and waits for it on the calling command
+     * thread, calling {@code progress} every {@code progressMillis} while it
+     * runs. Interrupting the caller (Cancel / Ctrl+C) cancels the command.
+     */
+    static <T> T invoke(ForkJoinTask<T> task, long progressMillis, Runnable progress) {
+        POOL.execute(task);
+        while (true) {
+            try {
+                return task.get(progressMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (progress != null) {
+                    progress.run();
+                }
+            } catch (InterruptedException e) {
+                CommandTask current = CommandTask.current();
+                if (current != null) {
+                    current.cancel();
+                }
+                task.cancel(true);
+                throw new CancellationException("Command cancelled");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}